@@ -1,4 +1,8 @@
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
 import java.util.*;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -8,13 +12,46 @@ public abstract class Account implements Persistable {
     public static Logger timeLogger = LogManager.getLogger("timer." + Account.class.getName());
     protected static Register SharedRegister = null;
 
+    /**
+     * How balance updates are made safe when several threads use the same accounts.
+     * NONE is the original single-threaded behaviour. ATOMIC updates balances (and check
+     * numbers) with atomic VarHandle adds, so nothing is lost but a balance change and its
+     * register entry aren't applied as one step. STRIPED also takes a lock chosen by account id around every
+     * operation, so operations on one account are serializable (including month end and
+     * writing a check) while different accounts mostly use different locks.
+     * With a shared register, ATOMIC and STRIPED need a thread-safe one (ConcurrentRegister).
+     */
+    public enum Concurrency { NONE, ATOMIC, STRIPED }
+
+    public static final int DEFAULT_LOCK_STRIPES = 1024;
+    private static volatile Concurrency concurrency = Concurrency.NONE;
+    private static volatile LockStripes lockStripes = new LockStripes(DEFAULT_LOCK_STRIPES);
+    private static final VarHandle BALANCE;
+
+    static {
+        try {
+            BALANCE = MethodHandles.lookup().findVarHandle(Account.class, "balance", long.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
     private Long id;
-    private double balance;
+    // all money is in cents, see Money
+    private long balance;
     protected String name;
     private Long ownerId;
     protected Register register;
-    protected double minimumBalance;
-    protected double belowMinimumFee;
+    protected long minimumBalance;
+    protected long belowMinimumFee;
+    // the open statement period, it holds the register entries with ids after periodLastEntryId
+    private Date periodStart;
+    private long periodOpeningBalance;
+    private long periodLastEntryId;
+    // any balance change (or check) since the last statement, a new account starts active.
+    // Volatile: in ATOMIC mode it's set without the account lock while month end reads it
+    private volatile boolean activeSinceStatement = true;
+    private final List<StatementPeriod> closedPeriods = new ArrayList<>();
 
     // This is kind of a hack to get around having to add Register
     // to every call to new Account()
@@ -30,19 +67,60 @@ public abstract class Account implements Persistable {
         }
     }
 
+    /** set the mode before accounts are shared between threads, not while they're in use */
+    public static void useConcurrency(Concurrency mode) {
+        useConcurrency(mode, DEFAULT_LOCK_STRIPES);
+    }
+
+    public static void useConcurrency(Concurrency mode, int stripes) {
+        logger.info("Using {} account concurrency", mode);
+        if (mode == Concurrency.STRIPED && stripes != lockStripes.size()) {
+            lockStripes = new LockStripes(stripes);
+        }
+        concurrency = mode;
+    }
+
+    public static Concurrency getConcurrency() {
+        return concurrency;
+    }
+
+    public static LockStripes getLockStripes() {
+        return lockStripes;
+    }
+
     public Account() {
     	this("", -1, 0.0, -1);
     }
 
 
     public Account(String name, long id, double balance, long ownerId) {
+        this(name, id, balance, ownerId, null);
+    }
+
+    /**
+     * @param register where the account's entries go, starting with its OPEN entry. null for
+     *                 the shared register, or a register of its own when there is none
+     */
+    public Account(String name, long id, double balance, long ownerId, Register register) {
+        this(name, id, Money.ofDouble(balance), ownerId, register);
+    }
+
+    /**
+     * Like Account(String, long, double, long, Register) with the balance in cents, for
+     * balances read from storage so they don't pass through a double. Only for subclasses:
+     * a call with whole-number literals would pick it over the double one.
+     */
+    protected Account(String name, long id, long balanceCents, long ownerId, Register register) {
         timeLogger.info("start _init");
         this.id = id;
         this.name = name;
-        this.balance = balance;
+        this.balance = balanceCents;
         this.ownerId = ownerId;
-        this.register = (SharedRegister != null) ? SharedRegister : new Register();
-        register.add(id, "OPEN", balance, new Date());
+        if (register == null) {
+            register = (SharedRegister != null) ? SharedRegister : new Register();
+        }
+        this.register = register;
+        register.add(id, "OPEN", this.balance, new Date());
         timeLogger.info("end _init");
     }
 
@@ -51,12 +129,20 @@ public abstract class Account implements Persistable {
     }
 
     public void deposit(double amount, String registerEntry) {
+        depositCents(Money.ofDouble(amount), registerEntry);
+    }
+
+    public void depositCents(long amount, String registerEntry) {
         timeLogger.info("start deposit");
         logger.info("account_name={} operation={} amount={}", name, "deposit", amount);
-        logger.debug(name + " Balance before deposit: " + balance);
-        balance += amount;
-        logger.debug(name + " Balance after deposit: " + balance);
-        register.add(id, registerEntry, amount, new Date());
+        ReentrantLock lock = lockAccount();
+        try {
+            long before = addToBalance(amount);
+            logger.debug("{} Balance before deposit: {}", name, before);
+            register.add(id, registerEntry, amount, new Date());
+        } finally {
+            unlockAccount(lock);
+        }
         timeLogger.info("end deposit");
     }
 
@@ -68,15 +154,75 @@ public abstract class Account implements Persistable {
         withdraw(amount, registerEntry, new Date());
     }
     public void withdraw(double amount, String registerEntry, Date txnDate) {
+        withdrawCents(Money.ofDouble(amount), registerEntry, txnDate);
+    }
+
+    public void withdrawCents(long amount, String registerEntry) {
+        withdrawCents(amount, registerEntry, new Date());
+    }
+
+    public void withdrawCents(long amount, String registerEntry, Date txnDate) {
         timeLogger.info("start withdraw");
         logger.info("account_name={} operation={} amount={}", name, "withdraw", amount); //name + " Depositing " + amount);
-    	logger.debug(name + " Before w/d "+ getBalance());
-        balance = balance - amount;
-        logger.debug(name + " After w/d " + getBalance());
-        register.add(id, registerEntry, -1d * amount, txnDate);
+        ReentrantLock lock = lockAccount();
+        try {
+            long before = addToBalance(-amount);
+            logger.debug("{} Before w/d {}", name, before);
+            register.add(id, registerEntry, -amount, txnDate);
+        } finally {
+            unlockAccount(lock);
+        }
         timeLogger.info("end withdraw");
     }
 
+    /**
+     * Change the balance without adding a register entry. Used by Bank.applyBatch() and
+     * Bank.transfer(), which add the register entries themselves in bulk.
+     */
+    void adjustBalance(long netCents) {
+        ReentrantLock lock = lockAccount();
+        try {
+            addToBalance(netCents);
+        } finally {
+            unlockAccount(lock);
+        }
+    }
+
+    /** add to the balance and return what it was before */
+    private long addToBalance(long amount) {
+        activeSinceStatement = true;
+        if (concurrency == Concurrency.NONE) {
+            long before = balance;
+            balance = before + amount;
+            return before;
+        }
+        return (long) BALANCE.getAndAdd(this, amount);
+    }
+
+    /**
+     * In STRIPED mode, take this account's stripe lock. Subclasses wrap compound operations
+     * (month end, writing a check) with lockAccount()/unlockAccount(lock) in a try/finally.
+     * The lock is reentrant so the deposits and withdrawals inside don't deadlock.
+     *
+     * @return the lock taken, null if none was. Pass it to unlockAccount() so exactly that
+     *         lock is released even if the mode or the stripes change in between.
+     */
+    protected final ReentrantLock lockAccount() {
+        if (concurrency != Concurrency.STRIPED) {
+            return null;
+        }
+        ReentrantLock lock = lockStripes.lockFor(id);
+        lock.lock();
+        return lock;
+    }
+
+    /** release the lock lockAccount() returned, does nothing for null */
+    protected final void unlockAccount(ReentrantLock lock) {
+        if (lock != null) {
+            lock.unlock();
+        }
+    }
+
     public String getName() {
     	return name;
     }
@@ -85,48 +231,191 @@ public abstract class Account implements Persistable {
         return register;
     }
 
+    /** switch to another register, for accounts created before the register they belong to was ready */
+    void useRegister(Register register) {
+        this.register = register;
+    }
+
     public List<RegisterEntry> getRegisterEntries() {
         return register.getEntries();
     }
 
     public double getBalance() {
-        return balance;
+        return Money.toDouble(getBalanceCents());
+    }
+
+    public long getBalanceCents() {
+        return (concurrency == Concurrency.NONE) ? balance : (long) BALANCE.getVolatile(this);
     }
 
     public void setMinimumBalance(double minimumBalance) {
-        this.minimumBalance = minimumBalance;
+        this.minimumBalance = Money.ofDouble(minimumBalance);
     }
 
     public double getMinimumBalance() {
+        return Money.toDouble(minimumBalance);
+    }
+
+    public long getMinimumBalanceCents() {
         return minimumBalance;
     }
 
     public void setBelowMinimumFee(double belowMinimumFee) {
-        this.belowMinimumFee = belowMinimumFee;
+        this.belowMinimumFee = Money.ofDouble(belowMinimumFee);
     }
 
     public double getBelowMinimumFee() {
+        return Money.toDouble(belowMinimumFee);
+    }
+
+    public long getBelowMinimumFeeCents() {
         return belowMinimumFee;
     }
 
+    /** this account's register entries in the open statement period, oldest first */
+    public List<RegisterEntry> getCurrentPeriodEntries() {
+        return register.getEntriesForAccountAfter(id, periodLastEntryId);
+    }
+
+    public long getCurrentPeriodOpeningBalanceCents() {
+        return periodOpeningBalance;
+    }
+
+    /** id of the last register entry in the closed statement periods, the open period holds the ones after it */
+    long getPeriodLastEntryId() {
+        ReentrantLock lock = lockAccount();
+        try {
+            return periodLastEntryId;
+        } finally {
+            unlockAccount(lock);
+        }
+    }
+
+    /** every period closed by generateStatement(), oldest first */
+    public List<StatementPeriod> getStatementPeriods() {
+        return Collections.unmodifiableList(closedPeriods);
+    }
+
+    /**
+     * Close the open statement period and return its statement. Only this account's entries
+     * in the period are read, through the register's account index, so the cost doesn't
+     * depend on how many other accounts share the register or on earlier periods.
+     * Run monthEnd() first, this doesn't apply fees or interest itself.
+     */
     public Statement generateStatement() {
         timeLogger.info("start generateStatement");
-        logger.info("account_name={} operation={} amount={}", name, "month_end", "");
+        logger.info("account_name={} operation={} amount={}", name, "statement", "");
+
+        ReentrantLock lock = lockAccount();
+        try {
+            // the statement keeps the entries, not text, it is only formatted if someone reads it
+            List<RegisterEntry> registerEntries = List.copyOf(getCurrentPeriodEntries());
+            StatementPeriod period = closePeriod(registerEntries);
+            timeLogger.info("end generateStatement");
+            logger.info("Account {}: {} register entries", name, registerEntries.size());
+            return new Statement(name, period, registerEntries);
+        } finally {
+            unlockAccount(lock);
+        }
+    }
+
+    /**
+     * Like generateStatement() but the statement is written to out instead of returned. The
+     * period's entries are copied and the period closed under the account lock, the writing
+     * happens after it is released, so slow output doesn't hold up deposits to the account.
+     *
+     * @return the period that was closed
+     */
+    public StatementPeriod writeStatement(Appendable out, StatementFormatter formatter) throws IOException {
+        timeLogger.info("start writeStatement");
+        logger.info("account_name={} operation={} amount={}", name, "statement", "");
+
+        List<RegisterEntry> registerEntries;
+        StatementPeriod period;
+        ReentrantLock lock = lockAccount();
+        try {
+            registerEntries = List.copyOf(getCurrentPeriodEntries());
+            period = closePeriod(registerEntries);
+        } finally {
+            unlockAccount(lock);
+        }
+        formatter.writeStatement(out, name, period, registerEntries);
+        timeLogger.info("end writeStatement");
+        return period;
+    }
+
+    /** whether the balance changed (or a check was written) since the last statement */
+    protected boolean isActiveSinceStatement() {
+        return activeSinceStatement;
+    }
+
+    protected void markActive() {
+        activeSinceStatement = true;
+    }
+
+    /**
+     * Whether monthEnd() could do anything besides what addDormantMonthEndPostings() adds.
+     * Accounts that return false are dormant: month end skips monthEnd() for them and rolls
+     * them forward with closeDormantPeriod(). Subclasses that know their rules override this,
+     * for any other account month end always runs.
+     */
+    public boolean needsMonthEnd() {
+        return true;
+    }
+
+    /** the register entries monthEnd() would add for a dormant account, e.g. END CHECK */
+    protected void addDormantMonthEndPostings(List<Posting> postings) {
+    }
+
+    /**
+     * monthEnd() for an account whose addDormantMonthEndPostings() entries are already in the
+     * register, because it was found dormant but then had activity. Subclasses that add
+     * dormant postings leave those out here, anything else is all of monthEnd().
+     */
+    protected void monthEndAfterDormantPostings() {
         monthEnd();
+    }
 
-        List<String> rtn = new ArrayList<>();
-        List<RegisterEntry> registerEntries = register.getEntries();
-        for (RegisterEntry entry : registerEntries) {
-            String val = String.format("%-8s: %,.2f on %s", entry.entryName(), entry.amount(), entry.date().toString());
-            rtn.add(val);
+    /**
+     * Close the period of a dormant account without running monthEnd(). monthEndEntries are
+     * the entries its addDormantMonthEndPostings() postings became. The account was found
+     * dormant without its lock, so under the lock it is checked again that it still is and
+     * that those entries are the only ones in the period. If anything else got in, e.g. a
+     * deposit, the rest of month end is applied (fees, interest) and the period is closed from
+     * the register by generateStatement() like any other account's, so none of its entries
+     * are skipped.
+     */
+    Statement closeDormantPeriod(List<RegisterEntry> monthEndEntries) {
+        ReentrantLock lock = lockAccount();
+        try {
+            if (needsMonthEnd() || !getCurrentPeriodEntries().equals(monthEndEntries)) {
+                logger.info("Account {} had activity during month end, closing its period from the register", name);
+                monthEndAfterDormantPostings();
+                return generateStatement();
+            }
+            return new Statement(name, closePeriod(monthEndEntries), monthEndEntries);
+        } finally {
+            unlockAccount(lock);
         }
-        timeLogger.info("end generateStatement");
-        logger.info("Account {}: {} register entries", name, rtn.size());
-        return new Statement(name, balance, rtn);
+    }
+
+    /** end the open period after the given entries (the current period's) and start the next one */
+    private StatementPeriod closePeriod(List<RegisterEntry> registerEntries) {
+        activeSinceStatement = false;
+        Date end = new Date();
+        long lastEntryId = registerEntries.isEmpty()
+                ? periodLastEntryId : registerEntries.get(registerEntries.size() - 1).id();
+        StatementPeriod period = new StatementPeriod(periodStart, end, periodOpeningBalance, getBalanceCents(),
+                lastEntryId, registerEntries.size());
+        closedPeriods.add(period);
+        periodStart = end;
+        periodOpeningBalance = period.closingBalanceCents();
+        periodLastEntryId = lastEntryId;
+        return period;
     }
 
     public String toString() {
-        return String.format("Account:\t'%s'\tid: %d\townerId: %d\tBalance: %s", name, id, ownerId, balance);
+        return String.format("Account:\t'%s'\tid: %d\townerId: %d\tBalance: %s", name, id, ownerId, Money.toString(getBalanceCents()));
     }
 
     abstract public void monthEnd();
@@ -153,7 +442,7 @@ public abstract class Account implements Persistable {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
         Account account = (Account) o;
-        return Double.compare(account.balance, balance) == 0 && Double.compare(account.minimumBalance, minimumBalance) == 0 && Double.compare(account.belowMinimumFee, belowMinimumFee) == 0 && id.equals(account.id) && name.equals(account.name) && ownerId.equals(account.ownerId);
+        return account.balance == balance && account.minimumBalance == minimumBalance && account.belowMinimumFee == belowMinimumFee && id.equals(account.id) && name.equals(account.name) && ownerId.equals(account.ownerId);
     }
 
     @Override
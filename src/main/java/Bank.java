@@ -3,20 +3,84 @@ import org.apache.logging.log4j.Logger;
 
 import java.io.IOException;
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
 
 public class Bank {
     public static Logger logger = LogManager.getLogger(Bank.class);
-    private Map<Long, Owner> owners = new TreeMap<>();
-    private Map<Long, Account> accounts = new TreeMap<>();
-    private Register register = new Register();
+    // keyed by primitive id, values() iterates in id order
+    private LongObjectMap<Owner> owners = new LongObjectMap<>();
+    private LongObjectMap<Account> accounts = new LongObjectMap<>();
+    // ids of every owner's accounts, so portfolio queries don't have to scan all accounts
+    private LongObjectMap<OwnerAccountIds> accountIdsByOwner = new LongObjectMap<>();
+    private Register register;
+    // where records are saved and loaded, null for the one set up in Persister's properties
+    private StorageBackend storage;
+    // how many entries at the start of the register are already saved by a storage backend
+    // that can append to it, -1 when that isn't known and it has to be rewritten on the next save
+    private int savedRegisterEntries = -1;
+    // sealed statement periods, null when closed periods stay in the register
+    private RegisterArchive archive;
+    private MonthEndEngine monthEndEngine = new MonthEndEngine(1);
+    // held for writing while a sealed segment moves from the register to the archive, for reading by snapshots
+    private final ReadWriteLock sealLock = new ReentrantReadWriteLock();
 
     public Bank() {
+        this(new Register());
+    }
+
+    /**
+     * @param register the register implementation to share between all accounts,
+     *                 e.g. a ColumnarRegister for banks with very large registers
+     */
+    public Bank(Register register) {
+        this.register = register;
         // All accounts share a single unified register so we only
         // persist one object instead of one per account
         Account.useSharedRegister(register);
     }
 
+    /**
+     * Seal every closed statement period into the archive at month end. From then on only the
+     * open period is kept in the register, queries read sealed periods from the archive.
+     *
+     * The archive is its own storage: saveAllRecords() only saves the open period, so the saved
+     * register no longer adds up to the balances by itself. Load the records into a bank that
+     * uses an archive in the same directory to get the whole history back.
+     */
+    public void useArchive(RegisterArchive archive) {
+        this.archive = archive;
+    }
+
+    public RegisterArchive getArchive() {
+        return archive;
+    }
+
+    /** how runMonthEnd() processes the accounts, by default one at a time on the calling thread */
+    public void useMonthEndEngine(MonthEndEngine monthEndEngine) {
+        this.monthEndEngine = monthEndEngine;
+    }
+
+    /**
+     * Save and load records with the given backend instead of the one set up in Persister's
+     * properties. The register is rewritten in full on the next save.
+     */
+    public void useStorage(StorageBackend storage) {
+        this.storage = storage;
+        savedRegisterEntries = -1;
+    }
+
+    /** the backend records are saved to and loaded from */
+    public StorageBackend getStorage() throws IOException {
+        return (storage != null) ? storage : StorageBackend.configured();
+    }
+
     public Account getAccount(long id) {
         return accounts.get(id);
     }
@@ -32,10 +96,125 @@ public class Bank {
         if (!owners.containsKey(account.getOwnerId())) {
             throw new MissingRecordException("Owner " + account.getOwnerId() + " not found in Owners list:" + account);
         }
-        accounts.put(account.getId(), account);
+        addAccount(account);
         return account.getId();
     }
 
+    private void addAccount(Account account) {
+        Account previous = accounts.put(account.getId(), account);
+        if (previous != null) {
+            OwnerAccountIds previousIds = accountIdsByOwner.get(previous.getOwnerId());
+            if (previousIds != null) {
+                previousIds.remove(previous.getId());
+            }
+        }
+        OwnerAccountIds ids = accountIdsByOwner.get(account.getOwnerId());
+        if (ids == null) {
+            ids = new OwnerAccountIds();
+            accountIdsByOwner.put(account.getOwnerId(), ids);
+        }
+        ids.add(account.getId());
+    }
+
+    /** the owner's accounts in id order, empty for an unknown owner or one without accounts */
+    public List<Account> getAccountsForOwner(long ownerId) {
+        OwnerAccountIds ids = accountIdsByOwner.get(ownerId);
+        if (ids == null) {
+            return Collections.emptyList();
+        }
+        long[] sorted = Arrays.copyOf(ids.ids, ids.count);
+        Arrays.sort(sorted);
+        List<Account> owned = new ArrayList<>(sorted.length);
+        for (long id : sorted) {
+            owned.add(accounts.get(id));
+        }
+        return owned;
+    }
+
+    /** sum of the balances of all the owner's accounts */
+    public long getTotalBalanceCentsForOwner(long ownerId) {
+        OwnerAccountIds ids = accountIdsByOwner.get(ownerId);
+        long total = 0;
+        for (int i = 0; ids != null && i < ids.count; i++) {
+            total += accounts.get(ids.ids[i]).getBalanceCents();
+        }
+        return total;
+    }
+
+    /**
+     * The owner's most recent register entries across all their accounts, newest first. The
+     * accounts' entries are merged from the newest end, so this costs time proportional to the
+     * owner's accounts and the entries returned. Only entries in the register are included,
+     * not sealed periods in an archive.
+     *
+     * @param limit maximum number of entries to return
+     */
+    public List<RegisterEntry> getRecentRegisterEntriesForOwner(long ownerId, int limit) {
+        OwnerAccountIds ids = accountIdsByOwner.get(ownerId);
+        if (ids == null || limit <= 0) {
+            return Collections.emptyList();
+        }
+        PriorityQueue<NewestFirst> newest = new PriorityQueue<>(Math.max(1, ids.count),
+                Comparator.comparingLong((NewestFirst cursor) -> cursor.current().id()).reversed());
+        for (int i = 0; i < ids.count; i++) {
+            List<RegisterEntry> entries = register.getEntriesForAccount(ids.ids[i]);
+            if (!entries.isEmpty()) {
+                newest.add(new NewestFirst(entries));
+            }
+        }
+        List<RegisterEntry> recent = new ArrayList<>(Math.min(limit, 64));
+        while (recent.size() < limit && !newest.isEmpty()) {
+            NewestFirst cursor = newest.poll();
+            recent.add(cursor.current());
+            if (cursor.advance()) {
+                newest.add(cursor);
+            }
+        }
+        return recent;
+    }
+
+    /** ids of one owner's accounts, in the order they were added */
+    private static final class OwnerAccountIds {
+        long[] ids = new long[2];
+        int count;
+
+        void add(long id) {
+            if (count == ids.length) {
+                ids = Arrays.copyOf(ids, count * 2);
+            }
+            ids[count++] = id;
+        }
+
+        void remove(long id) {
+            for (int i = 0; i < count; i++) {
+                if (ids[i] == id) {
+                    System.arraycopy(ids, i + 1, ids, i, count - i - 1);
+                    count--;
+                    return;
+                }
+            }
+        }
+    }
+
+    /** walks one account's register entries from the newest back */
+    private static final class NewestFirst {
+        final List<RegisterEntry> entries;
+        int position;
+
+        NewestFirst(List<RegisterEntry> entries) {
+            this.entries = entries;
+            this.position = entries.size() - 1;
+        }
+
+        RegisterEntry current() {
+            return entries.get(position);
+        }
+
+        boolean advance() {
+            return --position >= 0;
+        }
+    }
+
     public Owner getOwner(long id) {
         return owners.get(id);
     }
@@ -52,57 +231,404 @@ public class Bank {
         return owner.getId();
     }
 
+    /**
+     * A read-only copy of owners, balances and the register for reporting. It costs time
+     * proportional to the number of accounts, the register isn't copied. In STRIPED mode it
+     * holds one account's stripe at a time, so writers carry on while balances and register
+     * still make one point-in-time cut, see BankSnapshot. Sealing a period waits for it.
+     * Don't call it while accounts or owners are being added.
+     */
+    public BankSnapshot snapshot() {
+        sealLock.readLock().lock();
+        try {
+            return new BankSnapshot(owners.values(), accounts.values(), archive, register);
+        } finally {
+            sealLock.readLock().unlock();
+        }
+    }
+
+    /** every register entry, including sealed periods which are read from the archive as the collection is iterated */
     public Collection<RegisterEntry> getAllRegisterEntries() {
-        return Collections.unmodifiableCollection(register.getEntries());
+        if (archive == null) {
+            return Collections.unmodifiableCollection(register.getEntries());
+        }
+        return new AbstractCollection<>() {
+            @Override
+            public Iterator<RegisterEntry> iterator() {
+                return Stream.concat(archive.getEntries(), register.getEntries().stream()).iterator();
+            }
+
+            @Override
+            public int size() {
+                return Math.toIntExact(archive.getEntryCount() + register.getEntries().size());
+            }
+        };
     }
 
     public Collection<RegisterEntry> getRegisterEntriesForAccount(long accountId) {
-        return Collections.unmodifiableCollection(register.getEntriesForAccount(accountId));
+        if (archive == null) {
+            return Collections.unmodifiableCollection(register.getEntriesForAccount(accountId));
+        }
+        return Stream.concat(archive.getEntriesForAccount(accountId), register.getEntriesForAccount(accountId).stream())
+                .toList();
+    }
+
+    /**
+     * Register entries dated from (inclusive) up to to (exclusive), oldest first, streamed
+     * lazily. Sealed and open periods can overlap in time when entries are backdated, so
+     * their entries are merged by date, then id.
+     */
+    public Stream<RegisterEntry> getRegisterEntriesBetween(Date from, Date to) {
+        Stream<RegisterEntry> open = register.getEntriesBetween(from, to);
+        return (archive == null) ? open : Register.mergeByDate(List.of(archive.getEntriesBetween(from, to), open));
+    }
+
+    /** one account's register entries dated from (inclusive) up to to (exclusive), oldest first, streamed lazily */
+    public Stream<RegisterEntry> getRegisterEntriesForAccountBetween(long accountId, Date from, Date to) {
+        Stream<RegisterEntry> open = register.getEntriesForAccountBetween(accountId, from, to);
+        return (archive == null) ? open
+                : Register.mergeByDate(List.of(archive.getEntriesForAccountBetween(accountId, from, to), open));
+    }
+
+    public BatchResult applyBatch(List<Posting> postings) {
+        return applyBatch(postings, new Date());
     }
-    public Collection<Statement> runMonthEnd() {
-        List<Statement> statements = new ArrayList<>();
-        for (Account a: accounts.values()) {
-            a.monthEnd();
-            statements.add(a.generateStatement());
+
+    /**
+     * Apply a batch of deposits and withdrawals, all dated transactionDate. Postings are
+     * grouped by account so each balance is updated once with the account's net amount, and
+     * the register entries for the whole batch are added with one bulk append, in posting
+     * order. Postings for unknown accounts are skipped and reported in the result.
+     *
+     * In STRIPED mode the stripes of the batch's accounts are held from the first balance
+     * update until the register entries are added, so a snapshot sees all of the batch or
+     * none of it. Otherwise the batch is not applied atomically: other threads can see some
+     * balances updated before the batch's register entries are added.
+     */
+    public BatchResult applyBatch(List<Posting> postings, Date transactionDate) {
+        logger.info("Applying batch of {} postings", postings.size());
+        BatchResult.Status[] statuses = new BatchResult.Status[postings.size()];
+        List<Posting> applied = new ArrayList<>(postings.size());
+        Map<Long, AccountNet> netByAccount = new HashMap<>();
+        AccountNet last = null;
+        for (int i = 0; i < statuses.length; i++) {
+            Posting posting = postings.get(i);
+            // feeds usually list an account's postings together, so check the last one first
+            AccountNet net = (last != null && last.accountId == posting.accountId())
+                    ? last : netByAccount.get(posting.accountId());
+            if (net == null) {
+                Account account = accounts.get(posting.accountId());
+                if (account == null) {
+                    statuses[i] = BatchResult.Status.UNKNOWN_ACCOUNT;
+                    continue;
+                }
+                net = new AccountNet(account);
+                netByAccount.put(posting.accountId(), net);
+            }
+            net.cents += posting.amountCents();
+            last = net;
+            applied.add(posting);
+            statuses[i] = BatchResult.Status.APPLIED;
+        }
+        LockStripes stripes = Account.getLockStripes();
+        BitSet locked = (Account.getConcurrency() == Account.Concurrency.STRIPED)
+                ? stripes.lockAll(netByAccount.keySet()) : null;
+        long firstEntryId;
+        try {
+            for (AccountNet net : netByAccount.values()) {
+                net.account.adjustBalance(net.cents);
+            }
+            firstEntryId = addToRegister(applied, transactionDate);
+        } finally {
+            if (locked != null) {
+                stripes.unlock(locked);
+            }
+        }
+        BatchResult result = new BatchResult(statuses, applied.size(), firstEntryId);
+        logger.info("{} over {} accounts", result, netByAccount.size());
+        return result;
+    }
+
+    /** running net amount of a batch's postings for one account */
+    private static final class AccountNet {
+        final Account account;
+        final long accountId;
+        long cents;
+
+        AccountNet(Account account) {
+            this.account = account;
+            this.accountId = account.getId();
+        }
+    }
+
+    /**
+     * Move money from one account to another. Both balances change while holding the lock
+     * stripes of both accounts, taken in stripe order so transfers running in opposite
+     * directions can't deadlock. The two register entries are added together with
+     * consecutive ids, the "TRANSFER TO" leg first, so each leg can be found from the other.
+     * Transfers are safe to run from many threads with any register, one that isn't
+     * concurrent is added to by one transfer at a time. Deposits and withdrawals running at
+     * the same time also need a ConcurrentRegister and Account.Concurrency.STRIPED.
+     *
+     * @return register id of the "TRANSFER TO" leg, the "TRANSFER FROM" leg is the next id
+     */
+    public long transfer(long fromId, long toId, long amountCents) throws MissingRecordException {
+        if (amountCents <= 0) {
+            throw new IllegalArgumentException("Transfer amount must be > 0 but was " + amountCents);
+        }
+        if (fromId == toId) {
+            throw new IllegalArgumentException("Can't transfer from account " + fromId + " to itself");
+        }
+        Account from = accounts.get(fromId);
+        Account to = accounts.get(toId);
+        if (from == null || to == null) {
+            throw new MissingRecordException("Account " + (from == null ? fromId : toId) + " not found for transfer");
+        }
+        logger.info("Transfer {} from {} to {}", amountCents, fromId, toId);
+        LockStripes stripes = Account.getLockStripes();
+        stripes.lockBoth(fromId, toId);
+        try {
+            from.adjustBalance(-amountCents);
+            to.adjustBalance(amountCents);
+            return addToRegister(List.of(
+                    new Posting(fromId, "TRANSFER TO " + toId, -amountCents),
+                    new Posting(toId, "TRANSFER FROM " + fromId, amountCents)), new Date());
+        } finally {
+            stripes.unlockBoth(fromId, toId);
+        }
+    }
+
+    /**
+     * Add postings to the register. The stripes only guard the accounts, so a register that
+     * isn't thread-safe is locked to let one transfer or batch add to it at a time.
+     */
+    private long addToRegister(List<Posting> postings, Date transactionDate) {
+        if (register.isConcurrent()) {
+            return register.addAll(postings, transactionDate);
+        }
+        synchronized (register) {
+            return register.addAll(postings, transactionDate);
+        }
+    }
+
+    /** apply every account's month end once and return the statements, ordered by account id */
+    public Collection<Statement> runMonthEnd() throws IOException, SerializationException {
+        checkCanSeal();
+        List<Statement> statements = monthEndEngine.run(new ArrayList<>(accounts.values()), register);
+        if (archive != null) {
+            sealPeriod();
         }
         return statements;
     }
 
-    public int loadAllRecords() throws IOException, SerializationException {
-        clearAllRecords();
-        for (Owner o : Persister.readOwnersFromCsv()) {
-            owners.put(o.id(), o);
+    /**
+     * Month end in export mode: statements are written to files by the exporter as they are
+     * produced instead of being collected and returned. Month end itself is applied by the
+     * same engine as runMonthEnd(), dormant accounts included.
+     */
+    public StatementExporter.Report runMonthEnd(StatementExporter exporter) throws IOException, SerializationException {
+        checkCanSeal();
+        MonthEndEngine.MonthEnd monthEnd = monthEndEngine.apply(new ArrayList<>(accounts.values()), register);
+        StatementExporter.Report report = exporter.export(accounts.values(), monthEnd::statementFor);
+        if (archive != null) {
+            sealPeriod();
         }
-        logger.info("Loaded {} Owners", owners.size());
-        for (SavingsAccount rec : Persister.readSavingsAccountsFromCsv()) {
-            accounts.put(rec.getId(), rec);
+        return report;
+    }
+
+    /**
+     * Sealing needs the register to itself for a moment, see sealPeriod(). ATOMIC mode writers
+     * don't take a lock it could wait for, so with a register other threads can be adding to
+     * it refuses before month end starts rather than lose their entries.
+     */
+    private void checkCanSeal() {
+        if (archive != null && Account.getConcurrency() == Account.Concurrency.ATOMIC && register.isConcurrent()) {
+            throw new IllegalStateException("Can't seal periods into the archive while ATOMIC writers may be running, use STRIPED");
+        }
+    }
+
+    /**
+     * Move every account's closed statement periods from the register into a new archive
+     * segment. An account's entries are sealed only up to the last one its latest statement
+     * covered: anything added since, e.g. a deposit made while month end was running, belongs
+     * to its next period and stays in the register.
+     *
+     * Closed periods don't change, so the segment is written without holding any lock. Then,
+     * holding every lock stripe, the segment is added to the archive and the register rebuilt
+     * without its entries. Snapshots wait for sealLock meanwhile, so one finds each entry in
+     * one of them, never both or neither. Every STRIPED writer (and every transfer) holds a
+     * stripe while it adds to the register, so none of their entries can be lost by the
+     * rebuild. The pause is proportional to the size of the register. In NONE mode the bank
+     * isn't used from other threads.
+     */
+    private void sealPeriod() throws IOException, SerializationException {
+        Collection<Account> all = accounts.values();
+        long[] accountIds = new long[all.size()];
+        long[] lastSealedIds = new long[all.size()];
+        int i = 0;
+        for (Account account : all) {
+            accountIds[i] = account.getId();
+            lastSealedIds[i++] = account.getPeriodLastEntryId();
         }
-        for (CheckingAccount rec : Persister.readCheckingAccountsFromCsv()) {
-            accounts.put(rec.getId(), rec);
+        Predicate<RegisterEntry> sealed = e -> {
+            int at = Arrays.binarySearch(accountIds, e.accountId());
+            return at >= 0 && e.id() <= lastSealedIds[at];
+        };
+        List<RegisterEntry> closed = register.getEntries().stream().filter(sealed).toList();
+        if (closed.isEmpty()) {
+            return;
         }
+        RegisterArchive.Segment segment = archive.write(closed);
+        LockStripes stripes = Account.getLockStripes();
+        // sealLock before the stripes, a snapshot holds it while it takes stripes one at a time
+        sealLock.writeLock().lock();
+        BitSet locked = stripes.lockAll();
+        try {
+            archive.add(segment);
+            register.removeIf(sealed);
+        } finally {
+            stripes.unlock(locked);
+            sealLock.writeLock().unlock();
+        }
+        savedRegisterEntries = -1;
+    }
+
+    public int loadAllRecords() throws IOException, SerializationException {
+        clearAllRecords();
+        StorageBackend storage = getStorage();
+        // records go straight from storage into the maps and register, one at a time
+        storage.readOwners(o -> owners.put(o.id(), o));
+        logger.info("Loaded {} Owners", owners.size());
+        storage.readAccounts(this::addAccount);
         // we need to clear the register because inserting accounts above creates entries
         register.clear();
-        for (RegisterEntry rec : Persister.readRegisterEntriesFromCsv()) {
-            register.addRegisterEntry(rec);
+        storage.readRegisterEntries(register::addRegisterEntry);
+        savedRegisterEntries = storage.canAppendRegister() ? register.getEntries().size() : -1;
+        logger.info("Loaded {} Accounts from {} storage", accounts.size(), storage.name());
+        return owners.size() + accounts.size() + register.getEntries().size();
+    }
+
+    /**
+     * Like loadAllRecords() but with the records read at the same time on the given number of
+     * threads. The register is split into chunks that are parsed in parallel when the storage
+     * backend supports it, see StorageBackend.readRegisterEntries(ExecutorService, int).
+     * Chunks are added to the register in file order as they finish, and owners, savings and
+     * checking accounts are added in the same order as loadAllRecords(), so the result is the
+     * same. Once everything is in, every account's owner is checked.
+     *
+     * This is opt-in, loadAllRecords() stays the default: on one core it was measured slower
+     * than the sequential load (CSV 3.4s against 2.6s for 2M entries, see ParallelLoadBenchmark),
+     * since every chunk is held as a list before it is added. Only use it where it has been
+     * measured faster.
+     *
+     * @throws SerializationException also when an account's owner isn't in owners.csv
+     */
+    public int loadAllRecords(int threads) throws IOException, SerializationException {
+        if (threads <= 1) {
+            return loadAllRecords();
+        }
+        clearAllRecords();
+        StorageBackend storage = getStorage();
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        // accounts are made on the pool threads with a register that ignores their OPEN entries
+        // (loadAllRecords() clears those anyway) and are moved to ours afterwards
+        Register discarding = new DiscardingRegister();
+        try {
+            Future<List<Owner>> ownerList = pool.submit(() -> {
+                List<Owner> list = new ArrayList<>();
+                storage.readOwners(list::add);
+                return list;
+            });
+            Future<List<Account>> accountList = pool.submit(() -> {
+                List<Account> list = new ArrayList<>();
+                storage.readAccounts(discarding, list::add);
+                return list;
+            });
+            List<Future<List<RegisterEntry>>> registerParts = storage.readRegisterEntries(pool, threads * 4);
+
+            // the register first, it takes longest and later chunks are still being parsed meanwhile
+            for (Future<List<RegisterEntry>> part : registerParts) {
+                for (RegisterEntry entry : await(part)) {
+                    register.addRegisterEntry(entry);
+                }
+            }
+            for (Owner o : await(ownerList)) {
+                owners.put(o.id(), o);
+            }
+            for (Account account : await(accountList)) {
+                account.useRegister(register);
+                addAccount(account);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+
+        for (Account account : accounts.values()) {
+            if (!owners.containsKey(account.getOwnerId())) {
+                throw new SerializationException("Account " + account.getId() + " has unknown owner " + account.getOwnerId());
+            }
         }
-        logger.info("Loaded {} Accounts", accounts.size());
+        savedRegisterEntries = storage.canAppendRegister() ? register.getEntries().size() : -1;
+        logger.info("Loaded {} Owners, {} Accounts and {} register entries from {} storage on {} threads",
+                owners.size(), accounts.size(), register.getEntries().size(), storage.name(), threads);
         return owners.size() + accounts.size() + register.getEntries().size();
     }
 
+    private static <T> T await(Future<T> future) throws IOException, SerializationException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while loading", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof SerializationException) {
+                throw (SerializationException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IllegalStateException("Load failed", cause);
+        }
+    }
+
+    /** register for accounts being created off the loading thread, their OPEN entries aren't kept */
+    private static final class DiscardingRegister extends Register {
+        @Override
+        public void add(long accountId, String entryName, long amountCents, Date transactionDate) {
+        }
+    }
+
+    /**
+     * Save owners, accounts and the register with the storage backend. With an archive only
+     * the open period is in the register, sealed periods are already saved in the archive,
+     * see useArchive().
+     */
     public int saveAllRecords() throws IOException, SerializationException {
-        int ownerCount = Persister.writeRecordsToCsv(owners.values(), "owners");
-        // this splits all accounts into
-        Map<Class<? extends Account>, List<Account>> splitAccounts = accounts.values().stream().collect(Collectors.groupingBy(rec -> rec.getClass()));
-        int savingsCount = Persister.writeRecordsToCsv(splitAccounts.get(SavingsAccount.class), "savings");
-        int checkingCount = Persister.writeRecordsToCsv(splitAccounts.get(CheckingAccount.class),"checking");
-        int registerCount = Persister.writeRecordsToCsv(register.getEntries(),"register");
-        return ownerCount + savingsCount + checkingCount + registerCount;
+        StorageBackend storage = getStorage();
+        int ownerCount = storage.writeOwners(owners.values());
+        int accountCount = storage.writeAccounts(accounts.values());
+        List<RegisterEntry> entries = register.getEntries();
+        int registerCount = storage.writeRegisterEntries(entries, savedRegisterEntries);
+        savedRegisterEntries = storage.canAppendRegister() ? entries.size() : -1;
+        return ownerCount + accountCount + registerCount;
+    }
+
+    /** write the whole register to register.csv, regardless of the configured register format */
+    public int exportRegisterToCsv() throws IOException, SerializationException {
+        return new CsvStorageBackend().writeRegisterEntries(register.getEntries(), -1);
     }
 
     public void clearAllRecords() {
         owners.clear();
         accounts.clear();
+        accountIdsByOwner.clear();
         register.clear();
+        savedRegisterEntries = -1;
     }
 
     public void validateAccounts() {
@@ -112,9 +638,10 @@ public class Bank {
         }
 
         // check that every object's id matches the key it's stored under
-        for (Map<Long, ? extends Persistable> persistableMap : List.of(owners, accounts)) {
-            for (var kv : persistableMap.entrySet()) {
-                assert kv.getKey().equals(kv.getValue().getId()): "ID of key != id of value: " + kv;
+        for (LongObjectMap<? extends Persistable> persistableMap : List.of(owners, accounts)) {
+            for (long id : persistableMap.keys()) {
+                Persistable value = persistableMap.get(id);
+                assert value.getId() == id: "ID of key != id of value: " + id + "=" + value;
             }
         }
     }
@@ -0,0 +1,176 @@
+import java.util.*;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+
+/**
+ * Read-only view of a Bank for reporting, made by Bank.snapshot(). Reading it takes no locks
+ * and nothing done to the bank afterwards changes it, so a long report can run while deposits
+ * and withdrawals carry on.
+ *
+ * Balances are copied. The register isn't: it is only ever appended to (clear() starts a new
+ * one), so the snapshot keeps a view of the entries that were there when it was taken, plus
+ * the list of segments sealed into the archive at that time.
+ *
+ * Writers are never all stopped. The register view is taken first, with the id it reaches
+ * (see Register.cut()). Then each balance is read, in Account.Concurrency.STRIPED mode holding
+ * only that account's stripe, and the account's entries added after the view are taken back
+ * off it. Every balance change holds its account's stripe until its register entry is added,
+ * so that is the balance as of the view: the snapshot is a point-in-time cut, each balance is
+ * the sum of its account's entries in the view. A writer waits at most for one account's
+ * stripe to be read, where holding every stripe stalled all of them for the whole copy. An
+ * account whose stripe a writer holds is read after the others instead of waiting for it.
+ * The snapshot itself takes longer, its reads compete with the writers; see SnapshotBenchmark. In NONE mode there are no other threads to race with. In ATOMIC mode
+ * deposits and withdrawals take no lock, so one can be between its balance change and its
+ * register entry while its balance is read; isConsistent() is false then.
+ *
+ * The Bank holds off sealing periods into the archive while a snapshot is taken, so each
+ * entry is in exactly one of the archived segments and the view.
+ */
+public class BankSnapshot {
+    private final Date takenAt;
+    private final List<Owner> owners;
+    // in id order, the accounts themselves are only used for their names, owners and types
+    private final List<Account> accounts;
+    private final long[] accountIds;
+    private final long[] balances;
+    private final RegisterArchive archive;
+    private final List<RegisterArchive.Segment> archivedSegments;
+    private final long archivedEntries;
+    private final Collection<RegisterEntry> openEntries;
+    private final boolean consistent;
+
+    BankSnapshot(Collection<Owner> owners, Collection<Account> accounts, RegisterArchive archive, Register register) {
+        this.takenAt = new Date();
+        this.owners = List.copyOf(owners);
+        this.accounts = List.copyOf(accounts);
+        accountIds = new long[this.accounts.size()];
+        balances = new long[this.accounts.size()];
+        this.archive = archive;
+        this.archivedSegments = (archive != null) ? List.copyOf(archive.getSegments()) : List.of();
+        this.archivedEntries = archivedSegments.stream().mapToLong(RegisterArchive.Segment::entryCount).sum();
+        Account.Concurrency concurrency = Account.getConcurrency();
+        Register.Cut cut = cutOf(register);
+        this.openEntries = cut.entries();
+        LockStripes stripes = (concurrency == Account.Concurrency.STRIPED) ? Account.getLockStripes() : null;
+        // accounts whose stripe a writer held, read after the rest rather than waiting for it
+        int[] busy = new int[accountIds.length];
+        int busyCount = 0;
+        for (int i = 0; i < accountIds.length; i++) {
+            accountIds[i] = this.accounts.get(i).getId();
+            ReentrantLock lock = (stripes != null) ? stripes.lockFor(accountIds[i]) : null;
+            if (lock != null && !lock.tryLock()) {
+                busy[busyCount++] = i;
+                continue;
+            }
+            try {
+                balances[i] = balanceAt(this.accounts.get(i), register, cut);
+            } finally {
+                if (lock != null) {
+                    lock.unlock();
+                }
+            }
+        }
+        for (int b = 0; b < busyCount; b++) {
+            int i = busy[b];
+            ReentrantLock lock = stripes.lockFor(accountIds[i]);
+            lock.lock();
+            try {
+                balances[i] = balanceAt(this.accounts.get(i), register, cut);
+            } finally {
+                lock.unlock();
+            }
+        }
+        this.consistent = concurrency != Account.Concurrency.ATOMIC;
+    }
+
+    /**
+     * The account's balance as of the cut, its entries added since are taken back off. Called
+     * holding its stripe in STRIPED mode, so nothing on the account is between its balance
+     * change and its register entry.
+     */
+    private static long balanceAt(Account account, Register register, Register.Cut cut) {
+        return account.getBalanceCents() - amountAfter(register, account.getId(), cut.throughId());
+    }
+
+    // a register that isn't concurrent is locked like Bank locks it for transfers on other threads
+    private static Register.Cut cutOf(Register register) {
+        if (register.isConcurrent()) {
+            return register.cut();
+        }
+        synchronized (register) {
+            return register.cut();
+        }
+    }
+
+    private static long amountAfter(Register register, long accountId, long throughId) {
+        if (register.isConcurrent()) {
+            return register.amountAfter(accountId, throughId, BankSnapshot::movesMoney);
+        }
+        synchronized (register) {
+            return register.amountAfter(accountId, throughId, BankSnapshot::movesMoney);
+        }
+    }
+
+    // an END CHECK entry holds a check number, it was never added to the balance
+    private static boolean movesMoney(RegisterEntry entry) {
+        return !Reconciler.EXCLUDED_ENTRY.equals(entry.entryName());
+    }
+
+    public Date getTakenAt() {
+        return takenAt;
+    }
+
+    /** whether the balances and the register were taken as one cut, false if taken in ATOMIC mode */
+    public boolean isConsistent() {
+        return consistent;
+    }
+
+    /** every owner, in id order */
+    public List<Owner> getOwners() {
+        return owners;
+    }
+
+    /** every account, in id order. Read balances from the snapshot, not from these */
+    public List<Account> getAccounts() {
+        return accounts;
+    }
+
+    public boolean hasAccount(long accountId) {
+        return Arrays.binarySearch(accountIds, accountId) >= 0;
+    }
+
+    /** the account's balance when the snapshot was taken */
+    public long getBalanceCents(long accountId) throws MissingRecordException {
+        int i = Arrays.binarySearch(accountIds, accountId);
+        if (i < 0) {
+            throw new MissingRecordException("Account " + accountId + " not in snapshot");
+        }
+        return balances[i];
+    }
+
+    public long getTotalBalanceCents() {
+        long total = 0;
+        for (long balance : balances) {
+            total += balance;
+        }
+        return total;
+    }
+
+    public long getRegisterEntryCount() {
+        return archivedEntries + openEntries.size();
+    }
+
+    /** every register entry at the time of the snapshot, sealed periods first, read lazily */
+    public Stream<RegisterEntry> getRegisterEntries() {
+        if (archive == null) {
+            return openEntries.stream();
+        }
+        // segments are never changed once sealed, ones sealed after the snapshot aren't in the list
+        return Stream.concat(archive.getEntries(archivedSegments), openEntries.stream());
+    }
+
+    /** one account's register entries at the time of the snapshot, this scans every entry */
+    public Stream<RegisterEntry> getRegisterEntriesForAccount(long accountId) {
+        return getRegisterEntries().filter(e -> e.accountId() == accountId);
+    }
+}
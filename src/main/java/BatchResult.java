@@ -0,0 +1,48 @@
+/**
+ * What happened to each posting passed to Bank.applyBatch(), in the same order.
+ */
+public class BatchResult {
+    public enum Status { APPLIED, UNKNOWN_ACCOUNT }
+
+    private final Status[] statuses;
+    private final int appliedCount;
+    private final long firstEntryId;
+
+    BatchResult(Status[] statuses, int appliedCount, long firstEntryId) {
+        this.statuses = statuses;
+        this.appliedCount = appliedCount;
+        this.firstEntryId = firstEntryId;
+    }
+
+    public int size() {
+        return statuses.length;
+    }
+
+    public Status getStatus(int index) {
+        return statuses[index];
+    }
+
+    public int getAppliedCount() {
+        return appliedCount;
+    }
+
+    public int getRejectedCount() {
+        return statuses.length - appliedCount;
+    }
+
+    public boolean isAllApplied() {
+        return appliedCount == statuses.length;
+    }
+
+    /**
+     * Register id of the first applied posting, the others follow with consecutive ids
+     * in posting order. -1 if nothing was applied.
+     */
+    public long getFirstEntryId() {
+        return firstEntryId;
+    }
+
+    public String toString() {
+        return String.format("BatchResult: %d postings, %d applied, %d rejected", size(), appliedCount, getRejectedCount());
+    }
+}
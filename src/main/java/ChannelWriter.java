@@ -0,0 +1,149 @@
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * An Appendable that encodes text as UTF-8 into a fixed size buffer and writes it to a channel
+ * whenever the buffer fills up, so writing a file of any size only needs the buffer's memory.
+ * Chars go straight into the buffer, a surrogate pair can be split across appends. Subclasses
+ * that format numbers put their digits in with append(char[], int, int).
+ */
+public class ChannelWriter implements Appendable, Flushable, Closeable {
+    public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+    private final WritableByteChannel channel;
+    private final CharBuffer chars;
+    private final ByteBuffer bytes;
+    private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder();
+    private long bytesWritten = 0;
+
+    public ChannelWriter(WritableByteChannel channel) {
+        this(channel, DEFAULT_BUFFER_SIZE);
+    }
+
+    public ChannelWriter(WritableByteChannel channel, int bufferSize) {
+        this.channel = channel;
+        // text that doesn't fit in the byte buffer once encoded is written in several goes
+        chars = CharBuffer.allocate(Math.max(16, bufferSize));
+        bytes = ByteBuffer.allocate(Math.max(16, bufferSize));
+    }
+
+    @Override
+    public ChannelWriter append(CharSequence csq) throws IOException {
+        CharSequence text = (csq != null) ? csq : "null";
+        return append(text, 0, text.length());
+    }
+
+    @Override
+    public ChannelWriter append(CharSequence csq, int start, int end) throws IOException {
+        if (csq == null) {
+            return append("null", start, end);
+        }
+        int position = start;
+        while (position < end) {
+            if (!chars.hasRemaining()) {
+                encode(false);
+            }
+            int count = Math.min(chars.remaining(), end - position);
+            if (csq instanceof String s) {
+                chars.put(s, position, position + count);
+            } else {
+                for (int i = 0; i < count; i++) {
+                    chars.put(csq.charAt(position + i));
+                }
+            }
+            position += count;
+        }
+        return this;
+    }
+
+    @Override
+    public ChannelWriter append(char c) throws IOException {
+        if (!chars.hasRemaining()) {
+            encode(false);
+        }
+        chars.put(c);
+        return this;
+    }
+
+    /** append count chars of text from offset, e.g. digits formatted into a scratch array */
+    protected ChannelWriter append(char[] text, int offset, int count) throws IOException {
+        int position = offset;
+        while (position < offset + count) {
+            if (!chars.hasRemaining()) {
+                encode(false);
+            }
+            int n = Math.min(chars.remaining(), offset + count - position);
+            chars.put(text, position, n);
+            position += n;
+        }
+        return this;
+    }
+
+    /**
+     * Bytes of everything appended so far, including those still in the buffer. The text is
+     * encoded to count it, which writes to the channel if the buffer fills up. Half of a
+     * surrogate pair still waiting for the other half isn't counted yet.
+     */
+    public long getBytesWritten() throws IOException {
+        // nothing is left to encode once closed, and the encoder can't be used again then
+        if (chars.position() > 0) {
+            encodeChars(false);
+        }
+        return bytesWritten + bytes.position();
+    }
+
+    @Override
+    public void flush() throws IOException {
+        encode(false);
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            encode(true);
+            while (encoder.flush(bytes).isOverflow()) {
+                writeBytes();
+            }
+            writeBytes();
+        } finally {
+            channel.close();
+        }
+    }
+
+    private void encode(boolean endOfInput) throws IOException {
+        encodeChars(endOfInput);
+        writeBytes();
+    }
+
+    /** encode the buffered chars, writing to the channel only when the byte buffer is full */
+    private void encodeChars(boolean endOfInput) throws IOException {
+        chars.flip();
+        while (true) {
+            CoderResult result = encoder.encode(chars, bytes, endOfInput);
+            if (result.isOverflow()) {
+                writeBytes();
+            } else if (result.isError()) {
+                result.throwException();
+            } else {
+                break;
+            }
+        }
+        // keeps the first half of a surrogate pair split across appends
+        chars.compact();
+    }
+
+    private void writeBytes() throws IOException {
+        bytes.flip();
+        while (bytes.hasRemaining()) {
+            bytesWritten += channel.write(bytes);
+        }
+        bytes.clear();
+    }
+}
@@ -1,6 +1,9 @@
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
 import java.util.Date;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -13,9 +16,18 @@ public class CheckingAccount extends Account {
     };
 
     private long checkNumber;
+    private static final VarHandle CHECK_NUMBER;
+
+    static {
+        try {
+            CHECK_NUMBER = MethodHandles.lookup().findVarHandle(CheckingAccount.class, "checkNumber", long.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
     
     public long getCheckNumber(){
-        return checkNumber;
+        return (getConcurrency() == Concurrency.NONE) ? checkNumber : (long) CHECK_NUMBER.getVolatile(this);
     }
 
     public CheckingAccount() {
@@ -25,9 +37,19 @@ public class CheckingAccount extends Account {
     }
 
     public CheckingAccount(String name, long id, double balance, long checkNumber, long ownerId) {
-        super(name, id, balance, ownerId);
-        logger.debug(String.format("Creating checking account for %d: %s, %f",
-               ownerId, name, balance));
+        this(name, id, balance, checkNumber, ownerId, null);
+    }
+
+    /** the account on the given register, see Account(String, long, double, long, Register) */
+    public CheckingAccount(String name, long id, double balance, long checkNumber, long ownerId, Register register) {
+        this(name, id, Money.ofDouble(balance), checkNumber, ownerId, register);
+    }
+
+    /** with the balance in cents, private so whole-number literals can't pick it over the public ones */
+    private CheckingAccount(String name, long id, long balanceCents, long checkNumber, long ownerId, Register register) {
+        super(name, id, balanceCents, ownerId, register);
+        logger.debug(String.format("Creating checking account for %d: %s, %s",
+               ownerId, name, Money.toString(balanceCents)));
         logger.warn("Here!! \n\n");
         this.checkNumber = checkNumber;
     }
@@ -42,31 +64,76 @@ public class CheckingAccount extends Account {
      */
     public long writeCheck(String name, double amount, Date transactionDate) throws Exception {
         logger.info(name + " Writing check for " + name + " amount " + amount);
-    	logger.debug("Balance before check:" + getBalance() + " check amount: " + amount);
-        withdraw(amount, String.format("Check %d", checkNumber), transactionDate);
-    	logger.debug("Balance after check:" + getBalance());
-
-        return checkNumber++;
+        ReentrantLock lock = lockAccount();
+        try {
+            // take the number first so concurrent checks never share one
+            long number = (getConcurrency() == Concurrency.NONE) ? checkNumber++ : (long) CHECK_NUMBER.getAndAdd(this, 1L);
+            markActive();
+            logger.debug("Balance before check:" + getBalance() + " check amount: " + amount);
+            withdraw(amount, String.format("Check %d", number), transactionDate);
+            logger.debug("Balance after check:" + getBalance());
+            return number;
+        } finally {
+            unlockAccount(lock);
+        }
     }
 
     @Override
     public void monthEnd() {
-        if (getBalance() < getMinimumBalance()) {
-            withdraw(getBelowMinimumFee(), "MINIMUM BALANCE CHARGE");
+        ReentrantLock lock = lockAccount();
+        try {
+            chargeBelowMinimumFee();
+            long number = getCheckNumber();
+            logger.info(name + " Check # at end of month: " + number);
+            register.add(getId(), "END CHECK", Money.ofUnits(number), new Date());
+        } finally {
+            unlockAccount(lock);
+        }
+    }
+
+    /** END CHECK is already in the register, only the fee can be due */
+    @Override
+    protected void monthEndAfterDormantPostings() {
+        ReentrantLock lock = lockAccount();
+        try {
+            chargeBelowMinimumFee();
+        } finally {
+            unlockAccount(lock);
+        }
+    }
+
+    private void chargeBelowMinimumFee() {
+        if (getBalanceCents() < getMinimumBalanceCents()) {
+            withdrawCents(getBelowMinimumFeeCents(), "MINIMUM BALANCE CHARGE");
         }
-        logger.info(name + " Check # at end of month: " + checkNumber);
-        register.add(getId(), "END CHECK", (double)checkNumber, new Date());
+    }
+
+    /** without activity and with the balance at or above the minimum only END CHECK is left to add */
+    @Override
+    public boolean needsMonthEnd() {
+        return isActiveSinceStatement() || getBalanceCents() < getMinimumBalanceCents();
+    }
+
+    @Override
+    protected void addDormantMonthEndPostings(List<Posting> postings) {
+        postings.add(new Posting(getId(), "END CHECK", Money.ofUnits(getCheckNumber())));
     }
 
     public String toString() {
-        return "Checking " + super.toString() + " Current Check #" + checkNumber;
+        return "Checking " + super.toString() + " Current Check #" + getCheckNumber();
     }
 
     public static CheckingAccount fromCSV(String csv) throws SerializationException {
+        return fromCSV(csv, null);
+    }
+
+    /** like fromCSV(String) with the account on the given register, null for the shared one */
+    public static CheckingAccount fromCSV(String csv, Register register) throws SerializationException {
         final String [] fields = csv.split(DELIMITER);
         final String version = fields[fields.length-1].trim();
-        if (! version.equals("v1")) {
-            throw new SerializationException("Verison incorrect or missing, expected v1 but was " + version);
+        // v1 saved the balance from a double, v2 saves exact cents
+        if (! version.equals("v1") && ! version.equals("v2")) {
+            throw new SerializationException("Verison incorrect or missing, expected v1 or v2 but was " + version);
         }
         if (fields.length != COLUMNS.length) {
             throw new SerializationException(String.format("not enough fields, should be %d but was %d: %s",
@@ -76,28 +143,45 @@ public class CheckingAccount extends Account {
                 // Fields in object: String name, long id, double balance, long checkNumber, long ownerId
                 fields[1].trim(),
                 Long.parseLong(fields[0].trim()),
-                Double.parseDouble(fields[2].trim()),
+                Money.parse(fields[2]),
                 Long.parseLong(fields[3].trim()),
-                Long.parseLong(fields[4].trim())
+                Long.parseLong(fields[4].trim()),
+                register
         );
     }
 
+    /** like fromCSV(String) for the parser's current line, see CsvRecordParser */
+    public static CheckingAccount fromCSV(CsvRecordParser csv) throws SerializationException {
+        return fromCSV(csv, null);
+    }
+
+    /** like fromCSV(String, Register) for the parser's current line */
+    public static CheckingAccount fromCSV(CsvRecordParser csv, Register register) throws SerializationException {
+        csv.checkRecord(COLUMNS, "v1", "v2");
+        long id = csv.nextLong();
+        String name = csv.nextString();
+        long balanceCents = csv.nextCents();
+        long checkNumber = csv.nextLong();
+        return new CheckingAccount(name, id, balanceCents, checkNumber, csv.nextLong(), register);
+    }
+
     public String [] columns() {
         return COLUMNS;
     }
 
     public String toCSV() {
+        return CsvRecordWriter.toLine(this::writeCSV);
+    }
+
+    @Override
+    public void writeCSV(Appendable out) throws IOException {
         // Fields: String name, long id, double balance, long checkNumber, long ownerId
-        List<String> values = List.of(                getId(),
-                name,
-                getBalance(),
-                checkNumber,
-                getOwnerId(),
-                "v1"
-        ).stream()
-                .map(Object::toString)
-                .collect(Collectors.toList());
-        return String.join(DELIMITER+" ", values);
+        CsvRecordWriter.longField(out, getId());
+        CsvRecordWriter.field(out, name);
+        CsvRecordWriter.centsField(out, getBalanceCents());
+        CsvRecordWriter.longField(out, getCheckNumber());
+        CsvRecordWriter.longField(out, getOwnerId());
+        out.append("v2");
     }
 
 
@@ -0,0 +1,198 @@
+import java.util.*;
+import java.util.stream.Stream;
+
+/**
+ * Register that stores entries column by column in growable primitive arrays
+ * instead of one RegisterEntry (plus a Date) per entry. Entry names repeat a lot
+ * ("DEP", "W/D", "INTEREST", ...) so they are dictionary-encoded into an int code.
+ *
+ * RegisterEntry objects are only created when somebody reads an entry, the lists
+ * returned by getEntries()/getEntriesForAccount() are read-only views over the columns.
+ */
+public class ColumnarRegister extends Register {
+    private static final int INITIAL_CAPACITY = 1024;
+    // stored in the date column when an entry has no date
+    private static final long NO_DATE = Long.MIN_VALUE;
+
+    private long[] ids = new long[INITIAL_CAPACITY];
+    private long[] accountIds = new long[INITIAL_CAPACITY];
+    private long[] amounts = new long[INITIAL_CAPACITY];
+    private long[] dates = new long[INITIAL_CAPACITY];
+    private int[] nameCodes = new int[INITIAL_CAPACITY];
+    private int size = 0;
+
+    private final Map<String, Integer> nameDictionary = new HashMap<>();
+    private List<String> names = new ArrayList<>();
+
+    // rows for each account, in the order they were added
+    private final Map<Long, Rows> accountIndex = new HashMap<>();
+
+    private final TimeIndex timeIndex = new TimeIndex();
+    private final Map<Long, TimeIndex> accountTimeIndex = new HashMap<>();
+
+    private final List<RegisterEntry> entriesView = new RowView(null);
+
+    @Override
+    public void add(long accountId, String entryName, long amountCents, Date transactionDate) {
+        logger.debug("Register entry adding: {}, {}", entryName, amountCents);
+        checkEntryName(entryName);
+        append(nextId(), accountId, entryName, amountCents, transactionDate);
+    }
+
+    @Override
+    public long addAll(List<Posting> postings, Date transactionDate) {
+        logger.debug("Register adding {} postings", postings.size());
+        if (postings.isEmpty()) {
+            return -1;
+        }
+        long firstId = nextIds(postings.size());
+        while (size + postings.size() > ids.length) {
+            grow();
+        }
+        long id = firstId;
+        for (Posting posting : postings) {
+            append(id++, posting.accountId(), posting.entryName(), posting.amountCents(), transactionDate);
+        }
+        return firstId;
+    }
+
+    @Override
+    public void addRegisterEntry(RegisterEntry registerEntry) {
+        logger.debug("Adding RegisterEntry verbatim: {}", registerEntry);
+        reserveIdsThrough(registerEntry.id());
+        append(registerEntry.id(), registerEntry.accountId(), registerEntry.entryName(),
+                registerEntry.amountCents(), registerEntry.date());
+    }
+
+    private void append(long id, long accountId, String entryName, long amount, Date date) {
+        if (size == ids.length) {
+            grow();
+        }
+        ids[size] = id;
+        accountIds[size] = accountId;
+        amounts[size] = amount;
+        dates[size] = (date != null) ? date.getTime() : NO_DATE;
+        nameCodes[size] = encodeName(entryName);
+        accountIndex.computeIfAbsent(accountId, k -> new Rows()).add(size);
+        if (date != null) {
+            timeIndex.add(dates[size], size);
+            accountTimeIndex.computeIfAbsent(accountId, k -> new TimeIndex()).add(dates[size], size);
+        }
+        size++;
+    }
+
+    private void grow() {
+        int capacity = ids.length * 2;
+        ids = Arrays.copyOf(ids, capacity);
+        accountIds = Arrays.copyOf(accountIds, capacity);
+        amounts = Arrays.copyOf(amounts, capacity);
+        dates = Arrays.copyOf(dates, capacity);
+        nameCodes = Arrays.copyOf(nameCodes, capacity);
+    }
+
+    private int encodeName(String entryName) {
+        Integer code = nameDictionary.get(entryName);
+        if (code == null) {
+            code = names.size();
+            names.add(entryName);
+            nameDictionary.put(entryName, code);
+        }
+        return code;
+    }
+
+    /** materialize the entry stored in the given row */
+    RegisterEntry entryAt(int row) {
+        long date = dates[row];
+        return new RegisterEntry(ids[row], accountIds[row], names.get(nameCodes[row]), amounts[row],
+                (date != NO_DATE) ? new Date(date) : null);
+    }
+
+    @Override
+    public List<RegisterEntry> getEntries() {
+        return entriesView;
+    }
+
+    /** the columns are only ever appended to, and grow() and clear() replace them, so the view keeps the current ones */
+    @Override
+    public Collection<RegisterEntry> getEntriesSnapshot() {
+        long[] ids = this.ids;
+        long[] accountIds = this.accountIds;
+        long[] amounts = this.amounts;
+        long[] dates = this.dates;
+        int[] nameCodes = this.nameCodes;
+        List<String> names = this.names;
+        return prefixView(row -> new RegisterEntry(ids[row], accountIds[row], names.get(nameCodes[row]), amounts[row],
+                (dates[row] != NO_DATE) ? new Date(dates[row]) : null), size);
+    }
+
+    @Override
+    public List<RegisterEntry> getEntriesForAccount(long accountId) {
+        Rows rows = accountIndex.get(accountId);
+        return (rows != null) ? new RowView(rows) : Collections.emptyList();
+    }
+
+    @Override
+    public Stream<RegisterEntry> getEntriesBetween(Date from, Date to) {
+        return rowsToEntries(timeIndex.rowsBetween(from.getTime(), to.getTime()), this::entryAt);
+    }
+
+    @Override
+    public Stream<RegisterEntry> getEntriesForAccountBetween(long accountId, Date from, Date to) {
+        TimeIndex index = accountTimeIndex.get(accountId);
+        if (index == null) {
+            return Stream.empty();
+        }
+        return rowsToEntries(index.rowsBetween(from.getTime(), to.getTime()), this::entryAt);
+    }
+
+    @Override
+    public void clear() {
+        // new columns rather than overwriting the old ones, snapshots still read those
+        ids = new long[INITIAL_CAPACITY];
+        accountIds = new long[INITIAL_CAPACITY];
+        amounts = new long[INITIAL_CAPACITY];
+        dates = new long[INITIAL_CAPACITY];
+        nameCodes = new int[INITIAL_CAPACITY];
+        names = new ArrayList<>();
+        size = 0;
+        accountIndex.clear();
+        timeIndex.clear();
+        accountTimeIndex.clear();
+        nameDictionary.clear();
+    }
+
+    /** growable list of row numbers */
+    private static final class Rows {
+        private int[] rows = new int[4];
+        private int size = 0;
+
+        void add(int row) {
+            if (size == rows.length) {
+                rows = Arrays.copyOf(rows, size * 2);
+            }
+            rows[size++] = row;
+        }
+    }
+
+    /** read-only view of either every row (rows == null) or just the rows of one account */
+    private final class RowView extends AbstractList<RegisterEntry> implements RandomAccess {
+        private final Rows rows;
+
+        RowView(Rows rows) {
+            this.rows = rows;
+        }
+
+        @Override
+        public RegisterEntry get(int index) {
+            if (index < 0 || index >= size()) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+            }
+            return entryAt((rows == null) ? index : rows.rows[index]);
+        }
+
+        @Override
+        public int size() {
+            return (rows == null) ? ColumnarRegister.this.size : rows.size;
+        }
+    }
+}
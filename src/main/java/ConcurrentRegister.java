@@ -0,0 +1,298 @@
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+/**
+ * Register that any number of threads can append to at the same time without a global lock,
+ * use it as the shared register when a Bank is used from more than one thread.
+ *
+ * Ids come from the JVM-wide sequence every Register uses, so they stay unique across
+ * registers, and entries are kept in lock-free skip lists ordered by id. An id can be
+ * allocated before the thread that owns it has stored its entry, so readers only see entries
+ * up to the "published" id: one below the lowest id still being stored by this register.
+ * A writer records the id it is about to take in the in-flight set before taking it, so no
+ * id can be published past while its entry is missing. That way getEntries() is always a
+ * gap-free prefix of the register, ordered by id.
+ *
+ * addRegisterEntry() is meant for loading saved entries and shouldn't race with add().
+ */
+public class ConcurrentRegister extends Register {
+    private final AtomicReference<Published> published =
+            new AtomicReference<>(new Published(new ConcurrentSkipListMap<>(), lastId(), 0));
+    // first ids of the adds that haven't stored their entries yet, with how many adds claim each
+    private final ConcurrentSkipListMap<Long, Integer> inFlight = new ConcurrentSkipListMap<>();
+    private final Map<Long, ConcurrentSkipListMap<Long, RegisterEntry>> accountIndex = new ConcurrentHashMap<>();
+    // the same entries ordered by date, for range queries
+    private final ConcurrentSkipListMap<TimeKey, RegisterEntry> timeIndex = new ConcurrentSkipListMap<>();
+    private final Map<Long, ConcurrentSkipListMap<TimeKey, RegisterEntry>> accountTimeIndex = new ConcurrentHashMap<>();
+
+    /**
+     * The highest id visible to readers, with how many entries have ids up to it and the map
+     * they are in. Replaced as one, so a reader never pairs a count with the wrong map. The
+     * map itself is replaced rather than cleared by clear(), snapshots still read the old one.
+     */
+    private record Published(ConcurrentSkipListMap<Long, RegisterEntry> entries, long id, int count) {
+        NavigableMap<Long, RegisterEntry> visible() {
+            return entries.headMap(id, true);
+        }
+    }
+
+    /** orders entries by date, ties broken by id */
+    private record TimeKey(long millis, long id) implements Comparable<TimeKey> {
+        @Override
+        public int compareTo(TimeKey o) {
+            int c = Long.compare(millis, o.millis);
+            return (c != 0) ? c : Long.compare(id, o.id);
+        }
+    }
+
+    @Override
+    public boolean isConcurrent() {
+        return true;
+    }
+
+    @Override
+    public void add(long accountId, String entryName, long amountCents, Date transactionDate) {
+        logger.debug("Register entry adding: {}, {}", entryName, amountCents);
+        checkEntryName(entryName);
+        long id = claimIds(1);
+        try {
+            store(new RegisterEntry(id, accountId, entryName, amountCents, transactionDate));
+        } finally {
+            release(id);
+        }
+        publish();
+    }
+
+    /** the batch becomes visible to readers once all of it has been stored */
+    @Override
+    public long addAll(List<Posting> postings, Date transactionDate) {
+        logger.debug("Register adding {} postings", postings.size());
+        if (postings.isEmpty()) {
+            return -1;
+        }
+        long firstId = claimIds(postings.size());
+        try {
+            long id = firstId;
+            for (Posting posting : postings) {
+                store(new RegisterEntry(id++, posting.accountId(), posting.entryName(), posting.amountCents(), transactionDate));
+            }
+        } finally {
+            release(firstId);
+        }
+        publish();
+        return firstId;
+    }
+
+    /**
+     * Take count consecutive ids from the shared sequence. The first one goes into inFlight
+     * before the sequence moves past it, so publish() can't see the ids taken without seeing
+     * them in flight too.
+     */
+    private long claimIds(int count) {
+        while (true) {
+            long firstId = lastId() + 1;
+            inFlight.merge(firstId, 1, Integer::sum);
+            if (Register.claimIds(firstId, count)) {
+                return firstId;
+            }
+            release(firstId);
+        }
+    }
+
+    private void release(long firstId) {
+        inFlight.computeIfPresent(firstId, (id, adds) -> (adds == 1) ? null : adds - 1);
+    }
+
+    @Override
+    public void addRegisterEntry(RegisterEntry registerEntry) {
+        logger.debug("Adding RegisterEntry verbatim: {}", registerEntry);
+        reserveIdsThrough(registerEntry.id());
+        store(registerEntry);
+        if (!advance(registerEntry.id())) {
+            // loaded below the published id, so no advance counted it
+            published.updateAndGet(p -> new Published(p.entries(), p.id(), p.count() + 1));
+        }
+    }
+
+    private void store(RegisterEntry entry) {
+        accountIndex.computeIfAbsent(entry.accountId(), k -> new ConcurrentSkipListMap<>()).put(entry.id(), entry);
+        if (entry.date() != null) {
+            TimeKey key = new TimeKey(entry.date().getTime(), entry.id());
+            accountTimeIndex.computeIfAbsent(entry.accountId(), k -> new ConcurrentSkipListMap<>()).put(key, entry);
+            timeIndex.put(key, entry);
+        }
+        published.get().entries().put(entry.id(), entry);
+    }
+
+    /**
+     * Move the published id forward to one below the lowest id still in flight, or to the last
+     * id allocated when nothing is. The last id is read first: any id up to it was put in
+     * inFlight before it was allocated, and only leaves once its entry is stored. Ids other
+     * registers took in between have no entries here, skipping them is harmless.
+     */
+    private void publish() {
+        long last = lastId();
+        Long lowestInFlight = inFlight.ceilingKey(Long.MIN_VALUE);
+        long upTo = (lowestInFlight == null) ? last : Math.min(last, lowestInFlight - 1);
+        advance(upTo);
+    }
+
+    /**
+     * Move the published id up to upTo, counting the entries it passes. They are all stored
+     * by now and were past the old published id, so only those entries are walked.
+     *
+     * @return false if the published id was already at or past upTo
+     */
+    private boolean advance(long upTo) {
+        while (true) {
+            Published current = published.get();
+            if (upTo <= current.id()) {
+                return false;
+            }
+            int added = current.entries().subMap(current.id(), false, upTo, true).size();
+            if (published.compareAndSet(current, new Published(current.entries(), upTo, current.count() + added))) {
+                return true;
+            }
+        }
+    }
+
+    /** the highest id visible to readers */
+    public long getPublishedId() {
+        return published.get().id();
+    }
+
+    /**
+     * Every published entry, ordered by id. The list is a view of the skip list up to the
+     * published id at the time of the call, so later adds don't change it and nothing is
+     * copied until get() is first called. size() is the published count, it costs O(1).
+     */
+    @Override
+    public List<RegisterEntry> getEntries() {
+        Published p = published.get();
+        return new PrefixList(p.visible(), p.count());
+    }
+
+    /**
+     * The entries published so far, ordered by id. This is a view of the skip list up to the
+     * published id, which never changes again, so it costs O(1) and doesn't block writers.
+     */
+    @Override
+    public Collection<RegisterEntry> getEntriesSnapshot() {
+        return getEntries();
+    }
+
+    /** the published entries and the published id, from the same publication */
+    @Override
+    Cut cut() {
+        Published p = published.get();
+        return new Cut(new PrefixList(p.visible(), p.count()), p.id());
+    }
+
+    /** counts the entries still waiting to be published too, they are already in the account's index */
+    @Override
+    long amountAfter(long accountId, long throughId, Predicate<RegisterEntry> counted) {
+        ConcurrentSkipListMap<Long, RegisterEntry> accountEntries = accountIndex.get(accountId);
+        if (accountEntries == null) {
+            return 0;
+        }
+        long amount = 0;
+        for (Map.Entry<Long, RegisterEntry> after = accountEntries.higherEntry(throughId); after != null;
+                after = accountEntries.higherEntry(after.getKey())) {
+            if (counted.test(after.getValue())) {
+                amount += after.getValue().amountCents();
+            }
+        }
+        return amount;
+    }
+
+    /**
+     * @return a view of the account's published entries, ordered by id. Later adds don't
+     *         change it, size() counts the account's entries the first time it is called
+     */
+    @Override
+    public List<RegisterEntry> getEntriesForAccount(long accountId) {
+        ConcurrentSkipListMap<Long, RegisterEntry> accountEntries = accountIndex.get(accountId);
+        if (accountEntries == null) {
+            return Collections.emptyList();
+        }
+        return new PrefixList(accountEntries.headMap(published.get().id(), true), -1);
+    }
+
+    /** @return a view like getEntriesForAccount()'s of the account's entries with ids after afterId */
+    @Override
+    public List<RegisterEntry> getEntriesForAccountAfter(long accountId, long afterId) {
+        ConcurrentSkipListMap<Long, RegisterEntry> accountEntries = accountIndex.get(accountId);
+        long publishedId = published.get().id();
+        if (accountEntries == null || afterId >= publishedId) {
+            return Collections.emptyList();
+        }
+        return new PrefixList(accountEntries.subMap(afterId, false, publishedId, true), -1);
+    }
+
+    @Override
+    public Stream<RegisterEntry> getEntriesBetween(Date from, Date to) {
+        return visibleBetween(timeIndex, from, to);
+    }
+
+    @Override
+    public Stream<RegisterEntry> getEntriesForAccountBetween(long accountId, Date from, Date to) {
+        ConcurrentSkipListMap<TimeKey, RegisterEntry> accountEntries = accountTimeIndex.get(accountId);
+        return (accountEntries != null) ? visibleBetween(accountEntries, from, to) : Stream.empty();
+    }
+
+    private Stream<RegisterEntry> visibleBetween(ConcurrentSkipListMap<TimeKey, RegisterEntry> map, Date from, Date to) {
+        long publishedId = published.get().id();
+        return map.subMap(new TimeKey(from.getTime(), Long.MIN_VALUE), new TimeKey(to.getTime(), Long.MIN_VALUE))
+                .values().stream()
+                .filter(e -> e.id() <= publishedId);
+    }
+
+    /**
+     * A read-only List over an id-ordered map that no longer changes. Iterating walks the map,
+     * the first get() copies it into an array once since the map can't be indexed.
+     */
+    private static final class PrefixList extends AbstractList<RegisterEntry> {
+        private final NavigableMap<Long, RegisterEntry> prefix;
+        private RegisterEntry[] indexed;
+        private int size;
+
+        /** @param size how many entries prefix holds, -1 to count them when size() is first called */
+        PrefixList(NavigableMap<Long, RegisterEntry> prefix, int size) {
+            this.prefix = prefix;
+            this.size = size;
+        }
+
+        @Override
+        public int size() {
+            if (size < 0) {
+                size = (indexed != null) ? indexed.length : prefix.size();
+            }
+            return size;
+        }
+
+        @Override
+        public RegisterEntry get(int index) {
+            if (indexed == null) {
+                indexed = prefix.values().toArray(new RegisterEntry[0]);
+            }
+            return indexed[Objects.checkIndex(index, indexed.length)];
+        }
+
+        @Override
+        public Iterator<RegisterEntry> iterator() {
+            return Collections.unmodifiableCollection(prefix.values()).iterator();
+        }
+    }
+
+    @Override
+    public void clear() {
+        published.updateAndGet(p -> new Published(new ConcurrentSkipListMap<>(), p.id(), 0));
+        accountIndex.clear();
+        timeIndex.clear();
+        accountTimeIndex.clear();
+    }
+}
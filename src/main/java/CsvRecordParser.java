@@ -0,0 +1,421 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Reads the saved CSV files straight from bytes, without making a String per line or an array
+ * of Strings per record like fromCSV(String) does. Numbers are parsed in place, and text fields
+ * that repeat (register entry names, empty owner fields) come from a small cache, so a register
+ * entry costs the RegisterEntry and its Date and usually nothing else.
+ *
+ * Works on a ByteBuffer holding whole lines, e.g. a mapped chunk of a file, or on a channel
+ * read through a buffer that is refilled as it is used up.
+ *
+ * Go through the file with nextLine(), then read the fields of the line in order with
+ * nextLong(), nextCents(), nextDouble() and nextString(). checkRecord() validates the version
+ * and the number of fields first, the same way the fromCSV(String) methods do. Fields are
+ * separated by Persistable.DELIMITER and trimmed. Amounts or rates that need more than the
+ * simple cases here (long fractions written by the old double-based code, exponents) fall back
+ * to Money.parse() and Double.parseDouble().
+ */
+public class CsvRecordParser {
+    private static final byte DELIMITER = (byte) Persistable.DELIMITER.charAt(0);
+    private static final int DEFAULT_BUFFER_BYTES = 1 << 20;
+    // longest text field kept in the cache, longer ones are rarely repeated
+    private static final int MAX_CACHED_LENGTH = 32;
+    private static final int CACHE_SIZE = 1024;
+    // doubles with up to this many digits divided by a power of ten of at most 22 are exact
+    private static final int MAX_FAST_DOUBLE_DIGITS = 15;
+    private static final double[] POWERS_OF_TEN = new double[23];
+
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+        }
+    }
+
+    // what has been read so far, valid up to limit
+    private byte[] bytes;
+    private int limit;
+    // where more bytes come from, null once everything has been read
+    private final ByteBuffer source;
+    private final ReadableByteChannel channel;
+    private boolean endOfInput;
+
+    // the current line, without its line break, and where the next field starts
+    private int lineStart;
+    private int lineEnd;
+    private int next;
+    private int nextLineStart;
+    // counted while looking for the end of the line, so checkRecord() doesn't scan it again
+    private int lineDelimiters;
+    private int lastDelimiterInLine;
+    private long lineNumber = 0;
+
+    // the last field found by field()
+    private int fieldStart;
+    private int fieldEnd;
+
+    private final byte[][] cachedBytes = new byte[CACHE_SIZE][];
+    private final String[] cachedStrings = new String[CACHE_SIZE];
+
+    /**
+     * Parse the bytes between the buffer's position and limit. A heap buffer is read in
+     * place, any other (e.g. a mapped file) is copied a block at a time into a byte array,
+     * which is much quicker to scan than a ByteBuffer is one byte at a time.
+     */
+    public CsvRecordParser(ByteBuffer buffer) {
+        this.channel = null;
+        if (buffer.hasArray()) {
+            this.source = null;
+            this.bytes = buffer.array();
+            this.nextLineStart = buffer.arrayOffset() + buffer.position();
+            this.limit = buffer.arrayOffset() + buffer.limit();
+            this.endOfInput = true;
+        } else {
+            this.source = buffer.duplicate();
+            this.bytes = new byte[Math.min(DEFAULT_BUFFER_BYTES, Math.max(buffer.remaining(), 1))];
+        }
+    }
+
+    /** parse everything read from the channel, which the caller closes */
+    public CsvRecordParser(ReadableByteChannel channel) {
+        this(channel, DEFAULT_BUFFER_BYTES);
+    }
+
+    public CsvRecordParser(ReadableByteChannel channel, int bufferBytes) {
+        this.source = null;
+        this.channel = channel;
+        this.bytes = new byte[bufferBytes];
+    }
+
+    /**
+     * Move to the next line that isn't blank.
+     *
+     * @return false when there are no more lines
+     */
+    public boolean nextLine() throws IOException {
+        while (true) {
+            int end = nextLineStart;
+            int delimiters = 0;
+            int lastDelimiter = -1;
+            for (byte b; end < limit && (b = bytes[end]) != '\n'; end++) {
+                if (b == DELIMITER) {
+                    delimiters++;
+                    lastDelimiter = end;
+                }
+            }
+            if (end == limit && !endOfInput) {
+                // the line goes on past what has been read so far
+                refill();
+                continue;
+            }
+            if (nextLineStart >= limit) {
+                return false;
+            }
+            lineStart = nextLineStart;
+            lineEnd = end;
+            lineDelimiters = delimiters;
+            lastDelimiterInLine = (lastDelimiter >= 0) ? lastDelimiter : lineStart - 1;
+            nextLineStart = Math.min(end + 1, limit);
+            lineNumber++;
+            if (lineEnd > lineStart && bytes[lineEnd - 1] == '\r') {
+                lineEnd--;
+            }
+            next = lineStart;
+            if (!isBlank()) {
+                return true;
+            }
+        }
+    }
+
+    /** keep the unfinished line at the start of the array and read more after it */
+    private void refill() throws IOException {
+        int unread = limit - nextLineStart;
+        byte[] target = (unread == bytes.length) ? new byte[bytes.length * 2] : bytes;
+        System.arraycopy(bytes, nextLineStart, target, 0, unread);
+        bytes = target;
+        nextLineStart = 0;
+        limit = unread;
+        if (source != null) {
+            int count = Math.min(source.remaining(), bytes.length - limit);
+            source.get(bytes, limit, count);
+            limit += count;
+            endOfInput = !source.hasRemaining();
+            return;
+        }
+        ByteBuffer into = ByteBuffer.wrap(bytes, limit, bytes.length - limit);
+        while (into.hasRemaining()) {
+            if (channel.read(into) < 0) {
+                endOfInput = true;
+                break;
+            }
+        }
+        limit = into.position();
+    }
+
+    private boolean isBlank() {
+        for (int i = lineStart; i < lineEnd; i++) {
+            if ((bytes[i] & 0xff) > ' ') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** 1 for the first line read, for messages */
+    public long getLineNumber() {
+        return lineNumber;
+    }
+
+    /** does the current line start with the given ASCII text, e.g. the first column of a header */
+    public boolean lineStartsWith(String prefix) {
+        if (lineEnd - lineStart < prefix.length()) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length(); i++) {
+            if (bytes[lineStart + i] != prefix.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** the current line as text, only for messages */
+    public String line() {
+        return decode(lineStart, lineEnd);
+    }
+
+    /**
+     * Check the current line is a record with the given columns, the last being the version,
+     * before its fields are read. Like fromCSV(String), the version is checked first.
+     */
+    public void checkRecord(String[] columns, String... versions) throws SerializationException {
+        int fields = lineDelimiters + 1;
+        fieldStart = lastDelimiterInLine + 1;
+        fieldEnd = lineEnd;
+        trimField();
+        boolean knownVersion = false;
+        for (String version : versions) {
+            knownVersion |= fieldEquals(version);
+        }
+        if (!knownVersion) {
+            throw new SerializationException(String.format("Version incorrect or missing, expected %s but was %s on line %d",
+                    String.join(" or ", versions), decode(fieldStart, fieldEnd), lineNumber));
+        }
+        if (fields != columns.length) {
+            throw new SerializationException(String.format("not enough fields, should be %d but was %d: %s",
+                    columns.length, fields, line()));
+        }
+    }
+
+    private boolean fieldEquals(String ascii) {
+        if (fieldEnd - fieldStart != ascii.length()) {
+            return false;
+        }
+        for (int i = 0; i < ascii.length(); i++) {
+            if (bytes[fieldStart + i] != ascii.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** find the next field of the line and step past its delimiter */
+    private void field() throws SerializationException {
+        if (next > lineEnd) {
+            throw new SerializationException("not enough fields on line " + lineNumber + ": " + line());
+        }
+        fieldStart = next;
+        int end = next;
+        while (end < lineEnd && bytes[end] != DELIMITER) {
+            end++;
+        }
+        fieldEnd = end;
+        next = end + 1;
+        trimField();
+    }
+
+    /** like String.trim() */
+    private void trimField() {
+        while (fieldStart < fieldEnd && (bytes[fieldStart] & 0xff) <= ' ') {
+            fieldStart++;
+        }
+        while (fieldEnd > fieldStart && (bytes[fieldEnd - 1] & 0xff) <= ' ') {
+            fieldEnd--;
+        }
+    }
+
+    public long nextLong() throws SerializationException {
+        field();
+        int i = fieldStart;
+        boolean negative = i < fieldEnd && bytes[i] == '-';
+        if (negative || (i < fieldEnd && bytes[i] == '+')) {
+            i++;
+        }
+        // up to 18 digits can't overflow, anything longer goes through Long.parseLong
+        if (i == fieldEnd || fieldEnd - i > 18) {
+            return parseLong(decode(fieldStart, fieldEnd));
+        }
+        long value = 0;
+        for (; i < fieldEnd; i++) {
+            int digit = bytes[i] - '0';
+            if (digit < 0 || digit > 9) {
+                throw badField("number");
+            }
+            value = value * 10 + digit;
+        }
+        return negative ? -value : value;
+    }
+
+    /** an amount such as "12.50" in cents, see Money.parse() */
+    public long nextCents() throws SerializationException {
+        field();
+        int i = fieldStart;
+        boolean negative = i < fieldEnd && bytes[i] == '-';
+        if (negative) {
+            i++;
+        }
+        long units = 0;
+        int digits = 0;
+        for (; i < fieldEnd && digits <= 15; i++, digits++) {
+            int digit = bytes[i] - '0';
+            if (digit < 0 || digit > 9) {
+                break;
+            }
+            units = units * 10 + digit;
+        }
+        long cents = 0;
+        int decimals = 0;
+        if (i < fieldEnd && bytes[i] == '.') {
+            i++;
+            for (; i < fieldEnd && decimals < 2; i++, decimals++) {
+                int digit = bytes[i] - '0';
+                if (digit < 0 || digit > 9) {
+                    break;
+                }
+                cents = cents * 10 + digit;
+            }
+            if (decimals == 1) {
+                cents *= 10;
+            }
+        }
+        if (i != fieldEnd || digits + decimals == 0) {
+            // more decimals, an exponent, a huge amount or not a number at all
+            return parseCents(decode(fieldStart, fieldEnd));
+        }
+        long amount = units * Money.CENTS_PER_UNIT + cents;
+        return negative ? -amount : amount;
+    }
+
+    /** a rate such as "0.02" */
+    public double nextDouble() throws SerializationException {
+        field();
+        int i = fieldStart;
+        boolean negative = i < fieldEnd && bytes[i] == '-';
+        if (negative) {
+            i++;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int decimals = -1;
+        for (; i < fieldEnd; i++) {
+            byte b = bytes[i];
+            if (b == '.' && decimals < 0) {
+                decimals = 0;
+                continue;
+            }
+            int digit = b - '0';
+            if (digit < 0 || digit > 9 || digits == MAX_FAST_DOUBLE_DIGITS) {
+                break;
+            }
+            mantissa = mantissa * 10 + digit;
+            digits++;
+            if (decimals >= 0) {
+                decimals++;
+            }
+        }
+        if (i != fieldEnd || digits == 0) {
+            return parseDouble(decode(fieldStart, fieldEnd));
+        }
+        // both numbers are exact doubles, so one division gives the correctly rounded result
+        double value = (decimals > 0) ? mantissa / POWERS_OF_TEN[decimals] : mantissa;
+        return negative ? -value : value;
+    }
+
+    /** step over a field that isn't needed, e.g. the name when only balances are read */
+    public void skipField() throws SerializationException {
+        field();
+    }
+
+    /** a text field, trimmed */
+    public String nextString() throws SerializationException {
+        field();
+        int length = fieldEnd - fieldStart;
+        if (length == 0) {
+            return "";
+        }
+        if (length > MAX_CACHED_LENGTH) {
+            return decode(fieldStart, fieldEnd);
+        }
+        int hash = 0;
+        for (int i = fieldStart; i < fieldEnd; i++) {
+            hash = 31 * hash + bytes[i];
+        }
+        int slot = (hash ^ (hash >>> 16)) & (CACHE_SIZE - 1);
+        byte[] cached = cachedBytes[slot];
+        if (cached != null && cached.length == length && sameBytes(cached)) {
+            return cachedStrings[slot];
+        }
+        byte[] copy = Arrays.copyOfRange(bytes, fieldStart, fieldEnd);
+        String value = new String(copy, StandardCharsets.UTF_8);
+        cachedBytes[slot] = copy;
+        cachedStrings[slot] = value;
+        return value;
+    }
+
+    private boolean sameBytes(byte[] cached) {
+        for (int i = 0; i < cached.length; i++) {
+            if (cached[i] != bytes[fieldStart + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private String decode(int from, int to) {
+        return new String(bytes, from, to - from, StandardCharsets.UTF_8);
+    }
+
+    private long parseLong(String text) throws SerializationException {
+        try {
+            return Long.parseLong(text);
+        } catch (NumberFormatException e) {
+            throw badField("number");
+        }
+    }
+
+    private long parseCents(String text) throws SerializationException {
+        try {
+            return Money.parse(text);
+        } catch (NumberFormatException | ArithmeticException e) {
+            throw badField("amount");
+        }
+    }
+
+    private double parseDouble(String text) throws SerializationException {
+        try {
+            return Double.parseDouble(text);
+        } catch (NumberFormatException e) {
+            throw badField("number");
+        }
+    }
+
+    private SerializationException badField(String what) {
+        return new SerializationException(String.format("Bad %s '%s' on line %d: %s",
+                what, decode(fieldStart, fieldEnd), lineNumber, line()));
+    }
+}
@@ -0,0 +1,126 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * A ChannelWriter for CSV files: records write themselves into it with
+ * Persistable.writeCSV(Appendable), and numbers and amounts go in as digits without making a
+ * String first. Saving a file takes the buffer and nothing in proportion to the file.
+ *
+ * The static field methods write one field and its delimiter to any Appendable, numbers go
+ * straight into the buffer when it is a CsvRecordWriter. writeCSV() implementations use them
+ * for every field but the last, the version.
+ *
+ * Closing flushes what is left and closes the channel. Not thread-safe.
+ */
+public class CsvRecordWriter extends ChannelWriter {
+    private static final String LINE_SEPARATOR = System.lineSeparator();
+
+    // scratch for the digits of a number, written backwards from the end
+    private final char[] digits = new char[20];
+
+    public CsvRecordWriter(WritableByteChannel channel) {
+        super(channel);
+    }
+
+    public CsvRecordWriter(WritableByteChannel channel, int bufferSize) {
+        super(channel, bufferSize);
+    }
+
+    /** the text of the record, the same as toCSV() for records that write themselves */
+    public static String toLine(Fields record) {
+        StringBuilder sb = new StringBuilder(64);
+        try {
+            record.writeTo(sb);
+        } catch (IOException e) {
+            // a StringBuilder doesn't throw
+            throw new UncheckedIOException(e);
+        }
+        return sb.toString();
+    }
+
+    /** a writeCSV() that only throws IOException, see toLine() */
+    @FunctionalInterface
+    public interface Fields {
+        void writeTo(Appendable out) throws IOException;
+    }
+
+    /** the value and the delimiter after it, straight into the buffer when out is a CsvRecordWriter */
+    public static void longField(Appendable out, long value) throws IOException {
+        if (out instanceof CsvRecordWriter) {
+            ((CsvRecordWriter) out).writeLong(value);
+        } else if (out instanceof StringBuilder) {
+            ((StringBuilder) out).append(value);
+        } else {
+            out.append(Long.toString(value));
+        }
+        delimiter(out);
+    }
+
+    /** cents as an amount with two decimals, the same text as Money.toString(), and the delimiter */
+    public static void centsField(Appendable out, long cents) throws IOException {
+        if (out instanceof CsvRecordWriter) {
+            ((CsvRecordWriter) out).writeCents(cents);
+        } else if (out instanceof StringBuilder) {
+            Money.appendTo((StringBuilder) out, cents, false);
+        } else {
+            out.append(Money.toString(cents));
+        }
+        delimiter(out);
+    }
+
+    /** text and the delimiter, null is written as an empty field */
+    public static void field(Appendable out, CharSequence text) throws IOException {
+        if (text != null) {
+            out.append(text);
+        }
+        delimiter(out);
+    }
+
+    /** the delimiter and the space that goes after it in saved files */
+    private static void delimiter(Appendable out) throws IOException {
+        out.append(Persistable.DELIMITER).append(' ');
+    }
+
+    /** the end of a line, the platform's line separator like Files.write() */
+    public CsvRecordWriter newLine() throws IOException {
+        append(LINE_SEPARATOR);
+        return this;
+    }
+
+    public CsvRecordWriter writeLong(long value) throws IOException {
+        if (value == Long.MIN_VALUE) {
+            append(Long.toString(value));
+            return this;
+        }
+        if (value < 0) {
+            append('-');
+            value = -value;
+        }
+        int start = digits.length;
+        do {
+            digits[--start] = (char) ('0' + value % 10);
+            value /= 10;
+        } while (value != 0);
+        append(digits, start, digits.length - start);
+        return this;
+    }
+
+    public CsvRecordWriter writeCents(long cents) throws IOException {
+        if (cents == Long.MIN_VALUE) {
+            append(Money.toString(cents));
+            return this;
+        }
+        if (cents < 0) {
+            append('-');
+            cents = -cents;
+        }
+        writeLong(cents / Money.CENTS_PER_UNIT);
+        long fraction = cents % Money.CENTS_PER_UNIT;
+        digits[0] = '.';
+        digits[1] = (char) ('0' + fraction / 10);
+        digits[2] = (char) ('0' + fraction % 10);
+        append(digits, 0, 3);
+        return this;
+    }
+}
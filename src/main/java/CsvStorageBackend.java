@@ -0,0 +1,62 @@
+import java.io.IOException;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+/**
+ * Everything in CSV files: owners.csv, savings.csv, checking.csv and register.csv in the
+ * directory and with the prefix and suffix from Persister's properties. The register is
+ * rewritten on every save.
+ */
+public class CsvStorageBackend implements StorageBackend {
+
+    @Override
+    public String name() {
+        return "csv";
+    }
+
+    @Override
+    public long readOwners(Consumer<? super Owner> consumer) throws IOException, SerializationException {
+        return Persister.readOwnersFromCsv(consumer);
+    }
+
+    @Override
+    public long readAccounts(Register register, Consumer<? super Account> consumer) throws IOException, SerializationException {
+        return Persister.readSavingsAccountsFromCsv(register, consumer) + Persister.readCheckingAccountsFromCsv(register, consumer);
+    }
+
+    @Override
+    public long readRegisterEntries(Consumer<? super RegisterEntry> consumer) throws IOException, SerializationException {
+        return Persister.readRegisterEntriesFromCsv(consumer);
+    }
+
+    /** register.csv split at line boundaries, each chunk parsed from its own mapping */
+    @Override
+    public List<Future<List<RegisterEntry>>> readRegisterEntries(ExecutorService executor, int parts)
+            throws IOException, SerializationException {
+        return Persister.readRegisterEntriesFromCsv(executor, parts);
+    }
+
+    @Override
+    public int writeOwners(Collection<Owner> owners) throws IOException, SerializationException {
+        return Persister.writeRecordsToCsv(owners, "owners");
+    }
+
+    @Override
+    public int writeAccounts(Collection<Account> accounts) throws IOException, SerializationException {
+        Map<Class<? extends Account>, List<Account>> splitAccounts = accounts.stream()
+                .collect(Collectors.groupingBy(rec -> rec.getClass()));
+        // a type with no accounts still gets an empty file
+        return Persister.writeRecordsToCsv(splitAccounts.get(SavingsAccount.class), "savings")
+                + Persister.writeRecordsToCsv(splitAccounts.get(CheckingAccount.class), "checking");
+    }
+
+    @Override
+    public int writeRegisterEntries(List<RegisterEntry> entries, int alreadySaved) throws IOException, SerializationException {
+        return Persister.writeRecordsToCsv(entries, "register");
+    }
+}
@@ -0,0 +1,78 @@
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+/**
+ * Owners and accounts in CSV files like CsvStorageBackend, the register in a binary
+ * RegisterJournal that a save only appends the new entries to. Until the journal exists the
+ * register is read from register.csv, which is how an existing register gets imported the
+ * first time the journal is used.
+ */
+public class JournalStorageBackend extends CsvStorageBackend {
+    public static Logger logger = LogManager.getLogger(JournalStorageBackend.class.getName());
+
+    @Override
+    public String name() {
+        return "journal";
+    }
+
+    @Override
+    public long readRegisterEntries(Consumer<? super RegisterEntry> consumer) throws IOException, SerializationException {
+        RegisterJournal journal = Persister.getRegisterJournal();
+        if (!journal.exists()) {
+            return super.readRegisterEntries(consumer);
+        }
+        long count = journal.forEach(consumer::accept);
+        logger.info("Loaded {} register entries from journal {}", count, journal.getPath());
+        return count;
+    }
+
+    /** the journal's records split into ranges, each read by one executor thread from its own mapping */
+    @Override
+    public List<Future<List<RegisterEntry>>> readRegisterEntries(ExecutorService executor, int parts) throws IOException, SerializationException {
+        RegisterJournal journal = Persister.getRegisterJournal();
+        if (!journal.exists()) {
+            return super.readRegisterEntries(executor, parts);
+        }
+        long count = journal.recordCount();
+        long perPart = Math.max(1, (count + parts - 1) / parts);
+        List<Future<List<RegisterEntry>>> futures = new ArrayList<>();
+        for (long first = 0; first < count; first += perPart) {
+            long from = first;
+            futures.add(executor.submit(() -> {
+                List<RegisterEntry> entries = new ArrayList<>((int) Math.min(perPart, count - from));
+                journal.forEach(from, perPart, entries::add);
+                return entries;
+            }));
+        }
+        return futures;
+    }
+
+    /**
+     * Appends the entries after alreadySaved. When that isn't known the whole journal is
+     * rewritten into a new file that replaces the old one once it is complete.
+     */
+    @Override
+    public int writeRegisterEntries(List<RegisterEntry> entries, int alreadySaved) throws IOException, SerializationException {
+        RegisterJournal journal = Persister.getRegisterJournal();
+        if (alreadySaved < 0 || alreadySaved > entries.size()) {
+            journal.rewrite(entries);
+        } else {
+            journal.append(entries.subList(alreadySaved, entries.size()));
+        }
+        return entries.size();
+    }
+
+    /** an older format journal is rewritten in the current format on the next save */
+    @Override
+    public boolean canAppendRegister() throws IOException, SerializationException {
+        RegisterJournal journal = Persister.getRegisterJournal();
+        return journal.exists() && journal.formatVersion() == RegisterJournal.VERSION;
+    }
+}
@@ -0,0 +1,99 @@
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A fixed set of locks shared by many keys. A key (an account id) always maps to the same
+ * lock, so operations on one account are serialized while operations on different accounts
+ * usually take different locks and run in parallel. Memory stays constant no matter how
+ * many accounts there are.
+ */
+public class LockStripes {
+    private final ReentrantLock[] locks;
+    private final int mask;
+
+    /**
+     * @param stripes number of locks, rounded up to a power of two
+     */
+    public LockStripes(int stripes) {
+        if (stripes < 1) {
+            throw new IllegalArgumentException("Need at least one stripe but was " + stripes);
+        }
+        int size = (stripes == 1) ? 1 : Integer.highestOneBit(stripes - 1) << 1;
+        locks = new ReentrantLock[size];
+        for (int i = 0; i < size; i++) {
+            locks[i] = new ReentrantLock();
+        }
+        mask = size - 1;
+    }
+
+    public int size() {
+        return locks.length;
+    }
+
+    /** which stripe a key maps to, ids are usually sequential so they get mixed first */
+    public int stripeFor(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+
+    public ReentrantLock lockFor(long key) {
+        return locks[stripeFor(key)];
+    }
+
+    /**
+     * Lock the stripes of two keys, lowest stripe first. Every caller takes them in the same
+     * order so two threads locking the same pair the opposite way round can't deadlock.
+     * Keys sharing a stripe lock it once.
+     */
+    public void lockBoth(long key1, long key2) {
+        int s1 = stripeFor(key1);
+        int s2 = stripeFor(key2);
+        locks[Math.min(s1, s2)].lock();
+        if (s1 != s2) {
+            locks[Math.max(s1, s2)].lock();
+        }
+    }
+
+    public void unlockBoth(long key1, long key2) {
+        int s1 = stripeFor(key1);
+        int s2 = stripeFor(key2);
+        if (s1 != s2) {
+            locks[Math.max(s1, s2)].unlock();
+        }
+        locks[Math.min(s1, s2)].unlock();
+    }
+
+    /**
+     * Lock the stripes of all the keys, lowest stripe first like lockBoth(), each stripe once.
+     *
+     * @return the stripes locked, pass them to unlock()
+     */
+    public BitSet lockAll(Collection<Long> keys) {
+        BitSet stripes = new BitSet(locks.length);
+        for (long key : keys) {
+            stripes.set(stripeFor(key));
+        }
+        for (int s = stripes.nextSetBit(0); s >= 0; s = stripes.nextSetBit(s + 1)) {
+            locks[s].lock();
+        }
+        return stripes;
+    }
+
+    /** lock every stripe, lowest first, so nothing holding a stripe is in progress until unlock() */
+    public BitSet lockAll() {
+        BitSet stripes = new BitSet(locks.length);
+        stripes.set(0, locks.length);
+        for (ReentrantLock lock : locks) {
+            lock.lock();
+        }
+        return stripes;
+    }
+
+    /** release the stripes a lockAll() took */
+    public void unlock(BitSet stripes) {
+        for (int s = stripes.previousSetBit(locks.length - 1); s >= 0; s = stripes.previousSetBit(s - 1)) {
+            locks[s].unlock();
+        }
+    }
+}
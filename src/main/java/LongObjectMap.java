@@ -0,0 +1,193 @@
+import java.util.*;
+
+/**
+ * Map from primitive long ids to objects, for id lookups that don't box the key or walk a
+ * tree. Keys and values sit in two parallel arrays with open addressing and linear probing,
+ * a lookup is usually one multiply and one or two array reads.
+ *
+ * values() iterates in ascending key order using a separate sorted array of the keys. Ids
+ * are usually added in increasing order, then the new key is just appended to the sorted
+ * array; otherwise the array is re-sorted the next time values() is iterated.
+ *
+ * Null values aren't allowed and nothing is ever removed except by clear(). Not thread-safe
+ * for writers, any number of threads can read once it is no longer changing.
+ */
+public class LongObjectMap<V> {
+    private static final int MIN_CAPACITY = 16;
+    private static final long MIX = 0x9E3779B97F4A7C15L;
+
+    private long[] keys;
+    // a null value marks an empty slot, so 0 can be used as a key
+    private Object[] values;
+    private int shift;
+    private int size = 0;
+
+    // keys in ascending order, the first sortedCount of them are valid
+    private long[] sortedKeys = new long[0];
+    private int sortedCount = 0;
+
+    public LongObjectMap() {
+        this(MIN_CAPACITY);
+    }
+
+    /** @param expectedSize number of entries to make room for without resizing */
+    public LongObjectMap(int expectedSize) {
+        allocate(capacityFor(expectedSize));
+    }
+
+    /** smallest power of two keeping the table at most 3/4 full */
+    private static int capacityFor(int size) {
+        long needed = Math.max(MIN_CAPACITY, (long) size * 4 / 3 + 1);
+        if (needed > 1 << 30) {
+            throw new IllegalArgumentException("Too many entries for a LongObjectMap: " + size);
+        }
+        return Integer.highestOneBit((int) needed - 1) << 1;
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new Object[capacity];
+        shift = 64 - Integer.numberOfTrailingZeros(capacity);
+    }
+
+    /** Fibonacci hashing so sequential ids are spread over the whole table */
+    private int slotFor(long key) {
+        return (int) ((key * MIX) >>> shift);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(long key) {
+        int mask = keys.length - 1;
+        for (int slot = slotFor(key); ; slot = (slot + 1) & mask) {
+            Object value = values[slot];
+            if (value == null || keys[slot] == key) {
+                return (V) value;
+            }
+        }
+    }
+
+    public boolean containsKey(long key) {
+        return get(key) != null;
+    }
+
+    /** @return the value previously stored under key, null if there wasn't one */
+    @SuppressWarnings("unchecked")
+    public V put(long key, V value) {
+        Objects.requireNonNull(value, "LongObjectMap values can't be null");
+        int mask = keys.length - 1;
+        int slot = slotFor(key);
+        for (; values[slot] != null; slot = (slot + 1) & mask) {
+            if (keys[slot] == key) {
+                V previous = (V) values[slot];
+                values[slot] = value;
+                return previous;
+            }
+        }
+        keys[slot] = key;
+        values[slot] = value;
+        size++;
+        addSortedKey(key);
+        if (size > keys.length / 4 * 3) {
+            resize(keys.length * 2);
+        }
+        return null;
+    }
+
+    private void addSortedKey(long key) {
+        if (sortedCount != size - 1 || (sortedCount > 0 && sortedKeys[sortedCount - 1] > key)) {
+            // out of order, sortedKeys() rebuilds it from the table when it is next needed
+            sortedCount = -1;
+            return;
+        }
+        if (sortedCount == sortedKeys.length) {
+            sortedKeys = Arrays.copyOf(sortedKeys, Math.max(MIN_CAPACITY, sortedCount + (sortedCount >> 1)));
+        }
+        sortedKeys[sortedCount++] = key;
+    }
+
+    private void resize(int capacity) {
+        long[] oldKeys = keys;
+        Object[] oldValues = values;
+        allocate(capacity);
+        int mask = capacity - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldValues[i] != null) {
+                int slot = slotFor(oldKeys[i]);
+                while (values[slot] != null) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    public void clear() {
+        allocate(MIN_CAPACITY);
+        size = 0;
+        sortedKeys = new long[0];
+        sortedCount = 0;
+    }
+
+    /** the keys in ascending order, the array is shared so callers must not change it */
+    private long[] sortedKeys() {
+        if (sortedCount != size) {
+            long[] sorted = new long[size];
+            int i = 0;
+            for (int slot = 0; slot < keys.length; slot++) {
+                if (values[slot] != null) {
+                    sorted[i++] = keys[slot];
+                }
+            }
+            Arrays.sort(sorted);
+            sortedKeys = sorted;
+            sortedCount = size;
+        }
+        return sortedKeys;
+    }
+
+    /** the keys in ascending order, as a copy */
+    public long[] keys() {
+        return Arrays.copyOf(sortedKeys(), size);
+    }
+
+    /** read-only view of the values in ascending key order */
+    public Collection<V> values() {
+        return new AbstractCollection<>() {
+            @Override
+            public Iterator<V> iterator() {
+                long[] sorted = sortedKeys();
+                int count = size;
+                return new Iterator<>() {
+                    int next = 0;
+
+                    @Override
+                    public boolean hasNext() {
+                        return next < count;
+                    }
+
+                    @Override
+                    public V next() {
+                        if (next >= count) {
+                            throw new NoSuchElementException();
+                        }
+                        return get(sorted[next++]);
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+}
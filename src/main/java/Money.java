@@ -0,0 +1,111 @@
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Money is kept as a primitive long number of cents everywhere (balances, register amounts,
+ * saved files) so sums are exact and nothing gets boxed. These helpers convert at the edges,
+ * where amounts come in or go out as doubles or text.
+ */
+public final class Money {
+    public static final long CENTS_PER_UNIT = 100;
+
+    private Money() {
+    }
+
+    /** round a dollar amount to the nearest cent */
+    public static long ofDouble(double amount) {
+        return Math.round(amount * CENTS_PER_UNIT);
+    }
+
+    public static double toDouble(long cents) {
+        return (double) cents / CENTS_PER_UNIT;
+    }
+
+    /** whole units, e.g. ofUnits(5) is 500 cents */
+    public static long ofUnits(long units) {
+        return Math.multiplyExact(units, CENTS_PER_UNIT);
+    }
+
+    /** cents times a rate, rounded to the nearest cent, e.g. for interest */
+    public static long multiply(long cents, double rate) {
+        return Math.round(cents * rate);
+    }
+
+    /**
+     * Parse a decimal amount such as "12.5", "-0.05" or "599.6199999999997" (written by the
+     * old double-based code) into cents, rounding half-even past the second decimal.
+     */
+    public static long parse(String amount) {
+        String trimmed = amount.trim();
+        int dot = trimmed.indexOf('.');
+        // the common case, at most two decimals, doesn't need a BigDecimal
+        if (dot < 0 && trimmed.length() < 17) {
+            return ofUnits(Long.parseLong(trimmed));
+        }
+        if (dot >= 0 && trimmed.length() - dot <= 3 && trimmed.length() < 18 && isDigits(trimmed, dot + 1)) {
+            String fraction = trimmed.substring(dot + 1);
+            boolean noUnits = dot == 0 || trimmed.substring(0, dot).equals("-");
+            if (noUnits && fraction.isEmpty()) {
+                throw new NumberFormatException("No digits in amount \"" + amount + "\"");
+            }
+            long units = noUnits ? 0 : Long.parseLong(trimmed.substring(0, dot));
+            long cents = fraction.isEmpty() ? 0 : Long.parseLong(fraction) * (fraction.length() == 1 ? 10 : 1);
+            boolean negative = trimmed.startsWith("-");
+            return units * CENTS_PER_UNIT + (negative ? -cents : cents);
+        }
+        return new BigDecimal(trimmed).movePointRight(2).setScale(0, RoundingMode.HALF_EVEN).longValueExact();
+    }
+
+    /** whether every character from start on is a digit 0-9, signs and exponents aren't */
+    private static boolean isDigits(String text, int start) {
+        for (int i = start; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c < '0' || c > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** plain text with exactly two decimals and no grouping, e.g. "-1234.50", used in saved files */
+    public static String toString(long cents) {
+        StringBuilder sb = new StringBuilder(24);
+        appendTo(sb, cents, false);
+        return sb.toString();
+    }
+
+    /** with thousands separators, e.g. "-1,234.50", like String.format("%,.2f") */
+    public static String format(long cents) {
+        StringBuilder sb = new StringBuilder(24);
+        appendTo(sb, cents, true);
+        return sb.toString();
+    }
+
+    static void appendTo(StringBuilder sb, long cents, boolean grouping) {
+        if (cents < 0) {
+            sb.append('-');
+        }
+        // negate in the unsigned domain so Long.MIN_VALUE works too
+        long abs = Math.abs(cents);
+        String units = (abs >= 0) ? Long.toString(abs / CENTS_PER_UNIT)
+                : Long.toUnsignedString(Long.divideUnsigned(abs, CENTS_PER_UNIT));
+        long fraction = (abs >= 0) ? abs % CENTS_PER_UNIT : Long.remainderUnsigned(abs, CENTS_PER_UNIT);
+        if (grouping) {
+            int first = units.length() % 3;
+            if (first == 0) {
+                first = 3;
+            }
+            sb.append(units, 0, first);
+            for (int i = first; i < units.length(); i += 3) {
+                sb.append(',').append(units, i, i + 3);
+            }
+        } else {
+            sb.append(units);
+        }
+        sb.append('.');
+        if (fraction < 10) {
+            sb.append('0');
+        }
+        sb.append(fraction);
+    }
+}
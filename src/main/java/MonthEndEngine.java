@@ -0,0 +1,221 @@
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.IntConsumer;
+
+/**
+ * Runs month end over many accounts, in parallel on a ForkJoinPool when the register allows it.
+ *
+ * It works in two passes over the accounts: first every account's monthEnd() (fees, interest,
+ * END CHECK), then every account's generateStatement(). Each account is handled by exactly one
+ * task in each pass, so month end is applied once per account, and every statement is made
+ * after all month end entries are in the register. Statements come back in the order the
+ * accounts were given, whatever order the tasks ran in.
+ *
+ * monthEnd() adds to the register, so the passes only run in parallel with a register where
+ * isConcurrent() is true (a ConcurrentRegister). Anything else runs on the calling thread.
+ *
+ * Before that, dormant accounts (no activity since their last statement, no fee due and no
+ * interest to pay) are rolled forward in bulk and skipped by both passes. Their statements are
+ * the same as the passes would have made, most accounts are dormant in most months.
+ *
+ * Bank.runMonthEnd() uses run(). Bank.runMonthEnd(StatementExporter) uses apply() for the first
+ * pass and has the exporter make the statements as it writes them.
+ */
+public class MonthEndEngine {
+    public static Logger logger = LogManager.getLogger(MonthEndEngine.class.getName());
+    // accounts handled by one task before it stops splitting
+    static final int ACCOUNTS_PER_TASK = 256;
+
+    private final int parallelism;
+    private final boolean skipDormant;
+    private volatile int lastDormantCount = 0;
+
+    public MonthEndEngine() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    public MonthEndEngine(int parallelism) {
+        this(parallelism, true);
+    }
+
+    /**
+     * @param skipDormant roll accounts with nothing to do at month end (see Account.needsMonthEnd())
+     *                    forward in bulk instead of running monthEnd() on each of them
+     */
+    public MonthEndEngine(int parallelism, boolean skipDormant) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism must be >= 1 but was " + parallelism);
+        }
+        this.parallelism = parallelism;
+        this.skipDormant = skipDormant;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * @param accounts the accounts to close, usually in id order
+     * @param register the register the accounts add their entries to
+     * @return one statement per account, in the same order as accounts
+     */
+    public List<Statement> run(List<Account> accounts, Register register) {
+        long start = System.nanoTime();
+        Account[] accountArray = accounts.toArray(new Account[0]);
+        MonthEnd monthEnd = apply(accountArray, register);
+        Statement[] statementArray = new Statement[accountArray.length];
+        IntConsumer statement = i -> statementArray[i] = monthEnd.statementFor(accountArray[i]);
+        forEachIndex(accountArray.length, register, statement);
+        logger.info("Month end and statements for {} accounts ({} dormant) took {}ms", accounts.size(),
+                lastDormantCount, (System.nanoTime() - start) / 1_000_000);
+        return Arrays.asList(statementArray);
+    }
+
+    /**
+     * The first of run()'s passes on its own: dormant accounts are rolled forward and every
+     * other account's monthEnd() is run, but no statement is made. The returned MonthEnd makes
+     * them one at a time, e.g. while StatementExporter writes them out, so they don't all have
+     * to be held at once.
+     *
+     * @param accounts the accounts to close, usually in id order
+     * @param register the register the accounts add their entries to
+     */
+    public MonthEnd apply(List<Account> accounts, Register register) {
+        return apply(accounts.toArray(new Account[0]), register);
+    }
+
+    private MonthEnd apply(Account[] accounts, Register register) {
+        long start = System.nanoTime();
+        boolean[] dormant = new boolean[accounts.length];
+        LongObjectMap<List<RegisterEntry>> dormantEntries = new LongObjectMap<>();
+        if (skipDormant) {
+            lastDormantCount = rollForwardDormant(accounts, dormant, dormantEntries, register);
+        }
+        forEachIndex(accounts.length, register, i -> {
+            if (!dormant[i]) {
+                accounts[i].monthEnd();
+            }
+        });
+        logger.info("Month end for {} accounts ({} dormant) with parallelism {} took {}ms", accounts.length,
+                lastDormantCount, isParallel(accounts.length, register) ? parallelism : 1,
+                (System.nanoTime() - start) / 1_000_000);
+        return new MonthEnd(dormantEntries);
+    }
+
+    private boolean isParallel(int accounts, Register register) {
+        return parallelism > 1 && accounts > ACCOUNTS_PER_TASK && register.isConcurrent();
+    }
+
+    /** body for every index in [0, count), on the pool when the register allows it */
+    private void forEachIndex(int count, Register register, IntConsumer body) {
+        if (!isParallel(count, register)) {
+            for (int i = 0; i < count; i++) {
+                body.accept(i);
+            }
+            return;
+        }
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            pool.invoke(new RangeAction(0, count, body));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Month end applied to a set of accounts whose statements haven't been made yet. Make each
+     * account's statement once with statementFor(), from one thread at a time per account.
+     */
+    public static final class MonthEnd {
+        // the month end entries of each dormant account, by account id, only read once built
+        private final LongObjectMap<List<RegisterEntry>> dormantEntries;
+
+        private MonthEnd(LongObjectMap<List<RegisterEntry>> dormantEntries) {
+            this.dormantEntries = dormantEntries;
+        }
+
+        /** close the account's period and return its statement */
+        public Statement statementFor(Account account) {
+            List<RegisterEntry> entries = dormantEntries.get(account.getId());
+            return (entries != null) ? account.closeDormantPeriod(entries) : account.generateStatement();
+        }
+    }
+
+    /**
+     * Find every account that doesn't need monthEnd(). Their month end entries (END CHECK for
+     * checking accounts) are added with one bulk append and kept by account id, so their
+     * statements can be made from them later, see Account.closeDormantPeriod().
+     *
+     * @return how many accounts were dormant
+     */
+    private static int rollForwardDormant(Account[] accounts, boolean[] dormant,
+                                          LongObjectMap<List<RegisterEntry>> dormantEntries, Register register) {
+        List<Posting> postings = new ArrayList<>();
+        // the postings of account i are postings[postingStart[i], postingStart[i + 1])
+        int[] postingStart = new int[accounts.length + 1];
+        int count = 0;
+        for (int i = 0; i < accounts.length; i++) {
+            postingStart[i] = postings.size();
+            if (!accounts[i].needsMonthEnd()) {
+                dormant[i] = true;
+                accounts[i].addDormantMonthEndPostings(postings);
+                count++;
+            }
+        }
+        postingStart[accounts.length] = postings.size();
+
+        Date date = new Date();
+        long firstId = register.addAll(postings, date);
+        for (int i = 0; i < accounts.length; i++) {
+            if (dormant[i]) {
+                RegisterEntry[] entries = new RegisterEntry[postingStart[i + 1] - postingStart[i]];
+                for (int p = postingStart[i]; p < postingStart[i + 1]; p++) {
+                    Posting posting = postings.get(p);
+                    entries[p - postingStart[i]] = new RegisterEntry(firstId + p, posting.accountId(),
+                            posting.entryName(), posting.amountCents(), date);
+                }
+                dormantEntries.put(accounts[i].getId(), List.of(entries));
+            }
+        }
+        return count;
+    }
+
+    /** how many accounts the last run() found dormant */
+    public int getLastDormantCount() {
+        return lastDormantCount;
+    }
+
+    /** runs body for every index in [from, to), splitting in halves down to ACCOUNTS_PER_TASK */
+    private static final class RangeAction extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final int from;
+        private final int to;
+        private final IntConsumer body;
+
+        RangeAction(int from, int to, IntConsumer body) {
+            this.from = from;
+            this.to = to;
+            this.body = body;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= ACCOUNTS_PER_TASK) {
+                for (int i = from; i < to; i++) {
+                    body.accept(i);
+                }
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new RangeAction(from, mid, body), new RangeAction(mid, to, body));
+        }
+    }
+}
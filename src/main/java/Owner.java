@@ -1,8 +1,8 @@
+import java.io.IOException;
 import java.util.Date;
 import java.util.List;
 import java.util.Objects;
 import java.util.Random;
-import java.util.stream.Collectors;
 //import com.fasterxml.jackson.databind.ObjectMapper;
 
 public record Owner(String name, long id, Date dob, String ssn, String address, String address2, String city, String state,
@@ -34,14 +34,38 @@ public record Owner(String name, long id, Date dob, String ssn, String address,
                 fields[8].trim());
     }
 
+    /** like fromCSV(String) for the parser's current line, see CsvRecordParser */
+    public static Owner fromCSV(CsvRecordParser csv) throws SerializationException {
+        csv.checkRecord(COLUMNS, "v1");
+        long id = csv.nextLong();
+        String name = csv.nextString();
+        Date dob = new Date(csv.nextLong());
+        return new Owner(name, id, dob, csv.nextString(), csv.nextString(), csv.nextString(), csv.nextString(),
+                csv.nextString(), csv.nextString());
+    }
+
     public String[] columns() {
         return COLUMNS;
     }
 
     @Override
     public String toCSV() throws SerializationException {
-        List<String> values = List.of(id, name, dob.getTime(), (ssn != null) ? ssn : "", (address != null) ? address : "", (address2 != null) ? address2 : "", (city != null) ? city : "", (state != null) ? state : "", (zip != null) ? zip : "", "v1").stream().map(Object::toString).collect(Collectors.toList());
-        return String.join(DELIMITER + " ", values);
+        return CsvRecordWriter.toLine(this::writeCSV);
+    }
+
+    @Override
+    public void writeCSV(Appendable out) throws IOException {
+        CsvRecordWriter.longField(out, id);
+        CsvRecordWriter.field(out, name);
+        CsvRecordWriter.longField(out, dob.getTime());
+        // null fields are saved empty
+        CsvRecordWriter.field(out, ssn);
+        CsvRecordWriter.field(out, address);
+        CsvRecordWriter.field(out, address2);
+        CsvRecordWriter.field(out, city);
+        CsvRecordWriter.field(out, state);
+        CsvRecordWriter.field(out, zip);
+        out.append("v1");
     }
 
     public Long getId() {
@@ -1,3 +1,5 @@
+import java.io.IOException;
+
 public interface Persistable {
 
     public static final String DELIMITER = "!";
@@ -5,4 +7,13 @@ public interface Persistable {
     String toCSV() throws SerializationException;
     Long getId();
     String [] columns();
+
+    /**
+     * Write the same text as toCSV(), without a line break, field by field into out.
+     * Persister saves files this way through a CsvRecordWriter, so no String is made per
+     * record. The default just appends toCSV().
+     */
+    default void writeCSV(Appendable out) throws IOException, SerializationException {
+        out.append(toCSV());
+    }
 }
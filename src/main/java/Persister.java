@@ -4,16 +4,25 @@ import org.apache.logging.log4j.Logger;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.nio.file.StandardOpenOption;
 import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
 
 public class Persister {
     public static Logger logger = LogManager.getLogger(Persister.class.getName());
     private static final String DEFAULT_PATH = ".";
     private static final String DEFAULT_PREFIX = "";
     private static final String DEFAULT_SUFFIX = "";
+    private static final String DEFAULT_REGISTER_FORMAT = "csv";
+    public static final String REGISTER_FORMAT_JOURNAL = "journal";
 
     private static String persisterPropertiesFile = "persister.properties";
 
@@ -22,12 +31,31 @@ public class Persister {
 
     private static String persistedFileSuffix;
 
+    // "csv" or "journal", how the register is saved and loaded
+    private static String registerFormat;
+
     public static String getFilename(String fileType) {
-        return String.format("%s%c%s%s%s.csv",
-                persistedFileDir, File.separatorChar, fileType, persistedFilePrefix, persistedFileSuffix);
+        return getFilename(fileType, "csv");
+    }
+
+    public static String getFilename(String fileType, String extension) {
+        return String.format("%s%c%s%s%s.%s",
+                persistedFileDir, File.separatorChar, fileType, persistedFilePrefix, persistedFileSuffix, extension);
+    }
+
+    /** the binary register journal, used instead of register.csv when persisted.register.format=journal */
+    public static RegisterJournal getRegisterJournal() throws IOException {
+        loadPersistedFileNameAndDir();
+        return new RegisterJournal(Paths.get(getFilename("register", "journal")));
+    }
+
+    public static boolean useRegisterJournal() throws IOException {
+        loadPersistedFileNameAndDir();
+        return REGISTER_FORMAT_JOURNAL.equalsIgnoreCase(registerFormat);
     }
 
-    private static void loadPersistedFileNameAndDir() throws IOException {
+    // synchronized as threads loading records in parallel can be the first to need the settings
+    private static synchronized void loadPersistedFileNameAndDir() throws IOException {
         InputStream persisterPropertiesFile = Persister.class.getClassLoader().getResourceAsStream(Persister.persisterPropertiesFile);
         Properties prop = new Properties();
         if (persisterPropertiesFile != null) { // persisterPropertiesFile.exists()) {
@@ -43,122 +71,232 @@ public class Persister {
             persistedFilePrefix = prop.getProperty("persisted.prefix", DEFAULT_PREFIX);
         if (persistedFileSuffix == null)
            persistedFileSuffix = prop.getProperty("persisted.suffix", DEFAULT_SUFFIX);
-        logger.info("File path: '{}' prefix: '{}' suffix: '{}'",
-                persistedFileDir, persistedFilePrefix, persistedFileSuffix);
+        if (registerFormat == null)
+            registerFormat = prop.getProperty("persisted.register.format", DEFAULT_REGISTER_FORMAT);
+        logger.info("File path: '{}' prefix: '{}' suffix: '{}' register format: '{}'",
+                persistedFileDir, persistedFilePrefix, persistedFileSuffix, registerFormat);
     }
 
     public static void resetPersistedFileNameAndDir() {
-        persistedFileDir = persistedFilePrefix = persistedFileSuffix = null;
+        persistedFileDir = persistedFilePrefix = persistedFileSuffix = registerFormat = null;
+    }
+
+    /** turns the current line of a CSV file into a record */
+    @FunctionalInterface
+    private interface CsvParser<T> {
+        T parse(CsvRecordParser csv) throws SerializationException;
     }
 
     public static List<Owner> readOwnersFromCsv() throws IOException, SerializationException {
-        loadPersistedFileNameAndDir();
-        final String csvFilename = getFilename("owners");
-        if (! Paths.get(csvFilename).toFile().exists()) {
-            logger.info("File {} doesn't exist, skipping load", csvFilename);
-            return Collections.emptyList();
-        }
-        logger.info("Loading owners from file {}", csvFilename);
         List<Owner> recs = new ArrayList<>();
-        List<String> recsCsv = Files.readAllLines(Paths.get(csvFilename));
-        for (String recCsv : recsCsv) {
-            if (recCsv.startsWith(CheckingAccount.COLUMNS[0])) {
-                logger.debug("Skipping header");
-                continue;
-            }
-            recs.add(Owner.fromCSV(recCsv));
-        }
-        logger.info("Loaded {} owners from file {}", recs.size(), csvFilename);
+        readOwnersFromCsv(recs::add);
         return recs;
     }
 
+    /**
+     * Read owners.csv one line at a time, handing each owner to the consumer as soon as it is
+     * parsed. Nothing but a read buffer is held, so memory doesn't depend on the file size.
+     * Lines are parsed from the bytes by CsvRecordParser, no String is made per line.
+     *
+     * @return number of owners read
+     */
+    public static long readOwnersFromCsv(Consumer<? super Owner> consumer) throws IOException, SerializationException {
+        return readCsv("owners", "owners", Owner.COLUMNS[0], Owner::fromCSV, consumer);
+    }
+
     public static List<SavingsAccount> readSavingsAccountsFromCsv() throws IOException, SerializationException {
-        loadPersistedFileNameAndDir();
-        final String csvFilename = getFilename("savings");
-        if (! Paths.get(csvFilename).toFile().exists()) {
-            logger.info("File {} doesn't exist, skipping load", csvFilename);
-            return Collections.emptyList();
-        }
-        logger.info("Loading savings accounts from file {}", csvFilename);
         List<SavingsAccount> recs = new ArrayList<>();
-        List<String> recsCsv = Files.readAllLines(Paths.get(csvFilename));
-        for (String recCsv : recsCsv) {
-            if (recCsv.startsWith(SavingsAccount.COLUMNS[0])) {
-                logger.debug("Skipping header");
-                continue;
-            }
-            recs.add(SavingsAccount.fromCSV(recCsv));
-        }
-        logger.info("Loaded {} savings accounts from file {}", recs.size(), csvFilename);
+        readSavingsAccountsFromCsv(recs::add);
         return recs;
     }
 
+    /** like readOwnersFromCsv(Consumer) for savings.csv */
+    public static long readSavingsAccountsFromCsv(Consumer<? super SavingsAccount> consumer) throws IOException, SerializationException {
+        return readSavingsAccountsFromCsv(null, consumer);
+    }
+
+    /** like readSavingsAccountsFromCsv(Consumer) with the accounts on the given register, null for the shared one */
+    public static long readSavingsAccountsFromCsv(Register register, Consumer<? super SavingsAccount> consumer)
+            throws IOException, SerializationException {
+        return readCsv("savings", "savings accounts", SavingsAccount.COLUMNS[0],
+                csv -> SavingsAccount.fromCSV(csv, register), consumer);
+    }
+
     public static List<CheckingAccount> readCheckingAccountsFromCsv() throws IOException, SerializationException {
+        List<CheckingAccount> recs = new ArrayList<>();
+        readCheckingAccountsFromCsv(recs::add);
+        return recs;
+    }
+
+    /** like readOwnersFromCsv(Consumer) for checking.csv */
+    public static long readCheckingAccountsFromCsv(Consumer<? super CheckingAccount> consumer) throws IOException, SerializationException {
+        return readCheckingAccountsFromCsv(null, consumer);
+    }
+
+    /** like readCheckingAccountsFromCsv(Consumer) with the accounts on the given register, null for the shared one */
+    public static long readCheckingAccountsFromCsv(Register register, Consumer<? super CheckingAccount> consumer)
+            throws IOException, SerializationException {
+        return readCsv("checking", "checking accounts", CheckingAccount.COLUMNS[0],
+                csv -> CheckingAccount.fromCSV(csv, register), consumer);
+    }
+
+    public static List<RegisterEntry> readRegisterEntriesFromCsv() throws IOException, SerializationException {
+        List<RegisterEntry> recs = new ArrayList<>();
+        readRegisterEntriesFromCsv(recs::add);
+        return recs;
+    }
+
+    /** like readOwnersFromCsv(Consumer) for register.csv */
+    public static long readRegisterEntriesFromCsv(Consumer<? super RegisterEntry> consumer) throws IOException, SerializationException {
+        return readCsv("register", "register entries", RegisterEntry.COLUMNS[0], RegisterEntry::fromCSV, consumer);
+    }
+
+    private static <T> long readCsv(String persistableName, String description, String headerStart,
+                                    CsvParser<T> parser, Consumer<? super T> consumer) throws IOException, SerializationException {
         loadPersistedFileNameAndDir();
-        final String csvFilename = getFilename("checking");
+        final String csvFilename = getFilename(persistableName);
         if (! Paths.get(csvFilename).toFile().exists()) {
             logger.info("File {} doesn't exist, skipping load", csvFilename);
-            return Collections.emptyList();
+            return 0;
         }
-        logger.info("Loading checking accounts from file {}", csvFilename);
-        List<CheckingAccount> recs = new ArrayList<>();
-        List<String> recsCsv = Files.readAllLines(Paths.get(csvFilename));
-        for (String recCsv : recsCsv) {
-            if (recCsv.startsWith(CheckingAccount.COLUMNS[0])) {
-                logger.debug("Skipping header");
-                continue;
+        logger.info("Loading {} from file {}", description, csvFilename);
+        long count = 0;
+        try (FileChannel channel = FileChannel.open(Paths.get(csvFilename), StandardOpenOption.READ)) {
+            CsvRecordParser csv = new CsvRecordParser(channel);
+            while (csv.nextLine()) {
+                if (csv.lineStartsWith(headerStart)) {
+                    logger.debug("Skipping header");
+                    continue;
+                }
+                consumer.accept(parser.parse(csv));
+                count++;
             }
-            recs.add(CheckingAccount.fromCSV(recCsv));
         }
-        logger.info("Loaded {} checking accounts from file {}", recs.size(), csvFilename);
-        return recs;
+        logger.info("Loaded {} {} from file {}", count, description, csvFilename);
+        return count;
     }
 
-    public static List<RegisterEntry> readRegisterEntriesFromCsv() throws IOException, SerializationException {
+    /**
+     * Split register.csv into about the given number of chunks, each starting at the beginning
+     * of a line, and parse every chunk on the executor.
+     *
+     * @return one future per chunk, in file order, each holding that chunk's entries in file order
+     */
+    public static List<Future<List<RegisterEntry>>> readRegisterEntriesFromCsv(ExecutorService executor, int chunks) throws IOException {
         loadPersistedFileNameAndDir();
-        final String csvFilename = getFilename("register");
-        if (! Paths.get(csvFilename).toFile().exists()) {
-            logger.info("File {} doesn't exist, skipping load", csvFilename);
+        final Path csvPath = Paths.get(getFilename("register"));
+        if (! Files.exists(csvPath)) {
+            logger.info("File {} doesn't exist, skipping load", csvPath);
             return Collections.emptyList();
         }
-        logger.info("Loading RegisterEntries from file {}", csvFilename);
-        List<RegisterEntry> recs = new ArrayList<>();
-        List<String> recsCsv = Files.readAllLines(Paths.get(csvFilename));
-        for (String recCsv : recsCsv) {
-            if (recCsv.startsWith(RegisterEntry.COLUMNS[0])) {
-                logger.debug("Skipping header");
-                continue;
+        long size = Files.size(csvPath);
+        // a chunk is mapped in one piece so it has to stay well under 2GB
+        chunks = (int) Math.max(chunks, size / MAX_CHUNK_BYTES + 1);
+        long[] starts = chunkStarts(csvPath, size, chunks);
+        logger.info("Loading RegisterEntries from file {} in {} chunks", csvPath, chunks);
+        List<Future<List<RegisterEntry>>> parts = new ArrayList<>(chunks);
+        for (int i = 0; i < chunks; i++) {
+            long from = starts[i];
+            long to = starts[i + 1];
+            if (from < to) {
+                parts.add(executor.submit(() -> readRegisterChunk(csvPath, from, to)));
             }
-            recs.add(RegisterEntry.fromCSV(recCsv));
         }
-        logger.info("Loaded {} register entries from file {}", recs.size(), csvFilename);
-        return recs;
+        return parts;
+    }
+
+    private static final long MAX_CHUNK_BYTES = 1L << 30;
+
+    /** offsets where the chunks start, moved forward to the start of a line, plus the file size at the end */
+    private static long[] chunkStarts(Path path, long size, int chunks) throws IOException {
+        long[] starts = new long[chunks + 1];
+        starts[chunks] = size;
+        ByteBuffer buffer = ByteBuffer.allocate(4096);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            for (int i = 1; i < chunks; i++) {
+                // start looking one byte early in case the offset is already the start of a line
+                long position = Math.max(size * i / chunks, starts[i - 1] + 1) - 1;
+                long lineStart = size;
+                while (position < size && lineStart == size) {
+                    buffer.clear();
+                    int read = channel.read(buffer, position);
+                    if (read <= 0) {
+                        break;
+                    }
+                    for (int b = 0; b < read; b++) {
+                        if (buffer.get(b) == '\n') {
+                            lineStart = position + b + 1;
+                            break;
+                        }
+                    }
+                    position += read;
+                }
+                starts[i] = lineStart;
+            }
+        }
+        return starts;
+    }
+
+    /** parse the lines between two offsets of register.csv */
+    private static List<RegisterEntry> readRegisterChunk(Path path, long from, long to) throws IOException, SerializationException {
+        List<RegisterEntry> entries = new ArrayList<>();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            CsvRecordParser csv = new CsvRecordParser(channel.map(FileChannel.MapMode.READ_ONLY, from, to - from));
+            while (csv.nextLine()) {
+                if (csv.lineStartsWith(RegisterEntry.COLUMNS[0])) {
+                    continue;
+                }
+                entries.add(RegisterEntry.fromCSV(csv));
+            }
+        }
+        return entries;
     }
 
+    /**
+     * Write the records to the file, header first, replacing what was there. Each record
+     * writes itself into a CsvRecordWriter that goes to the file a buffer at a time, so this
+     * needs the same memory for ten records as for ten million. The records go to a temporary
+     * file next to it that is moved over the old one once it is complete and forced, so a
+     * failed or interrupted save leaves the old file as it was.
+     *
+     * @return number of records written
+     */
     public static <T extends Persistable>int writeRecordsToCsv(final Collection<T> records, final String persistableName) throws IOException, SerializationException {
         loadPersistedFileNameAndDir();
-        List<String> data = new ArrayList<>();
-        final String csvFilename = getFilename(persistableName);
-        boolean header = true;
-        // if there's no records we still want to write out an empty file
-        if (records == null || records.isEmpty()) {
-            logger.info("No records, creating empty file");
-            header = false;
-        } else {
-            logger.info("Saving {} records to file {}", records.size(), csvFilename);
-            String [] headers = records.stream().findAny().get().columns();
-            data.add(String.join(",", headers));
-            for (Persistable o : records) {
-                data.add(o.toCSV());
-            }
+        final Path csvPath = Paths.get(getFilename(persistableName));
+        if (Files.exists(csvPath)) {
+            logger.info("Overwriting records in {}", csvPath);
         }
-        if (Files.exists(Paths.get(csvFilename))) {
-            logger.info("Overwriting records in {}", csvFilename);
+        final Path tempPath = csvPath.resolveSibling(csvPath.getFileName() + ".tmp");
+        int count = 0;
+        try {
+            try (FileChannel channel = FileChannel.open(tempPath,
+                    StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+                 CsvRecordWriter out = new CsvRecordWriter(channel)) {
+                // if there's no records we still want to write out an empty file
+                if (records == null || records.isEmpty()) {
+                    logger.info("No records, creating empty file");
+                } else {
+                    logger.info("Saving {} records to file {}", records.size(), csvPath);
+                    String [] headers = records.iterator().next().columns();
+                    out.append(String.join(",", headers));
+                    out.newLine();
+                    for (Persistable o : records) {
+                        o.writeCSV(out);
+                        out.newLine();
+                        count++;
+                    }
+                }
+                out.flush();
+                channel.force(true);
+                logger.info("Saved {} records{} to file {}, {} bytes",
+                        count, (count > 0 ? " and header" : ""), csvPath, out.getBytesWritten());
+            }
+            Files.move(tempPath, csvPath, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tempPath);
         }
-        Files.write(Paths.get(csvFilename), data, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
-        logger.info("Saved {} records{} to file {}",
-                data.size() - (header ? 1 : 0), (header ? " and header" : ""), csvFilename);
-        return data.size() - (header ? 1 : 0);
+        return count;
     }
 
     public static String getPersisterPropertiesFile() {
@@ -184,4 +322,12 @@ public class Persister {
     public static void setPersistedFileSuffix(String persistedFileSuffix) {
         Persister.persistedFileSuffix = persistedFileSuffix;
     }
+
+    public static String getRegisterFormat() {
+        return registerFormat;
+    }
+
+    public static void setRegisterFormat(String registerFormat) {
+        Persister.registerFormat = registerFormat;
+    }
 }
@@ -0,0 +1,20 @@
+/**
+ * One deposit or withdrawal in a batch for Bank.applyBatch(). amountCents is signed the way
+ * it appears in the register: positive for money in, negative for money out. entryName is
+ * limited to Register.MAX_ENTRY_NAME_BYTES, a longer one is rejected here so no batch is
+ * half added.
+ */
+public record Posting(long accountId, String entryName, long amountCents) {
+
+    public Posting {
+        Register.checkEntryName(entryName);
+    }
+
+    public static Posting deposit(long accountId, long amountCents) {
+        return new Posting(accountId, "DEP", amountCents);
+    }
+
+    public static Posting withdrawal(long accountId, long amountCents) {
+        return new Posting(accountId, "W/D", -amountCents);
+    }
+}
@@ -0,0 +1,400 @@
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+
+/**
+ * Proves that every account's register entries add up to its balance. The register is
+ * streamed in parallel, each thread adds amounts into its own primitive arrays indexed by
+ * account, and the threads' sums are merged at the end, so nothing but the sums is kept.
+ *
+ * END CHECK entries are skipped, their amount is a check number rather than money.
+ *
+ * Works on an in-memory Bank (through a snapshot, so deposits can carry on) or straight from
+ * the saved files: balances from savings.csv/checking.csv and the register from the journal or
+ * register.csv, whichever Persister is configured for, plus the sealed segments of the bank's
+ * archive if it has one. Neither is loaded into a Bank.
+ */
+public class Reconciler {
+    public static Logger logger = LogManager.getLogger(Reconciler.class.getName());
+    static final String EXCLUDED_ENTRY = "END CHECK";
+    // journal records per parallel task
+    private static final long JOURNAL_CHUNK = 64 * 1024;
+
+    /**
+     * An account whose register doesn't add up, or register entries for an account that doesn't
+     * exist. A second saved record for an account is one too, with that record's balance.
+     */
+    public record Mismatch(long accountId, boolean knownAccount, long balanceCents, long registerCents, long entryCount) {
+        public long differenceCents() {
+            return registerCents - balanceCents;
+        }
+    }
+
+    /**
+     * What a reconciliation found and how long it took. consistent is false when balances and
+     * register weren't taken as one cut (a bank in ATOMIC mode being written to), mismatches
+     * can then be writes that were in flight.
+     */
+    public record Report(int accounts, long entries, long excludedEntries, List<Mismatch> mismatches,
+                         long balancesNanos, long registerNanos, boolean consistent) {
+        public boolean isReconciled() {
+            return mismatches.isEmpty();
+        }
+
+        public double entriesPerSecond() {
+            return entries / (registerNanos / 1e9);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%,d accounts, %,d register entries (%,d excluded), %,d mismatches;"
+                            + " balances %.3fs, register %.3fs (%,.0f entries/s)",
+                    accounts, entries, excludedEntries, mismatches.size(),
+                    balancesNanos / 1e9, registerNanos / 1e9, entriesPerSecond());
+        }
+    }
+
+    private final int parallelism;
+
+    public Reconciler() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    public Reconciler(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism must be >= 1 but was " + parallelism);
+        }
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Reconcile a bank as it is now, deposits and withdrawals can go on while this runs. The
+     * balances and the register come from one BankSnapshot, which is a consistent cut unless
+     * the bank is in ATOMIC mode, see BankSnapshot.
+     */
+    public Report reconcile(Bank bank) {
+        long start = System.nanoTime();
+        BankSnapshot snapshot = bank.snapshot();
+        if (!snapshot.isConsistent()) {
+            logger.warn("Snapshot taken in ATOMIC mode isn't a consistent cut, writes in flight can show as mismatches");
+        }
+        List<Account> accounts = snapshot.getAccounts();
+        long[] ids = new long[accounts.size()];
+        long[] balances = new long[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = accounts.get(i).getId();
+            try {
+                balances[i] = snapshot.getBalanceCents(ids[i]);
+            } catch (MissingRecordException e) {
+                throw new IllegalStateException("Snapshot lost account " + ids[i], e);
+            }
+        }
+        long balancesNanos = System.nanoTime() - start;
+        return reconcile(new Balances(ids, balances, NONE, NONE), balancesNanos, snapshot::getRegisterEntries,
+                snapshot.isConsistent());
+    }
+
+    /** reconcile the saved files of a bank without an archive, without loading them into a Bank */
+    public Report reconcileSavedRecords() throws IOException, SerializationException {
+        return reconcileSavedRecords(null);
+    }
+
+    /**
+     * Reconcile the saved files without loading them into a Bank. With an archive the saved
+     * register only holds the open period, so the archive's segments are added to it. An id
+     * saved more than once, e.g. as both a savings and a checking account, is reported as a
+     * mismatch for every record after the first.
+     *
+     * @param archive the archive the bank was saved with, null if it had none
+     */
+    public Report reconcileSavedRecords(RegisterArchive archive) throws IOException, SerializationException {
+        long start = System.nanoTime();
+        // also loads Persister's settings, which getFilename() needs
+        boolean useJournal = Persister.useRegisterJournal();
+        BalanceRecords records = new BalanceRecords();
+        readBalances(Paths.get(Persister.getFilename("savings")), SavingsAccount.COLUMNS, records);
+        readBalances(Paths.get(Persister.getFilename("checking")), CheckingAccount.COLUMNS, records);
+        Balances balances = records.sortedById();
+        long balancesNanos = System.nanoTime() - start;
+
+        EntrySource saved;
+        RegisterJournal journal = Persister.getRegisterJournal();
+        if (useJournal && journal.exists()) {
+            long count = journal.recordCount();
+            saved = () -> journalEntries(journal, count);
+        } else {
+            Path csv = Paths.get(Persister.getFilename("register"));
+            saved = () -> csvEntries(csv);
+        }
+        if (archive == null) {
+            return reconcile(balances, balancesNanos, saved, true);
+        }
+        // segments sealed from here on aren't in the saved files either
+        List<RegisterArchive.Segment> segments = List.copyOf(archive.getSegments());
+        return reconcile(balances, balancesNanos,
+                () -> Stream.concat(archive.getEntries(segments), saved.open()), true);
+    }
+
+    /**
+     * Add up the register per account and compare with the balances.
+     *
+     * @param balances   the balances to compare with, by account id
+     * @param entries    supplies the register as a stream, made parallel here
+     * @param consistent whether balances and register were taken as one cut
+     */
+    private Report reconcile(Balances balances, long balancesNanos, EntrySource entries, boolean consistent) {
+        long start = System.nanoTime();
+        long[] ids = balances.ids();
+        // one set of sums per thread rather than per stream split, there can be many more splits
+        Queue<Totals> allTotals = new ConcurrentLinkedQueue<>();
+        ThreadLocal<Totals> threadTotals = ThreadLocal.withInitial(() -> {
+            Totals t = new Totals(ids);
+            allTotals.add(t);
+            return t;
+        });
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            pool.submit(() -> {
+                try (Stream<RegisterEntry> stream = entries.open()) {
+                    stream.parallel().forEach(entry -> threadTotals.get().add(entry));
+                }
+            }).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while reconciling", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException("Reconciliation failed", e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+        Totals totals = new Totals(ids);
+        allTotals.forEach(totals::merge);
+        long registerNanos = System.nanoTime() - start;
+
+        List<Mismatch> mismatches = new ArrayList<>();
+        for (int i = 0; i < ids.length; i++) {
+            if (totals.sums[i] != balances.cents()[i]) {
+                mismatches.add(new Mismatch(ids[i], true, balances.cents()[i], totals.sums[i], totals.counts[i]));
+            }
+        }
+        // only one record of an account can be right, whatever the register adds up to
+        for (int d = 0; d < balances.duplicateIds().length; d++) {
+            int i = Arrays.binarySearch(ids, balances.duplicateIds()[d]);
+            mismatches.add(new Mismatch(ids[i], true, balances.duplicateCents()[d], totals.sums[i], totals.counts[i]));
+        }
+        for (long unknownId : totals.unknown.keys()) {
+            long[] sumAndCount = totals.unknown.get(unknownId);
+            mismatches.add(new Mismatch(unknownId, false, 0, sumAndCount[0], sumAndCount[1]));
+        }
+        Report report = new Report(ids.length, totals.entries, totals.excluded,
+                Collections.unmodifiableList(mismatches), balancesNanos, registerNanos, consistent);
+        logger.info("Reconciled {}", report);
+        for (Mismatch m : mismatches) {
+            logger.warn("Register doesn't match balance: {}", m);
+        }
+        return report;
+    }
+
+    private static final long[] NONE = new long[0];
+
+    /** balances by account, ids ascending and unique, any further records of an id kept apart */
+    private record Balances(long[] ids, long[] cents, long[] duplicateIds, long[] duplicateCents) {
+    }
+
+    /** the id and balance of every account record read, in the order they were read */
+    private static final class BalanceRecords {
+        private long[] ids = new long[1024];
+        private long[] cents = new long[1024];
+        private int count;
+
+        void add(long id, long balanceCents) {
+            if (count == ids.length) {
+                ids = Arrays.copyOf(ids, count * 2);
+                cents = Arrays.copyOf(cents, count * 2);
+            }
+            ids[count] = id;
+            cents[count++] = balanceCents;
+        }
+
+        /** sorted by id, keeping the first record read of each id and setting any later ones aside */
+        Balances sortedById() {
+            long[] sortedIds = Arrays.copyOf(ids, count);
+            Arrays.sort(sortedIds);
+            // each record goes after the ones read before it with the same id, so the sort is stable
+            long[] sortedCents = new long[count];
+            int[] placed = new int[count];
+            int unique = 0;
+            for (int r = 0; r < count; r++) {
+                int first = firstIndexOf(sortedIds, ids[r]);
+                unique += (placed[first] == 0) ? 1 : 0;
+                sortedCents[first + placed[first]++] = cents[r];
+            }
+            long[] uniqueIds = new long[unique];
+            long[] uniqueCents = new long[unique];
+            long[] duplicateIds = new long[count - unique];
+            long[] duplicateCents = new long[count - unique];
+            int u = 0;
+            int d = 0;
+            for (int i = 0; i < count; i++) {
+                if (i > 0 && sortedIds[i] == sortedIds[i - 1]) {
+                    duplicateIds[d] = sortedIds[i];
+                    duplicateCents[d++] = sortedCents[i];
+                } else {
+                    uniqueIds[u] = sortedIds[i];
+                    uniqueCents[u++] = sortedCents[i];
+                }
+            }
+            return new Balances(uniqueIds, uniqueCents, duplicateIds, duplicateCents);
+        }
+
+        /** position of the first occurrence of id, which is in the sorted array */
+        private static int firstIndexOf(long[] sorted, long id) {
+            int low = 0;
+            int high = sorted.length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (sorted[mid] < id) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+    }
+
+    @FunctionalInterface
+    private interface EntrySource {
+        Stream<RegisterEntry> open();
+    }
+
+    /** one thread's running sums, indexed like the ids array, merged once every thread is done */
+    private static final class Totals {
+        final long[] ids;
+        final long[] sums;
+        final long[] counts;
+        // sum and count of entries for accounts that aren't in ids
+        final LongObjectMap<long[]> unknown = new LongObjectMap<>();
+        long entries;
+        long excluded;
+
+        Totals(long[] ids) {
+            this.ids = ids;
+            this.sums = new long[ids.length];
+            this.counts = new long[ids.length];
+        }
+
+        void add(RegisterEntry entry) {
+            entries++;
+            if (EXCLUDED_ENTRY.equals(entry.entryName())) {
+                excluded++;
+                return;
+            }
+            int i = Arrays.binarySearch(ids, entry.accountId());
+            if (i >= 0) {
+                sums[i] += entry.amountCents();
+                counts[i]++;
+                return;
+            }
+            long[] sumAndCount = unknown.get(entry.accountId());
+            if (sumAndCount == null) {
+                sumAndCount = new long[2];
+                unknown.put(entry.accountId(), sumAndCount);
+            }
+            sumAndCount[0] += entry.amountCents();
+            sumAndCount[1]++;
+        }
+
+        void merge(Totals other) {
+            for (int i = 0; i < sums.length; i++) {
+                sums[i] += other.sums[i];
+                counts[i] += other.counts[i];
+            }
+            for (long id : other.unknown.keys()) {
+                long[] theirs = other.unknown.get(id);
+                long[] ours = unknown.get(id);
+                if (ours == null) {
+                    unknown.put(id, theirs);
+                } else {
+                    ours[0] += theirs[0];
+                    ours[1] += theirs[1];
+                }
+            }
+            entries += other.entries;
+            excluded += other.excluded;
+        }
+    }
+
+    /** just the id and balance fields of an account file, no Account objects or Strings are made */
+    private static void readBalances(Path csv, String[] columns, BalanceRecords records) throws IOException, SerializationException {
+        if (!Files.exists(csv)) {
+            logger.info("File {} doesn't exist, no balances read from it", csv);
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(csv, StandardOpenOption.READ)) {
+            CsvRecordParser parser = new CsvRecordParser(channel);
+            while (parser.nextLine()) {
+                if (parser.lineStartsWith(columns[0])) {
+                    continue;
+                }
+                parser.checkRecord(columns, "v1", "v2");
+                long id = parser.nextLong();
+                parser.skipField();
+                records.add(id, parser.nextCents());
+            }
+        }
+    }
+
+    /** register.csv line by line, Files.lines() splits the file between threads */
+    private static Stream<RegisterEntry> csvEntries(Path csv) {
+        if (!Files.exists(csv)) {
+            logger.info("File {} doesn't exist, no register entries", csv);
+            return Stream.empty();
+        }
+        try {
+            return Files.lines(csv)
+                    .filter(line -> !line.isBlank() && !line.startsWith(RegisterEntry.COLUMNS[0]))
+                    .map(line -> {
+                        try {
+                            return RegisterEntry.fromCSV(line);
+                        } catch (SerializationException e) {
+                            throw new IllegalStateException("Bad register line: " + line, e);
+                        }
+                    });
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /** the journal in chunks of records, each chunk is read by one thread from its own mapping */
+    private static Stream<RegisterEntry> journalEntries(RegisterJournal journal, long count) {
+        long chunks = (count + JOURNAL_CHUNK - 1) / JOURNAL_CHUNK;
+        return LongStream.range(0, chunks).boxed().flatMap(chunk -> {
+            List<RegisterEntry> entries = new ArrayList<>((int) Math.min(JOURNAL_CHUNK, count));
+            try {
+                journal.forEach(chunk * JOURNAL_CHUNK, JOURNAL_CHUNK, entries::add);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            } catch (SerializationException e) {
+                throw new IllegalStateException("Bad register journal " + journal.getPath(), e);
+            }
+            return entries.stream();
+        });
+    }
+}
@@ -2,32 +2,364 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntFunction;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 public class Register {
     Logger logger = LogManager.getLogger(Register.class.getName());
-    private List<RegisterEntry> entryList = new ArrayList<>();
-    private static long id = 0;
+    private ArrayList<RegisterEntry> entryList = new ArrayList<>();
+    // secondary index so per-account lookups don't have to scan every entry in the register
+    private Map<Long, List<RegisterEntry>> accountIndex = new HashMap<>();
+    // time-ordered indexes of positions in entryList, overall and per account
+    private TimeIndex timeIndex = new TimeIndex();
+    private Map<Long, TimeIndex> accountTimeIndex = new HashMap<>();
+    private static final AtomicLong ID_SEQUENCE = new AtomicLong();
 
-    public void add(long accountId, String entryName, Double amount, Date transactionDate) {
-        logger.debug("Register entry adding: " + entryName + ", " + amount);
-        entryList.add(new RegisterEntry(++id, accountId, entryName, amount, transactionDate));
+    /**
+     * Entry names are at most this many bytes of UTF-8, which is what a RegisterJournal record
+     * holds. It is checked when entries are added whatever the storage backend, so a register
+     * that saves to CSV doesn't start failing to save once it is switched to the journal.
+     */
+    public static final int MAX_ENTRY_NAME_BYTES = 46;
+
+    /** whether any number of threads can add to and read this register at the same time */
+    public boolean isConcurrent() {
+        return false;
+    }
+
+    /** @throws IllegalArgumentException if entryName is longer than MAX_ENTRY_NAME_BYTES */
+    public void add(long accountId, String entryName, long amountCents, Date transactionDate) {
+        logger.debug("Register entry adding: {}, {}", entryName, amountCents);
+        checkEntryName(entryName);
+        append(new RegisterEntry(nextId(), accountId, entryName, amountCents, transactionDate));
+    }
+
+    /**
+     * Add an entry for every posting, all dated transactionDate, with consecutive ids in
+     * posting order. Ids are reserved once for the whole batch.
+     *
+     * @return id of the first entry, -1 if there were no postings
+     */
+    public long addAll(List<Posting> postings, Date transactionDate) {
+        logger.debug("Register adding {} postings", postings.size());
+        if (postings.isEmpty()) {
+            return -1;
+        }
+        long firstId = nextIds(postings.size());
+        entryList.ensureCapacity(entryList.size() + postings.size());
+        long id = firstId;
+        for (Posting posting : postings) {
+            append(new RegisterEntry(id++, posting.accountId(), posting.entryName(), posting.amountCents(), transactionDate));
+        }
+        return firstId;
     }
 
     public void addRegisterEntry(RegisterEntry registerEntry) {
         logger.debug("Adding RegisterEntry verbatim: {}", registerEntry);
+        // make sure new entries don't reuse the ids of entries loaded from a file
+        reserveIdsThrough(registerEntry.id());
+        append(registerEntry);
+    }
+
+    /**
+     * @return entryName, which may be null
+     * @throws IllegalArgumentException if it is longer than MAX_ENTRY_NAME_BYTES in UTF-8
+     */
+    static String checkEntryName(String entryName) {
+        if (entryName == null || entryName.length() * 3 <= MAX_ENTRY_NAME_BYTES) {
+            return entryName;
+        }
+        int bytes = 0;
+        for (int i = 0; i < entryName.length(); i++) {
+            char c = entryName.charAt(i);
+            if (c < 0x80) {
+                bytes++;
+            } else if (c < 0x800) {
+                bytes += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < entryName.length()
+                    && Character.isLowSurrogate(entryName.charAt(i + 1))) {
+                bytes += 4;
+                i++;
+            } else {
+                bytes += 3;
+            }
+        }
+        if (bytes > MAX_ENTRY_NAME_BYTES) {
+            throw new IllegalArgumentException("Entry name is " + bytes + " bytes of UTF-8, at most "
+                    + MAX_ENTRY_NAME_BYTES + " are allowed: " + entryName);
+        }
+        return entryName;
+    }
+
+    /** ids are unique across every register in the JVM, not just within one register */
+    protected static long nextId() {
+        return ID_SEQUENCE.incrementAndGet();
+    }
+
+    /** allocate count consecutive ids and return the first */
+    protected static long nextIds(int count) {
+        return ID_SEQUENCE.getAndAdd(count) + 1;
+    }
+
+    /**
+     * Allocate count consecutive ids starting at firstId, only if firstId - 1 is still the
+     * most recently allocated id. Lets a caller record the ids it is about to take first.
+     */
+    protected static boolean claimIds(long firstId, int count) {
+        return ID_SEQUENCE.compareAndSet(firstId - 1, firstId - 1 + count);
+    }
+
+    /** the most recently allocated id */
+    protected static long lastId() {
+        return ID_SEQUENCE.get();
+    }
+
+    /** move the id sequence past the given id if it isn't already */
+    protected static void reserveIdsThrough(long id) {
+        ID_SEQUENCE.accumulateAndGet(id, Math::max);
+    }
+
+    private void append(RegisterEntry registerEntry) {
+        int position = entryList.size();
         entryList.add(registerEntry);
+        accountIndex.computeIfAbsent(registerEntry.accountId(), k -> new ArrayList<>()).add(registerEntry);
+        if (registerEntry.date() != null) {
+            long millis = registerEntry.date().getTime();
+            timeIndex.add(millis, position);
+            accountTimeIndex.computeIfAbsent(registerEntry.accountId(), k -> new TimeIndex()).add(millis, position);
+        }
     }
+
     public List<RegisterEntry> getEntries() {
         return Collections.unmodifiableList(entryList);
     }
 
+    /**
+     * The entries added so far, in the order they were added. Unlike getEntries() later adds
+     * and clear() don't change it, so it can be read for as long as needed. Costs O(1), the
+     * view shares the register's storage, which is only ever appended to.
+     */
+    public Collection<RegisterEntry> getEntriesSnapshot() {
+        // clear() replaces entryList, so this list only ever grows past size
+        List<RegisterEntry> entries = entryList;
+        return prefixView(entries::get, entries.size());
+    }
+
+    /** a getEntriesSnapshot() view and the id it reaches: it holds every entry with a lower id and none with a higher one */
+    record Cut(Collection<RegisterEntry> entries, long throughId) {
+    }
+
+    /**
+     * Take a view and the id it reaches together. Here every id allocated so far that is
+     * in this register is already in the view, which holds as long as nothing is being
+     * added at the same time. A register that isn't concurrent has to be locked by the
+     * caller against writers on other threads, see Bank's transfers.
+     */
+    Cut cut() {
+        long throughId = lastId();
+        return new Cut(getEntriesSnapshot(), throughId);
+    }
+
+    /**
+     * Total of the account's entries with an id after throughId that pass counted. This
+     * includes entries a concurrent register has added but not published yet, the ones
+     * holding up the next cut. Costs time proportional to the entries after throughId.
+     */
+    long amountAfter(long accountId, long throughId, Predicate<RegisterEntry> counted) {
+        long amount = 0;
+        for (RegisterEntry entry : getEntriesForAccountAfter(accountId, throughId)) {
+            if (counted.test(entry)) {
+                amount += entry.amountCents();
+            }
+        }
+        return amount;
+    }
+
+    /** read-only list of the first size rows, read with entryAt */
+    protected static List<RegisterEntry> prefixView(IntFunction<RegisterEntry> entryAt, int size) {
+        return new PrefixView(entryAt, size);
+    }
+
+    private static final class PrefixView extends AbstractList<RegisterEntry> implements RandomAccess {
+        private final IntFunction<RegisterEntry> entryAt;
+        private final int size;
+
+        PrefixView(IntFunction<RegisterEntry> entryAt, int size) {
+            this.entryAt = entryAt;
+            this.size = size;
+        }
+
+        @Override
+        public RegisterEntry get(int index) {
+            Objects.checkIndex(index, size);
+            return entryAt.apply(index);
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+
+    /**
+     * Entries for one account in the order they were added. This is a read-only
+     * view backed by the index so it costs nothing to get, even for a register
+     * holding millions of entries.
+     */
     public List<RegisterEntry> getEntriesForAccount(long accountId) {
-        return entryList.stream()
-                .filter(e -> e.accountId() == accountId)
-                .toList();
+        List<RegisterEntry> entries = accountIndex.get(accountId);
+        return (entries != null) ? Collections.unmodifiableList(entries) : Collections.emptyList();
+    }
+
+    /**
+     * The account's entries with an id greater than afterId, oldest first. A binary search
+     * of the account's index finds the first one, so this costs time proportional to the
+     * entries returned, not to the account's whole history.
+     */
+    public List<RegisterEntry> getEntriesForAccountAfter(long accountId, long afterId) {
+        List<RegisterEntry> entries = getEntriesForAccount(accountId);
+        return entries.subList(firstAfter(entries, afterId), entries.size());
+    }
+
+    /** position of the first entry with an id greater than afterId in a list ordered by id */
+    protected static int firstAfter(List<RegisterEntry> entries, long afterId) {
+        int low = 0;
+        int high = entries.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (entries.get(mid).id() <= afterId) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Entries dated from (inclusive) up to to (exclusive), oldest first. The stream is lazy,
+     * entries are looked up as it is consumed so a large range is never collected into a list.
+     */
+    public Stream<RegisterEntry> getEntriesBetween(Date from, Date to) {
+        return entriesAt(timeIndex, from, to);
+    }
+
+    /** Like getEntriesBetween() but only for one account, costs time proportional to that account's entries */
+    public Stream<RegisterEntry> getEntriesForAccountBetween(long accountId, Date from, Date to) {
+        return entriesAt(accountTimeIndex.get(accountId), from, to);
+    }
+
+    private Stream<RegisterEntry> entriesAt(TimeIndex index, Date from, Date to) {
+        if (index == null) {
+            return Stream.empty();
+        }
+        return rowsToEntries(index.rowsBetween(from.getTime(), to.getTime()), entryList::get);
+    }
+
+    /** the order of the date-bounded queries: by date, entries with the same date by id */
+    static final Comparator<RegisterEntry> BY_DATE_THEN_ID =
+            Comparator.comparing(RegisterEntry::date).thenComparingLong(RegisterEntry::id);
+
+    /**
+     * Merge streams that are each ordered by BY_DATE_THEN_ID into one stream in that order.
+     * Nothing is read until the merged stream is, from then on each stream is only read as
+     * far as its next entry.
+     */
+    static Stream<RegisterEntry> mergeByDate(List<Stream<RegisterEntry>> sorted) {
+        if (sorted.size() == 1) {
+            return sorted.get(0);
+        }
+        Iterator<RegisterEntry> merged = new Iterator<>() {
+            // the next entry of every stream that has one, earliest first
+            private PriorityQueue<MergeHead> heads;
+
+            private PriorityQueue<MergeHead> heads() {
+                if (heads == null) {
+                    heads = new PriorityQueue<>(Math.max(1, sorted.size()));
+                    for (Stream<RegisterEntry> stream : sorted) {
+                        MergeHead.addNext(heads, stream.iterator());
+                    }
+                }
+                return heads;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return !heads().isEmpty();
+            }
+
+            @Override
+            public RegisterEntry next() {
+                MergeHead head = heads().poll();
+                if (head == null) {
+                    throw new NoSuchElementException();
+                }
+                MergeHead.addNext(heads, head.rest());
+                return head.entry();
+            }
+        };
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(merged,
+                Spliterator.ORDERED | Spliterator.NONNULL), false)
+                .onClose(() -> sorted.forEach(Stream::close));
+    }
+
+    private record MergeHead(RegisterEntry entry, Iterator<RegisterEntry> rest) implements Comparable<MergeHead> {
+        static void addNext(PriorityQueue<MergeHead> heads, Iterator<RegisterEntry> rest) {
+            if (rest.hasNext()) {
+                heads.add(new MergeHead(rest.next(), rest));
+            }
+        }
+
+        @Override
+        public int compareTo(MergeHead o) {
+            return BY_DATE_THEN_ID.compare(entry, o.entry);
+        }
+    }
+
+    /** lazily turn an iterator of rows into a stream of the entries stored at those rows */
+    protected static Stream<RegisterEntry> rowsToEntries(PrimitiveIterator.OfInt rows, IntFunction<RegisterEntry> entryAt) {
+        Iterator<RegisterEntry> entries = new Iterator<>() {
+            @Override
+            public boolean hasNext() {
+                return rows.hasNext();
+            }
+
+            @Override
+            public RegisterEntry next() {
+                return entryAt.apply(rows.nextInt());
+            }
+        };
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(entries,
+                Spliterator.ORDERED | Spliterator.NONNULL), false);
+    }
+
+    /**
+     * Remove the entries the filter matches and keep the rest in the order they were in, e.g.
+     * once they are sealed into an archive. The register is rebuilt with clear(), so snapshots
+     * still read the old entries. It costs time proportional to the register and nothing may
+     * be added to the register meanwhile.
+     */
+    public void removeIf(Predicate<RegisterEntry> filter) {
+        List<RegisterEntry> kept = new ArrayList<>();
+        for (RegisterEntry entry : getEntries()) {
+            if (!filter.test(entry)) {
+                kept.add(entry);
+            }
+        }
+        clear();
+        for (RegisterEntry entry : kept) {
+            addRegisterEntry(entry);
+        }
     }
 
     public void clear() {
-        entryList.clear();
+        // a new list rather than clearing, snapshots still read the old one
+        entryList = new ArrayList<>();
+        accountIndex.clear();
+        timeIndex.clear();
+        accountTimeIndex.clear();
     }
 }
@@ -0,0 +1,315 @@
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Closed statement periods of the register, sealed into immutable segment files on disk.
+ *
+ * Each segment is a RegisterJournal file, its entries sorted by account and then id. Only a
+ * summary of each segment (entry count, date range and per-account totals and positions) is
+ * kept in memory, the entries themselves are read from disk as a query's stream reaches them.
+ * Summaries let queries skip every segment that can't contain what they're looking for, and
+ * read just an account's own records from the segments that do.
+ */
+public class RegisterArchive {
+    public static Logger logger = LogManager.getLogger(RegisterArchive.class.getName());
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".journal";
+
+    /**
+     * Totals for one account within one segment.
+     *
+     * @param firstRecord position of the account's first record in the segment, its entries are
+     *                    the entryCount records from there. -1 if they aren't next to each other,
+     *                    as in segments sealed before segments were sorted by account
+     */
+    public record AccountSummary(long entryCount, long totalCents, long firstRecord) {
+    }
+
+    /** what's in one sealed segment, minDate/maxDate are epoch millis (Long.MAX_VALUE/MIN_VALUE if no entry has a date) */
+    public record Segment(Path path, long entryCount, long minDate, long maxDate, Map<Long, AccountSummary> accounts) {
+        boolean overlaps(long fromMillis, long toMillis) {
+            return minDate < toMillis && maxDate >= fromMillis;
+        }
+    }
+
+    private final Path directory;
+    private final List<Segment> segments = new ArrayList<>();
+
+    /**
+     * Open the archive in the given directory, reading the summaries of any segments already there.
+     */
+    public RegisterArchive(Path directory) throws IOException, SerializationException {
+        this.directory = directory;
+        Files.createDirectories(directory);
+        List<Path> paths = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            stream.forEach(paths::add);
+        }
+        Collections.sort(paths);
+        for (Path path : paths) {
+            segments.add(summarize(path));
+        }
+        logger.info("Opened register archive {} with {} segments", directory, segments.size());
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    public List<Segment> getSegments() {
+        return Collections.unmodifiableList(segments);
+    }
+
+    public long getEntryCount() {
+        long count = 0;
+        for (Segment s : segments) {
+            count += s.entryCount();
+        }
+        return count;
+    }
+
+    /** sum of the account's archived entries in cents, from the summaries only */
+    public long getTotalCentsForAccount(long accountId) {
+        long total = 0;
+        for (Segment s : segments) {
+            AccountSummary summary = s.accounts().get(accountId);
+            if (summary != null) {
+                total += summary.totalCents();
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Write a closed period's entries into a new segment, sorted by account and then id.
+     *
+     * @return the summary of the new segment
+     */
+    public Segment seal(List<RegisterEntry> entries) throws IOException, SerializationException {
+        Segment segment = write(entries);
+        add(segment);
+        return segment;
+    }
+
+    /**
+     * The first half of seal(): write the segment file, but don't add the segment to the
+     * archive yet, so its entries can be taken out of the register at the same time as it is
+     * added. Only one segment can be written at a time, it takes the next segment number.
+     */
+    Segment write(List<RegisterEntry> entries) throws IOException, SerializationException {
+        Path path = directory.resolve(String.format("%s%06d%s", SEGMENT_PREFIX, segments.size() + 1, SEGMENT_SUFFIX));
+        if (Files.exists(path)) {
+            throw new SerializationException("Segment " + path + " already exists, segments are never overwritten");
+        }
+        List<RegisterEntry> byAccount = new ArrayList<>(entries);
+        byAccount.sort(BY_ACCOUNT_THEN_ID);
+        new RegisterJournal(path).rewrite(byAccount);
+        Summarizer summary = new Summarizer();
+        byAccount.forEach(summary);
+        return summary.toSegment(path);
+    }
+
+    private static final Comparator<RegisterEntry> BY_ACCOUNT_THEN_ID =
+            Comparator.comparingLong(RegisterEntry::accountId).thenComparingLong(RegisterEntry::id);
+
+    /** the second half of seal(): add a segment written by write() */
+    void add(Segment segment) {
+        segments.add(segment);
+        logger.info("Sealed {} register entries into {}", segment.entryCount(), segment.path());
+    }
+
+    private static Segment summarize(Path path) throws IOException, SerializationException {
+        Summarizer summary = new Summarizer();
+        new RegisterJournal(path).forEach(summary);
+        // the open period may not hold any entry yet, new ones mustn't reuse archived ids
+        Register.reserveIdsThrough(summary.maxId);
+        return summary.toSegment(path);
+    }
+
+    /** builds a segment's summary from its entries, handed over in the order they are in the file */
+    private static final class Summarizer implements Consumer<RegisterEntry> {
+        long entryCount;
+        long minDate = Long.MAX_VALUE;
+        long maxDate = Long.MIN_VALUE;
+        long maxId;
+        // per account: entry count, total cents, first and last position
+        final Map<Long, long[]> accounts = new HashMap<>();
+
+        @Override
+        public void accept(RegisterEntry e) {
+            long position = entryCount++;
+            if (e.date() != null) {
+                minDate = Math.min(minDate, e.date().getTime());
+                maxDate = Math.max(maxDate, e.date().getTime());
+            }
+            maxId = Math.max(maxId, e.id());
+            long[] account = accounts.computeIfAbsent(e.accountId(), k -> new long[] {0, 0, position, position});
+            account[0]++;
+            account[1] += e.amountCents();
+            account[3] = position;
+        }
+
+        Segment toSegment(Path path) {
+            Map<Long, AccountSummary> summaries = new HashMap<>(accounts.size() * 2);
+            accounts.forEach((accountId, a) -> summaries.put(accountId,
+                    new AccountSummary(a[0], a[1], (a[3] - a[2] + 1 == a[0]) ? a[2] : -1)));
+            return new Segment(path, entryCount, minDate, maxDate, Collections.unmodifiableMap(summaries));
+        }
+    }
+
+    /** every archived entry, oldest segment first, each segment is read when the stream reaches it */
+    public Stream<RegisterEntry> getEntries() {
+        return getEntries(segments);
+    }
+
+    /**
+     * The entries of the given segments of this archive, e.g. a copy of getSegments() taken
+     * earlier. Within a segment they are ordered by account, then id.
+     */
+    public Stream<RegisterEntry> getEntries(List<Segment> segments) {
+        return segments.stream().flatMap(s -> read(s, 0, s.entryCount()));
+    }
+
+    /**
+     * The account's archived entries, oldest segment first. Only the account's own records
+     * are read, from the segments that contain the account, so this costs time proportional
+     * to the account's entries.
+     */
+    public Stream<RegisterEntry> getEntriesForAccount(long accountId) {
+        return segments.stream()
+                .filter(s -> s.accounts().containsKey(accountId))
+                .flatMap(s -> readAccount(s, accountId));
+    }
+
+    /**
+     * Archived entries dated from (inclusive) up to to (exclusive), oldest first, entries with
+     * the same date by id. Only overlapping segments are read. Backdated entries can make
+     * segments overlap in time, so the overlapping segments are read together and merged.
+     */
+    public Stream<RegisterEntry> getEntriesBetween(Date from, Date to) {
+        return between(segments.stream(), from, to);
+    }
+
+    /** like getEntriesBetween() for one account, only the account's records are read */
+    public Stream<RegisterEntry> getEntriesForAccountBetween(long accountId, Date from, Date to) {
+        return between(segments.stream().filter(s -> s.accounts().containsKey(accountId)), from, to,
+                s -> readAccount(s, accountId));
+    }
+
+    private static Stream<RegisterEntry> between(Stream<Segment> candidates, Date from, Date to) {
+        return between(candidates, from, to, s -> read(s, 0, s.entryCount()));
+    }
+
+    private static Stream<RegisterEntry> between(Stream<Segment> candidates, Date from, Date to,
+                                                 Function<Segment, Stream<RegisterEntry>> reader) {
+        long fromMillis = from.getTime();
+        long toMillis = to.getTime();
+        // each segment is only read once the merged stream is, only its entries in range are sorted
+        return Register.mergeByDate(candidates
+                .filter(s -> s.overlaps(fromMillis, toMillis))
+                .map(s -> Stream.of(s).flatMap(segment -> reader.apply(segment)
+                        .filter(e -> inRange(e, fromMillis, toMillis))
+                        .sorted(Register.BY_DATE_THEN_ID)))
+                .toList());
+    }
+
+    private static boolean inRange(RegisterEntry e, long fromMillis, long toMillis) {
+        return e.date() != null && e.date().getTime() >= fromMillis && e.date().getTime() < toMillis;
+    }
+
+    /** the account's records in a segment, the whole segment is scanned if they aren't next to each other */
+    private static Stream<RegisterEntry> readAccount(Segment segment, long accountId) {
+        AccountSummary summary = segment.accounts().get(accountId);
+        if (summary.firstRecord() >= 0) {
+            return read(segment, summary.firstRecord(), summary.entryCount());
+        }
+        return read(segment, 0, segment.entryCount()).filter(e -> e.accountId() == accountId);
+    }
+
+    /** records first until first + count of the segment, read as the stream is consumed */
+    private static Stream<RegisterEntry> read(Segment segment, long first, long count) {
+        return StreamSupport.stream(new SegmentSpliterator(segment.path(), first, first + count), false);
+    }
+
+    /**
+     * Reads a range of a segment's records with RegisterJournal.forEach(): all in one go when
+     * the rest of the stream is consumed at once, otherwise a chunk at a time, so no more than
+     * a chunk of entries is ever held.
+     */
+    private static final class SegmentSpliterator implements Spliterator<RegisterEntry> {
+        private static final int CHUNK = 1024;
+        private final RegisterJournal journal;
+        private final long end;
+        private long next;
+        private final ArrayDeque<RegisterEntry> chunk = new ArrayDeque<>();
+
+        SegmentSpliterator(Path path, long first, long end) {
+            this.journal = new RegisterJournal(path);
+            this.next = first;
+            this.end = end;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super RegisterEntry> action) {
+            if (chunk.isEmpty() && next < end) {
+                long count = Math.min(CHUNK, end - next);
+                read(next, count, chunk::add);
+                next += count;
+            }
+            RegisterEntry entry = chunk.poll();
+            if (entry == null) {
+                return false;
+            }
+            action.accept(entry);
+            return true;
+        }
+
+        @Override
+        public void forEachRemaining(Consumer<? super RegisterEntry> action) {
+            while (!chunk.isEmpty()) {
+                action.accept(chunk.poll());
+            }
+            if (next < end) {
+                long first = next;
+                next = end;
+                read(first, end - first, action::accept);
+            }
+        }
+
+        private void read(long first, long count, Consumer<RegisterEntry> consumer) {
+            try {
+                journal.forEach(first, count, consumer);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Reading segment " + journal.getPath(), e);
+            } catch (SerializationException e) {
+                throw new IllegalStateException("Reading segment " + journal.getPath(), e);
+            }
+        }
+
+        @Override
+        public Spliterator<RegisterEntry> trySplit() {
+            return null;
+        }
+
+        @Override
+        public long estimateSize() {
+            return end - next + chunk.size();
+        }
+
+        @Override
+        public int characteristics() {
+            return ORDERED | NONNULL;
+        }
+    }
+}
@@ -1,21 +1,30 @@
+import java.io.IOException;
 import java.util.Date;
-import java.util.List;
-import java.util.stream.Collectors;
 
-public record RegisterEntry(long id, long accountId, String entryName, double amount, Date date) implements Persistable {
+/**
+ * One line in the register. amountCents is the amount in cents, see Money.
+ */
+public record RegisterEntry(long id, long accountId, String entryName, long amountCents, Date date) implements Persistable {
     public static String [] COLUMNS = { "id", "accountId", "entryName", "amount", "date", "version" };
+
+    /** amount in dollars, for display */
+    public double amount() {
+        return Money.toDouble(amountCents);
+    }
+
     @Override
     public String toCSV() throws SerializationException {
-        List<String> values = List.of(                getId(),
-                        accountId,
-                        entryName,
-                        amount,
-                        date.getTime(),
-                        "v1"
-                ).stream()
-                .map(Object::toString)
-                .collect(Collectors.toList());
-        return String.join(DELIMITER+" ", values);
+        return CsvRecordWriter.toLine(this::writeCSV);
+    }
+
+    @Override
+    public void writeCSV(Appendable out) throws IOException {
+        CsvRecordWriter.longField(out, id);
+        CsvRecordWriter.longField(out, accountId);
+        CsvRecordWriter.field(out, entryName);
+        CsvRecordWriter.centsField(out, amountCents);
+        CsvRecordWriter.longField(out, date.getTime());
+        out.append("v2");
     }
 
     @Override
@@ -28,11 +37,14 @@ public record RegisterEntry(long id, long accountId, String entryName, double am
         return COLUMNS;
     }
 
+    /**
+     * v1 records (amount saved from a double) are converted to cents, v2 records are exact.
+     */
     public static RegisterEntry fromCSV(final String csv) throws SerializationException {
         final String[] fields = csv.split(DELIMITER);
         final String version = fields[fields.length - 1];
-        if (!version.trim().equals("v1")) {
-            throw new SerializationException("Verison incorrect or missing, expected v1 but was " + version);
+        if (!version.trim().equals("v1") && !version.trim().equals("v2")) {
+            throw new SerializationException("Verison incorrect or missing, expected v1 or v2 but was " + version);
         }
         if (fields.length != COLUMNS.length) {
             throw new SerializationException(String.format("not enough fields, should be %d but was %d: %s", COLUMNS.length, fields.length, csv));
@@ -41,8 +53,14 @@ public record RegisterEntry(long id, long accountId, String entryName, double am
                 Long.parseLong(fields[0].trim()),
                 Long.parseLong(fields[1].trim()),
                 fields[2].trim(),
-                Double.parseDouble(fields[3].trim()),
+                Money.parse(fields[3]),
                 new Date(Long.parseLong(fields[4].trim())));
     }
 
+    /** like fromCSV(String) for the parser's current line, see CsvRecordParser */
+    public static RegisterEntry fromCSV(CsvRecordParser csv) throws SerializationException {
+        csv.checkRecord(COLUMNS, "v1", "v2");
+        return new RegisterEntry(csv.nextLong(), csv.nextLong(), csv.nextString(), csv.nextCents(), new Date(csv.nextLong()));
+    }
+
 }
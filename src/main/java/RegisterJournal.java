@@ -0,0 +1,250 @@
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Date;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Append-only binary file of RegisterEntry records, accessed through memory-mapped buffers.
+ *
+ * Layout (big-endian):
+ * <pre>
+ * header, 32 bytes:  int magic, int version, int recordSize, int unused, long recordCount, long unused
+ * record, 80 bytes:  long id, long accountId, long amount in cents, long date millis,
+ *                    short nameLength, byte[46] entryName (UTF-8, zero padded)
+ * </pre>
+ * Registers don't accept longer names than a record holds, see Register.MAX_ENTRY_NAME_BYTES,
+ * so only entries loaded from an older CSV register can be too long to write.
+ * Version 1 journals stored the amount as a double, they can still be read but not appended to.
+ * Records are written and forced first and the header count is updated and forced afterwards,
+ * so a crash in the middle of an append leaves the journal holding the records from before
+ * the append. rewrite() builds the new journal in a temporary file next to it and moves that
+ * over the old one, so a crash leaves either the old journal or the new one.
+ */
+public class RegisterJournal {
+    public static Logger logger = LogManager.getLogger(RegisterJournal.class.getName());
+
+    static final int MAGIC = 0x52474A4C; // "RGJL"
+    static final int VERSION = 2;
+    static final int VERSION_DOUBLE_AMOUNTS = 1;
+    static final int HEADER_SIZE = 32;
+    static final int RECORD_SIZE = 80;
+    static final int MAX_NAME_BYTES = Register.MAX_ENTRY_NAME_BYTES;
+    private static final int COUNT_OFFSET = 16;
+    private static final long NO_DATE = Long.MIN_VALUE;
+    // map at most this many records at a time so a mapping stays under 2GB
+    private static final int RECORDS_PER_MAPPING = (Integer.MAX_VALUE / RECORD_SIZE) & ~0xFFF;
+
+    private final Path path;
+
+    public RegisterJournal(Path path) {
+        this.path = path;
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    public boolean exists() {
+        return Files.exists(path);
+    }
+
+    private record Header(int version, long recordCount) {
+    }
+
+    /** @return number of records in the journal, 0 if there is no journal yet */
+    public long recordCount() throws IOException, SerializationException {
+        if (!exists()) {
+            return 0;
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return readHeader(channel).recordCount();
+        }
+    }
+
+    /** @return the format version of the existing journal, or the current version if there is no journal yet */
+    public int formatVersion() throws IOException, SerializationException {
+        if (!exists()) {
+            return VERSION;
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return readHeader(channel).version();
+        }
+    }
+
+    /**
+     * Add entries to the end of the journal, only the new records and the header are written.
+     *
+     * @return the number of records in the journal after the append
+     */
+    public long append(List<RegisterEntry> entries) throws IOException, SerializationException {
+        try (FileChannel channel = FileChannel.open(path,
+                StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.CREATE)) {
+            return append(channel, path, entries);
+        }
+    }
+
+    private long append(FileChannel channel, Path target, List<RegisterEntry> entries) throws IOException, SerializationException {
+        long count = 0;
+        if (channel.size() == 0) {
+            writeHeader(channel, 0);
+        } else {
+            Header header = readHeader(channel);
+            if (header.version() != VERSION) {
+                throw new SerializationException("Can't append to version " + header.version()
+                        + " journal " + target + ", rewrite it");
+            }
+            count = header.recordCount();
+        }
+        int written = 0;
+        while (written < entries.size()) {
+            int batch = Math.min(entries.size() - written, RECORDS_PER_MAPPING);
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE,
+                    HEADER_SIZE + (count + written) * RECORD_SIZE, (long) batch * RECORD_SIZE);
+            for (int i = 0; i < batch; i++) {
+                writeRecord(buffer, i * RECORD_SIZE, entries.get(written + i));
+            }
+            buffer.force();
+            written += batch;
+        }
+        count += written;
+        writeHeader(channel, count);
+        // the new length is metadata, so force that too
+        channel.force(true);
+        logger.info("Appended {} register entries to journal {}, {} total", written, target, count);
+        return count;
+    }
+
+    /**
+     * Replace the journal with one holding just these entries. The old journal stays in place
+     * until the new one has been written and forced.
+     *
+     * @return the number of records in the new journal
+     */
+    public long rewrite(List<RegisterEntry> entries) throws IOException, SerializationException {
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        try {
+            long count;
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.READ, StandardOpenOption.WRITE,
+                    StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                count = append(channel, temp, entries);
+            }
+            Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE);
+            logger.info("Rewrote journal {} with {} register entries", path, count);
+            return count;
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /** throw away every record, leaving an empty journal */
+    public void truncate() throws IOException, SerializationException {
+        rewrite(List.of());
+    }
+
+    /**
+     * Scan the mapped journal, handing every record to the consumer in the order it was appended.
+     *
+     * @return number of records read
+     */
+    public long forEach(Consumer<RegisterEntry> consumer) throws IOException, SerializationException {
+        return forEach(0, Long.MAX_VALUE, consumer);
+    }
+
+    /**
+     * Like forEach(Consumer) but only for the records from position first (counting from 0)
+     * up to first + count, so several threads can each scan their own part of the journal.
+     *
+     * @return number of records read
+     */
+    public long forEach(long first, long count, Consumer<RegisterEntry> consumer) throws IOException, SerializationException {
+        if (!exists()) {
+            return 0;
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            Header header = readHeader(channel);
+            long end = Math.min(header.recordCount(), first + Math.min(count, Long.MAX_VALUE - first));
+            boolean doubleAmounts = header.version() == VERSION_DOUBLE_AMOUNTS;
+            byte[] name = new byte[MAX_NAME_BYTES];
+            for (long start = first; start < end; start += RECORDS_PER_MAPPING) {
+                int batch = (int) Math.min(end - start, RECORDS_PER_MAPPING);
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY,
+                        HEADER_SIZE + start * RECORD_SIZE, (long) batch * RECORD_SIZE);
+                for (int i = 0; i < batch; i++) {
+                    consumer.accept(readRecord(buffer, i * RECORD_SIZE, name, doubleAmounts));
+                }
+            }
+            return Math.max(0, end - first);
+        }
+    }
+
+    private Header readHeader(FileChannel channel) throws IOException, SerializationException {
+        if (channel.size() < HEADER_SIZE) {
+            throw new SerializationException("Journal " + path + " is too short to have a header");
+        }
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        channel.read(header, 0);
+        header.flip();
+        int magic = header.getInt();
+        int version = header.getInt();
+        int recordSize = header.getInt();
+        if (magic != MAGIC) {
+            throw new SerializationException("Not a register journal: " + path);
+        }
+        if ((version != VERSION && version != VERSION_DOUBLE_AMOUNTS) || recordSize != RECORD_SIZE) {
+            throw new SerializationException(String.format("Journal version incorrect, expected %d/%d but was %d/%d: %s",
+                    VERSION, RECORD_SIZE, version, recordSize, path));
+        }
+        long count = header.getLong(COUNT_OFFSET);
+        if (channel.size() < HEADER_SIZE + count * RECORD_SIZE) {
+            throw new SerializationException("Journal " + path + " is shorter than its " + count + " records");
+        }
+        return new Header(version, count);
+    }
+
+    private static void writeHeader(FileChannel channel, long count) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC).putInt(VERSION).putInt(RECORD_SIZE).putInt(0).putLong(count).putLong(0);
+        header.flip();
+        channel.write(header, 0);
+    }
+
+    private static void writeRecord(ByteBuffer buffer, int offset, RegisterEntry entry) throws SerializationException {
+        byte[] name = (entry.entryName() != null) ? entry.entryName().getBytes(StandardCharsets.UTF_8) : new byte[0];
+        if (name.length > MAX_NAME_BYTES) {
+            throw new SerializationException("Entry name longer than " + MAX_NAME_BYTES + " bytes: " + entry);
+        }
+        buffer.putLong(offset, entry.id());
+        buffer.putLong(offset + 8, entry.accountId());
+        buffer.putLong(offset + 16, entry.amountCents());
+        buffer.putLong(offset + 24, (entry.date() != null) ? entry.date().getTime() : NO_DATE);
+        buffer.putShort(offset + 32, (short) name.length);
+        buffer.put(offset + 34, name);
+    }
+
+    private RegisterEntry readRecord(ByteBuffer buffer, int offset, byte[] name, boolean doubleAmount)
+            throws SerializationException {
+        long date = buffer.getLong(offset + 24);
+        int nameLength = buffer.getShort(offset + 32);
+        if (nameLength < 0 || nameLength > MAX_NAME_BYTES) {
+            throw new SerializationException("Corrupt record in journal " + path + ", entry name length " + nameLength);
+        }
+        buffer.get(offset + 34, name, 0, nameLength);
+        return new RegisterEntry(
+                buffer.getLong(offset),
+                buffer.getLong(offset + 8),
+                new String(name, 0, nameLength, StandardCharsets.UTF_8),
+                doubleAmount ? Money.ofDouble(buffer.getDouble(offset + 16)) : buffer.getLong(offset + 16),
+                (date != NO_DATE) ? new Date(date) : null);
+    }
+}
@@ -1,8 +1,8 @@
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
-import java.util.List;
-import java.util.stream.Collectors;
+import java.io.IOException;
+import java.util.concurrent.locks.ReentrantLock;
 
 public class SavingsAccount extends Account {
     public static Logger logger = LogManager.getLogger(SavingsAccount.class);
@@ -20,7 +20,17 @@ public class SavingsAccount extends Account {
     }
 
     public SavingsAccount(String name, long id, double balance, double interestRate, long ownerId) {
-        super(name, id, balance, ownerId);
+        this(name, id, balance, interestRate, ownerId, null);
+    }
+
+    /** the account on the given register, see Account(String, long, double, long, Register) */
+    public SavingsAccount(String name, long id, double balance, double interestRate, long ownerId, Register register) {
+        this(name, id, Money.ofDouble(balance), interestRate, ownerId, register);
+    }
+
+    /** with the balance in cents, private so whole-number literals can't pick it over the public ones */
+    private SavingsAccount(String name, long id, long balanceCents, double interestRate, long ownerId, Register register) {
+        super(name, id, balanceCents, ownerId, register);
         if (interestRate < 0) {
             throw new IllegalArgumentException("Interest rate must be >= 0");
         }
@@ -34,28 +44,47 @@ public class SavingsAccount extends Account {
 
     @Override
     public void monthEnd() {
-        if (getBalance() < getMinimumBalance()) {
-            withdraw(getBelowMinimumFee(), "MINIMUM BALANCE CHARGE");
-        }
-        
-        double interest = (interestRate * getBalance() / 12d * 100d) / 100d;
+        ReentrantLock lock = lockAccount();
+        try {
+            if (getBalanceCents() < getMinimumBalanceCents()) {
+                withdrawCents(getBelowMinimumFeeCents(), "MINIMUM BALANCE CHARGE");
+            }
 
-        if (interest > 0d) {
-            deposit(interest, "INTEREST");
+            // monthly interest, rounded to the nearest cent
+            long interest = Money.multiply(getBalanceCents(), interestRate / 12d);
+
+            if (interest > 0) {
+                depositCents(interest, "INTEREST");
+            }
+        } finally {
+            unlockAccount(lock);
         }
         // Question: what else do we need to do here??
     }
 
+    /** dormant when there's been no activity, no fee is due and no interest would be paid */
+    @Override
+    public boolean needsMonthEnd() {
+        return isActiveSinceStatement() || getBalanceCents() < getMinimumBalanceCents()
+                || Money.multiply(getBalanceCents(), interestRate / 12d) > 0;
+    }
+
     public String toString() {
         return "Savings " + super.toString() +
                 " Interest Rate: " + (100*interestRate) + "% ";
     }
 
     public static SavingsAccount fromCSV(String csv) throws SerializationException {
+        return fromCSV(csv, null);
+    }
+
+    /** like fromCSV(String) with the account on the given register, null for the shared one */
+    public static SavingsAccount fromCSV(String csv, Register register) throws SerializationException {
         final String [] fields = csv.split(DELIMITER);
         final String version = fields[fields.length-1].trim();
-        if (! version.equals("v1")) {
-            throw new SerializationException("Verison incorrect or missing, expected v1 but was " + version);
+        // v1 saved the balance from a double, v2 saves exact cents
+        if (! version.equals("v1") && ! version.equals("v2")) {
+            throw new SerializationException("Verison incorrect or missing, expected v1 or v2 but was " + version);
         }
         if (fields.length != COLUMNS.length) {
             throw new SerializationException(String.format("not enough fields, should be %d but was %d: %s",
@@ -65,12 +94,28 @@ public class SavingsAccount extends Account {
             // Fields: String name, long id, double balance, double interestRate, Owner owner
             fields[1].trim(),
             Long.parseLong(fields[0].trim()),
-            Double.parseDouble(fields[2].trim()),
+            Money.parse(fields[2]),
             Double.parseDouble(fields[3].trim()),
-            Long.parseLong(fields[4].trim())
+            Long.parseLong(fields[4].trim()),
+            register
         );
     }
 
+    /** like fromCSV(String) for the parser's current line, see CsvRecordParser */
+    public static SavingsAccount fromCSV(CsvRecordParser csv) throws SerializationException {
+        return fromCSV(csv, null);
+    }
+
+    /** like fromCSV(String, Register) for the parser's current line */
+    public static SavingsAccount fromCSV(CsvRecordParser csv, Register register) throws SerializationException {
+        csv.checkRecord(COLUMNS, "v1", "v2");
+        long id = csv.nextLong();
+        String name = csv.nextString();
+        long balanceCents = csv.nextCents();
+        double interestRate = csv.nextDouble();
+        return new SavingsAccount(name, id, balanceCents, interestRate, csv.nextLong(), register);
+    }
+
     @Override
     public boolean equals(Object o) {
         return super.equals(o);
@@ -83,16 +128,17 @@ public class SavingsAccount extends Account {
 
     @Override
     public String toCSV() {
+        return CsvRecordWriter.toLine(this::writeCSV);
+    }
+
+    @Override
+    public void writeCSV(Appendable out) throws IOException {
         // Fields in object: String name, long id, double balance, double interestRate, long ownerId
-        List<String> values = List.of(                getId(),
-                        name,
-                        getBalance(),
-                        interestRate,
-                        getOwnerId(),
-                        "v1"
-                ).stream()
-                .map(Object::toString)
-                .collect(Collectors.toList());
-        return String.join(DELIMITER+" ", values);
+        CsvRecordWriter.longField(out, getId());
+        CsvRecordWriter.field(out, name);
+        CsvRecordWriter.centsField(out, getBalanceCents());
+        CsvRecordWriter.field(out, Double.toString(interestRate));
+        CsvRecordWriter.longField(out, getOwnerId());
+        out.append("v2");
     }
 }
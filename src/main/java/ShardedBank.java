@@ -0,0 +1,472 @@
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Bank split into shards so deposits and withdrawals can use more than one core. Accounts
+ * are assigned to a shard by a hash of their id. Every shard is an ordinary Bank with its own
+ * plain Register and is only ever touched by its own single thread, so nothing inside a shard
+ * needs locks (leave Account.Concurrency at NONE).
+ *
+ * The methods here route each call to the account's shard and wait for it. Accounts must only
+ * be changed through this class (or submit()), not by calling deposit() etc. on an Account
+ * from another thread. Owners are copied to every shard. Work spanning shards is coordinated
+ * here explicitly: transfer() runs one leg on each shard, runMonthEnd() runs every shard at
+ * once and merges the statements.
+ *
+ * All accounts write through one routing register (set as Account's shared register) which
+ * passes each entry to the register of the account's shard, on that shard's thread. That is
+ * how the OPEN entry of an account constructed on the caller's thread ends up in its shard.
+ * Like Bank, only one ShardedBank can be in use at a time.
+ */
+public class ShardedBank implements Closeable {
+    public static Logger logger = LogManager.getLogger(ShardedBank.class);
+    private static final long MIX = 0x9E3779B97F4A7C15L;
+
+    private final Shard[] shards;
+    private final RoutingRegister routingRegister;
+    // every shard has a copy, this one answers owner queries without going to a shard
+    private final Map<Long, Owner> owners = new ConcurrentSkipListMap<>();
+
+    /** work run on a shard's thread, with that shard's Bank */
+    @FunctionalInterface
+    public interface ShardTask<T> {
+        T apply(Bank shard) throws Exception;
+    }
+
+    /** one Bank, its register and the thread that owns both */
+    private static final class Shard {
+        final int index;
+        final Register register = new Register();
+        final Bank bank = new Bank(register);
+        final ExecutorService executor;
+        volatile Thread thread;
+
+        Shard(int index) {
+            this.index = index;
+            this.executor = Executors.newSingleThreadExecutor(r -> {
+                Thread t = new ShardThread(r, index);
+                t.setDaemon(true);
+                thread = t;
+                return t;
+            });
+        }
+
+        <T> CompletableFuture<T> submit(ShardTask<T> task) {
+            CompletableFuture<T> result = new CompletableFuture<>();
+            executor.execute(() -> {
+                try {
+                    result.complete(task.apply(bank));
+                } catch (Throwable t) {
+                    result.completeExceptionally(t);
+                }
+            });
+            return result;
+        }
+
+        /**
+         * Run the task right here when already on the shard's thread, otherwise on it and wait.
+         * Waiting on another shard's thread is refused, see {@link ShardedBank#submit}.
+         */
+        <T> T call(ShardTask<T> task) {
+            if (Thread.currentThread() == thread) {
+                try {
+                    return task.apply(bank);
+                } catch (RuntimeException e) {
+                    throw e;
+                } catch (Exception e) {
+                    throw new CompletionException(e);
+                }
+            }
+            checkNotOnShardThread("wait for shard " + index);
+            return submit(task).join();
+        }
+    }
+
+    /** marks the shard threads, which must never block waiting for a shard */
+    private static final class ShardThread extends Thread {
+        final int index;
+
+        ShardThread(Runnable task, int index) {
+            super(task, "bank-shard-" + index);
+            this.index = index;
+        }
+    }
+
+    /**
+     * Two shards each waiting for the other, or one waiting for a task queued behind itself,
+     * would never finish, so a shard thread may only hand work to other shards, never wait for it.
+     */
+    private static void checkNotOnShardThread(String what) {
+        if (Thread.currentThread() instanceof ShardThread current) {
+            throw new IllegalStateException("Shard " + current.index + " can't " + what
+                    + ": a shard thread must not wait for a shard");
+        }
+    }
+
+    public ShardedBank(int shardCount) {
+        if (shardCount < 1) {
+            throw new IllegalArgumentException("shardCount must be >= 1 but was " + shardCount);
+        }
+        shards = new Shard[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            shards[i] = new Shard(i);
+        }
+        // each shard's Bank made its own register the shared one, route through all of them instead
+        routingRegister = new RoutingRegister();
+        Account.useSharedRegister(routingRegister);
+        logger.info("Created bank with {} shards", shardCount);
+    }
+
+    public int getShardCount() {
+        return shards.length;
+    }
+
+    /** index of the shard that holds the account */
+    public int shardFor(long accountId) {
+        return (int) (((accountId * MIX) >>> 32) % shards.length);
+    }
+
+    private Shard shard(long accountId) {
+        return shards[shardFor(accountId)];
+    }
+
+    /**
+     * Run work on the account's shard, e.g. to change several of the shard's accounts in one step.
+     * The task gets its shard's Bank and must stay on that shard: the accounts of other shards,
+     * and every waiting method of this class, throw an IllegalStateException when used from a
+     * shard thread, since a shard blocked on another shard that is blocked on it would deadlock.
+     * For the same reason never join a shard's future inside a task, chain on it instead.
+     */
+    public <T> CompletableFuture<T> submit(long accountId, ShardTask<T> task) {
+        return shard(accountId).submit(task);
+    }
+
+    public long putOwner(Owner owner) throws DuplicateKeyException {
+        checkNotOnShardThread("add an owner");
+        if (owners.putIfAbsent(owner.getId(), owner) != null) {
+            throw new DuplicateKeyException("Id " + owner.getId() + " already exists:" + owner);
+        }
+        List<CompletableFuture<Long>> copies = new ArrayList<>(shards.length);
+        for (Shard shard : shards) {
+            copies.add(shard.submit(bank -> bank.putOwner(owner)));
+        }
+        for (CompletableFuture<Long> copy : copies) {
+            await(copy, DuplicateKeyException.class);
+        }
+        return owner.getId();
+    }
+
+    public Owner getOwner(long id) {
+        return owners.get(id);
+    }
+
+    public Collection<Owner> getAllOwners() {
+        return Collections.unmodifiableCollection(owners.values());
+    }
+
+    public long putAccount(Account account) throws DuplicateKeyException, MissingRecordException {
+        if (!owners.containsKey(account.getOwnerId())) {
+            throw new MissingRecordException("Owner " + account.getOwnerId() + " not found in Owners list:" + account);
+        }
+        checkNotOnShardThread("add an account");
+        return await(shard(account.getId()).submit(bank -> bank.putAccount(account)), DuplicateKeyException.class);
+    }
+
+    /** the account, for reading. Change it through this class, not directly */
+    public Account getAccount(long id) {
+        return shard(id).call(bank -> bank.getAccount(id));
+    }
+
+    /** every account, in id order */
+    public List<Account> getAllAccounts() {
+        return fromEveryShard(bank -> List.copyOf(bank.getAllAccounts())).stream()
+                .sorted(Comparator.comparing(Account::getId))
+                .collect(Collectors.toList());
+    }
+
+    public void deposit(long accountId, long amountCents, String entryName) throws MissingRecordException {
+        checkNotOnShardThread("deposit");
+        await(depositAsync(accountId, amountCents, entryName), MissingRecordException.class);
+    }
+
+    public void withdraw(long accountId, long amountCents, String entryName) throws MissingRecordException {
+        checkNotOnShardThread("withdraw");
+        await(withdrawAsync(accountId, amountCents, entryName), MissingRecordException.class);
+    }
+
+    /** deposit without waiting, the future fails with a MissingRecordException for an unknown account */
+    public CompletableFuture<Void> depositAsync(long accountId, long amountCents, String entryName) {
+        return submit(accountId, bank -> {
+            existing(bank, accountId).depositCents(amountCents, entryName);
+            return null;
+        });
+    }
+
+    /** withdraw without waiting, the future fails with a MissingRecordException for an unknown account */
+    public CompletableFuture<Void> withdrawAsync(long accountId, long amountCents, String entryName) {
+        return submit(accountId, bank -> {
+            existing(bank, accountId).withdrawCents(amountCents, entryName);
+            return null;
+        });
+    }
+
+    private static Account existing(Bank bank, long accountId) throws MissingRecordException {
+        Account account = bank.getAccount(accountId);
+        if (account == null) {
+            throw new MissingRecordException("Account " + accountId + " not found");
+        }
+        return account;
+    }
+
+    /**
+     * Move money between accounts, like Bank.transfer(). Within one shard that is a single
+     * step and the legs have consecutive ids. Across shards the "TRANSFER TO" leg runs on the
+     * source shard and then the "TRANSFER FROM" leg on the destination shard, each taking its
+     * id on its own shard's thread, so the ids aren't consecutive and other entries can come
+     * between them. Between the two legs the money is in neither account. If the credit fails
+     * the source gets the money back with a "TRANSFER REVERSAL" entry and the failure is thrown.
+     *
+     * @return register id of the "TRANSFER TO" leg
+     */
+    public long transfer(long fromId, long toId, long amountCents) throws MissingRecordException {
+        if (amountCents <= 0) {
+            throw new IllegalArgumentException("Transfer amount must be > 0 but was " + amountCents);
+        }
+        if (fromId == toId) {
+            throw new IllegalArgumentException("Can't transfer from account " + fromId + " to itself");
+        }
+        checkNotOnShardThread("transfer");
+        Shard from = shard(fromId);
+        Shard to = shard(toId);
+        if (from == to) {
+            return await(from.submit(bank -> bank.transfer(fromId, toId, amountCents)), MissingRecordException.class);
+        }
+        // check the destination first, a debited source has to be credited again if it's missing
+        await(to.submit(bank -> existing(bank, toId)), MissingRecordException.class);
+        Date date = new Date();
+        logger.info("Cross-shard transfer {} from {} to {}", amountCents, fromId, toId);
+        long debitId = await(from.submit(bank -> {
+            existing(bank, fromId).adjustBalance(-amountCents);
+            // addAll for the id the entry was given
+            return from.register.addAll(List.of(new Posting(fromId, "TRANSFER TO " + toId, -amountCents)), date);
+        }), MissingRecordException.class);
+        try {
+            await(to.submit(bank -> {
+                credit(bank, to.register, toId, "TRANSFER FROM " + fromId, amountCents, date);
+                return null;
+            }), MissingRecordException.class);
+        } catch (MissingRecordException | RuntimeException | Error e) {
+            logger.error("Credit of cross-shard transfer {} from {} to {} failed, reversing the debit {}",
+                    amountCents, fromId, toId, debitId, e);
+            try {
+                await(from.submit(bank -> {
+                    credit(bank, from.register, fromId, "TRANSFER REVERSAL " + toId, amountCents, new Date());
+                    return null;
+                }), MissingRecordException.class);
+            } catch (MissingRecordException | RuntimeException reversalFailure) {
+                logger.error("Reversal of debit {} failed, {} is in neither account", debitId, amountCents, reversalFailure);
+                e.addSuppressed(reversalFailure);
+            }
+            throw e;
+        }
+        return debitId;
+    }
+
+    /** add to the account's balance and post the entry, on the account's shard thread */
+    void credit(Bank bank, Register register, long accountId, String entryName, long amountCents, Date date)
+            throws MissingRecordException {
+        existing(bank, accountId).adjustBalance(amountCents);
+        register.add(accountId, entryName, amountCents, date);
+    }
+
+    public List<RegisterEntry> getRegisterEntriesForAccount(long accountId) {
+        return shard(accountId).call(bank -> List.copyOf(bank.getRegisterEntriesForAccount(accountId)));
+    }
+
+    /** every register entry in every shard, in id order */
+    public List<RegisterEntry> getAllRegisterEntries() {
+        return routingRegister.getEntries();
+    }
+
+    /** every shard runs its month end at the same time, statements come back in account id order */
+    public List<Statement> runMonthEnd() throws IOException, SerializationException {
+        checkNotOnShardThread("run month end");
+        List<CompletableFuture<Map<Long, Statement>>> monthEnds = new ArrayList<>(shards.length);
+        for (Shard shard : shards) {
+            monthEnds.add(shard.submit(bank -> {
+                // a shard's statements are in the order of its accounts
+                List<Account> accounts = List.copyOf(bank.getAllAccounts());
+                List<Statement> statements = List.copyOf(bank.runMonthEnd());
+                Map<Long, Statement> byAccount = new HashMap<>();
+                for (int i = 0; i < accounts.size(); i++) {
+                    byAccount.put(accounts.get(i).getId(), statements.get(i));
+                }
+                return byAccount;
+            }));
+        }
+        TreeMap<Long, Statement> byAccount = new TreeMap<>();
+        for (CompletableFuture<Map<Long, Statement>> monthEnd : monthEnds) {
+            byAccount.putAll(await(monthEnd, IOException.class, SerializationException.class));
+        }
+        return new ArrayList<>(byAccount.values());
+    }
+
+    /** stop the shard threads, the bank can't be used afterwards */
+    @Override
+    public void close() {
+        for (Shard shard : shards) {
+            shard.executor.shutdown();
+        }
+        Account.useIndividualRegisters();
+    }
+
+    private <T> List<T> fromEveryShard(ShardTask<List<T>> task) {
+        checkNotOnShardThread("wait for every shard");
+        List<CompletableFuture<List<T>>> parts = new ArrayList<>(shards.length);
+        for (Shard shard : shards) {
+            parts.add(shard.submit(task));
+        }
+        List<T> all = new ArrayList<>();
+        for (CompletableFuture<List<T>> part : parts) {
+            all.addAll(part.join());
+        }
+        return all;
+    }
+
+    /**
+     * Wait for a shard's result. A failure of the expected checked type is rethrown as it was,
+     * unchecked ones are rethrown unwrapped and any other checked one as an IllegalStateException.
+     */
+    private static <T, E extends Exception> T await(CompletableFuture<T> future, Class<E> expected) throws E {
+        return await(future, expected, expected);
+    }
+
+    private static <T, E1 extends Exception, E2 extends Exception> T await(CompletableFuture<T> future,
+            Class<E1> expected, Class<E2> alsoExpected) throws E1, E2 {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (expected.isInstance(cause)) {
+                throw expected.cast(cause);
+            }
+            if (alsoExpected.isInstance(cause)) {
+                throw alsoExpected.cast(cause);
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException("Shard operation failed", cause);
+        }
+    }
+
+    /**
+     * The register every account writes to. Each call is passed to the register of the
+     * account's shard and runs on that shard's thread, so the shard registers never need
+     * to be thread-safe. On a shard thread only that shard's accounts can be used, the call
+     * for any other shard throws an IllegalStateException instead of waiting for it.
+     */
+    private final class RoutingRegister extends Register {
+
+        @Override
+        public boolean isConcurrent() {
+            return true;
+        }
+
+        @Override
+        public void add(long accountId, String entryName, long amountCents, Date transactionDate) {
+            Shard shard = shard(accountId);
+            shard.call(bank -> {
+                shard.register.add(accountId, entryName, amountCents, transactionDate);
+                return null;
+            });
+        }
+
+        /** ids are consecutive within each shard only, returns the lowest one */
+        @Override
+        public long addAll(List<Posting> postings, Date transactionDate) {
+            if (postings.isEmpty()) {
+                return -1;
+            }
+            // each shard takes ids for its own postings on its own thread, so every shard's
+            // register stays in id order, but the ids are only consecutive within a shard
+            Map<Shard, List<Posting>> byShard = new HashMap<>();
+            for (Posting p : postings) {
+                byShard.computeIfAbsent(shard(p.accountId()), k -> new ArrayList<>()).add(p);
+            }
+            if (byShard.size() > 1) {
+                // refuse before any shard has posted its part
+                checkNotOnShardThread("post to " + byShard.size() + " shards");
+            }
+            long firstId = Long.MAX_VALUE;
+            for (Map.Entry<Shard, List<Posting>> part : byShard.entrySet()) {
+                Shard shard = part.getKey();
+                firstId = Math.min(firstId, shard.call(bank -> shard.register.addAll(part.getValue(), transactionDate)));
+            }
+            return firstId;
+        }
+
+        @Override
+        public void addRegisterEntry(RegisterEntry registerEntry) {
+            Shard shard = shard(registerEntry.accountId());
+            shard.call(bank -> {
+                shard.register.addRegisterEntry(registerEntry);
+                return null;
+            });
+        }
+
+        /** a copy of every shard's entries merged in id order */
+        @Override
+        public List<RegisterEntry> getEntries() {
+            List<RegisterEntry> all = fromEveryShard(bank -> List.copyOf(bank.getAllRegisterEntries()));
+            all.sort(Comparator.comparingLong(RegisterEntry::id));
+            return Collections.unmodifiableList(all);
+        }
+
+        @Override
+        public List<RegisterEntry> getEntriesForAccount(long accountId) {
+            Shard shard = shard(accountId);
+            return shard.call(bank -> List.copyOf(shard.register.getEntriesForAccount(accountId)));
+        }
+
+        @Override
+        public List<RegisterEntry> getEntriesForAccountAfter(long accountId, long afterId) {
+            Shard shard = shard(accountId);
+            return shard.call(bank -> List.copyOf(shard.register.getEntriesForAccountAfter(accountId, afterId)));
+        }
+
+        @Override
+        public Stream<RegisterEntry> getEntriesBetween(Date from, Date to) {
+            return getEntries().stream().filter(e -> e.date() != null
+                    && !e.date().before(from) && e.date().before(to))
+                    .sorted(Comparator.comparing(RegisterEntry::date));
+        }
+
+        @Override
+        public Stream<RegisterEntry> getEntriesForAccountBetween(long accountId, Date from, Date to) {
+            Shard shard = shard(accountId);
+            return shard.call(bank -> shard.register.getEntriesForAccountBetween(accountId, from, to)
+                    .collect(Collectors.toList())).stream();
+        }
+
+        @Override
+        public void clear() {
+            for (Shard shard : shards) {
+                shard.call(bank -> {
+                    shard.register.clear();
+                    return null;
+                });
+            }
+        }
+    }
+}
@@ -1,10 +1,48 @@
+import java.io.IOException;
+import java.util.AbstractList;
 import java.util.List;
 
-record Statement(String accountName, double balance, List<String> transactions) {
+/**
+ * A closed statement period and the account's register entries in it. Nothing is formatted
+ * until the statement is written out or its transactions are asked for, most statements are
+ * archived without ever being read.
+ */
+record Statement(String accountName, StatementPeriod period, List<RegisterEntry> entries) {
+
+    /** the balance at the end of the period */
+    public long balanceCents() {
+        return period.closingBalanceCents();
+    }
+
+    /** the entries as text lines, each one formatted when it is read */
+    public List<String> transactions() {
+        StatementFormatter formatter = new StatementFormatter();
+        return new AbstractList<>() {
+            @Override
+            public String get(int index) {
+                return formatter.formatLine(entries.get(index));
+            }
+
+            @Override
+            public int size() {
+                return entries.size();
+            }
+        };
+    }
+
+    public void writeTo(Appendable out) throws IOException {
+        writeTo(out, new StatementFormatter());
+    }
+
+    /** reuse one formatter for many statements, e.g. when exporting a whole bank */
+    public void writeTo(Appendable out, StatementFormatter formatter) throws IOException {
+        formatter.writeStatement(out, accountName, period, entries);
+    }
+
     @Override
     public String toString() {
         return String.format(
-                "Statement{accountName='%s', balance=%,.2f, transactions=%s}",
-                accountName, balance, transactions);
+                "Statement{accountName='%s', opening balance=%s, balance=%s, transactions=%s}",
+                accountName, Money.format(period.openingBalanceCents()), Money.format(balanceCents()), transactions());
     }
 }
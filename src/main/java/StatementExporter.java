@@ -0,0 +1,179 @@
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+
+/**
+ * Month end export mode: statements are written to files as they are produced instead of
+ * being returned in one big collection (see Bank.runMonthEnd(StatementExporter)).
+ *
+ * The calling thread makes each account's statement (that closes the account's period, so it
+ * stays on one thread) and hands the statements to a pool that formats and writes them in
+ * parallel through ChannelWriters. Only maxInFlight files' statements are waiting or being
+ * written at any time, the caller blocks until one finishes, so memory doesn't grow with the
+ * number of accounts.
+ */
+public class StatementExporter {
+    public static Logger logger = LogManager.getLogger(StatementExporter.class.getName());
+
+    /** one file per account or one file per owner holding all of the owner's accounts, in account id order */
+    public enum Layout { PER_ACCOUNT, PER_OWNER }
+
+    /** what an export wrote and how fast */
+    public record Report(int statements, int files, long bytes, long elapsedNanos) {
+        public double statementsPerSecond() {
+            return statements / (elapsedNanos / 1e9);
+        }
+
+        public double megabytesPerSecond() {
+            return bytes / (1024d * 1024d) / (elapsedNanos / 1e9);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%,d statements in %,d files, %,d bytes in %.3fs: %,.0f statements/s, %,.1f MB/s",
+                    statements, files, bytes, elapsedNanos / 1e9, statementsPerSecond(), megabytesPerSecond());
+        }
+    }
+
+    // most statements are a few KB, a small buffer per file keeps allocation down
+    private static final int WRITE_BUFFER_SIZE = 8 * 1024;
+
+    private final Path dir;
+    private final Layout layout;
+    private final int threads;
+    private final int maxInFlight;
+
+    public StatementExporter(Path dir, Layout layout) {
+        this(dir, layout, Runtime.getRuntime().availableProcessors());
+    }
+
+    public StatementExporter(Path dir, Layout layout, int threads) {
+        this(dir, layout, threads, 4 * threads);
+    }
+
+    /**
+     * @param maxInFlight most files whose statements may be queued or being written at once
+     */
+    public StatementExporter(Path dir, Layout layout, int threads, int maxInFlight) {
+        if (threads < 1 || maxInFlight < 1) {
+            throw new IllegalArgumentException("threads and maxInFlight must be >= 1");
+        }
+        this.dir = dir;
+        this.layout = layout;
+        this.threads = threads;
+        this.maxInFlight = maxInFlight;
+    }
+
+    public Path getDir() {
+        return dir;
+    }
+
+    public Path fileFor(Account account) {
+        return (layout == Layout.PER_ACCOUNT)
+                ? dir.resolve("statement-" + account.getId() + ".txt")
+                : dir.resolve("statement-owner-" + account.getOwnerId() + ".txt");
+    }
+
+    /**
+     * Make every account's statement with statementFor and write them.
+     *
+     * @param accounts in account id order
+     * @param statementFor closes the account's period and returns its statement, month end
+     *                     has already been applied, see MonthEndEngine.apply()
+     */
+    public Report export(Collection<Account> accounts, Function<Account, Statement> statementFor) throws IOException {
+        long start = System.nanoTime();
+        Files.createDirectories(dir);
+        Collection<List<Account>> files = (layout == Layout.PER_ACCOUNT)
+                ? accounts.stream().map(List::of).toList()
+                : groupByOwner(accounts);
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        ThreadLocal<StatementFormatter> formatters = ThreadLocal.withInitial(StatementFormatter::new);
+        Semaphore inFlight = new Semaphore(maxInFlight);
+        AtomicLong bytes = new AtomicLong();
+        AtomicReference<IOException> failure = new AtomicReference<>();
+        int statements = 0;
+        try {
+            for (List<Account> fileAccounts : files) {
+                if (failure.get() != null) {
+                    break;
+                }
+                List<Statement> fileStatements = new ArrayList<>(fileAccounts.size());
+                for (Account account : fileAccounts) {
+                    fileStatements.add(statementFor.apply(account));
+                }
+                statements += fileStatements.size();
+                Path path = fileFor(fileAccounts.get(0));
+                inFlight.acquireUninterruptibly();
+                pool.execute(() -> {
+                    try {
+                        bytes.addAndGet(write(path, fileStatements, formatters.get()));
+                    } catch (IOException e) {
+                        failure.compareAndSet(null, e);
+                    } finally {
+                        inFlight.release();
+                    }
+                });
+            }
+        } finally {
+            pool.shutdown();
+            awaitTermination(pool);
+        }
+        if (failure.get() != null) {
+            throw failure.get();
+        }
+        Report report = new Report(statements, files.size(), bytes.get(), System.nanoTime() - start);
+        logger.info("Exported {}", report);
+        return report;
+    }
+
+    private static Collection<List<Account>> groupByOwner(Collection<Account> accounts) {
+        Map<Long, List<Account>> byOwner = new TreeMap<>();
+        for (Account account : accounts) {
+            byOwner.computeIfAbsent(account.getOwnerId(), k -> new ArrayList<>()).add(account);
+        }
+        return byOwner.values();
+    }
+
+    private static long write(Path path, List<Statement> statements, StatementFormatter formatter) throws IOException {
+        FileChannel channel = FileChannel.open(path,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        ChannelWriter out = new ChannelWriter(channel, WRITE_BUFFER_SIZE);
+        try (out) {
+            for (Statement statement : statements) {
+                statement.writeTo(out, formatter);
+            }
+        }
+        return out.getBytesWritten();
+    }
+
+    private static void awaitTermination(ExecutorService pool) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                if (pool.awaitTermination(1, TimeUnit.MINUTES)) {
+                    break;
+                }
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
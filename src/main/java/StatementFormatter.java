@@ -0,0 +1,95 @@
+import java.io.IOException;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.Date;
+import java.util.Locale;
+
+/**
+ * Renders statements as text. Lines look like the ones generateStatement() used to build with
+ * {@code String.format("%-8s: %,.2f on %s", name, amount, date)}, but are appended straight to
+ * the output: amounts are written from cents without going through a double, and the date
+ * format is set up once. Register entries made in the same second share the same date text,
+ * so each distinct second is only formatted once.
+ *
+ * Not thread-safe because of that cache, use one formatter per thread.
+ */
+public class StatementFormatter {
+    // the same text as Date.toString()
+    private static final DateTimeFormatter DATE_FORMAT =
+            DateTimeFormatter.ofPattern("EEE MMM dd HH:mm:ss zzz yyyy", Locale.US);
+    private static final int NAME_WIDTH = 8;
+
+    private final DateTimeFormatter dateFormat;
+    private final StringBuilder line = new StringBuilder(80);
+    private long cachedSecond = Long.MIN_VALUE;
+    private String cachedDate;
+
+    public StatementFormatter() {
+        this(ZoneId.systemDefault());
+    }
+
+    public StatementFormatter(ZoneId zone) {
+        dateFormat = DATE_FORMAT.withZone(zone);
+    }
+
+    public void writeHeader(Appendable out, String accountName, StatementPeriod period) throws IOException {
+        out.append("Statement for ").append(accountName).append('\n');
+        line.setLength(0);
+        line.append("Opening balance: ");
+        Money.appendTo(line, period.openingBalanceCents(), true);
+        out.append(line).append('\n');
+    }
+
+    public void writeLine(Appendable out, RegisterEntry entry) throws IOException {
+        line.setLength(0);
+        appendLine(line, entry);
+        out.append(line).append('\n');
+    }
+
+    public void writeFooter(Appendable out, StatementPeriod period) throws IOException {
+        line.setLength(0);
+        line.append("Closing balance: ");
+        Money.appendTo(line, period.closingBalanceCents(), true);
+        out.append(line).append('\n');
+    }
+
+    /** header, one line per entry and footer */
+    public void writeStatement(Appendable out, String accountName, StatementPeriod period,
+                               Iterable<RegisterEntry> entries) throws IOException {
+        writeHeader(out, accountName, period);
+        for (RegisterEntry entry : entries) {
+            writeLine(out, entry);
+        }
+        writeFooter(out, period);
+    }
+
+    public String formatLine(RegisterEntry entry) {
+        StringBuilder sb = new StringBuilder(80);
+        appendLine(sb, entry);
+        return sb.toString();
+    }
+
+    private void appendLine(StringBuilder sb, RegisterEntry entry) {
+        String name = entry.entryName();
+        sb.append(name);
+        for (int i = name.length(); i < NAME_WIDTH; i++) {
+            sb.append(' ');
+        }
+        sb.append(": ");
+        Money.appendTo(sb, entry.amountCents(), true);
+        sb.append(" on ").append(formatDate(entry.date()));
+    }
+
+    private String formatDate(Date date) {
+        if (date == null) {
+            return "null";
+        }
+        long second = Math.floorDiv(date.getTime(), 1000L);
+        if (second != cachedSecond) {
+            cachedDate = dateFormat.format(Instant.ofEpochSecond(second));
+            cachedSecond = second;
+        }
+        return cachedDate;
+    }
+}
@@ -0,0 +1,15 @@
+import java.util.Date;
+
+/**
+ * One closed statement period of an account. Every register entry of the account with an id
+ * after the previous period's lastEntryId, up to and including this lastEntryId, belongs to
+ * this period, so openingBalanceCents plus those entries' amounts is closingBalanceCents.
+ *
+ * @param start when the period opened, null for the account's first period
+ * @param end when the statement closing it was generated
+ * @param lastEntryId id of the last register entry in the period, or the previous period's
+ *                    lastEntryId if the period had no entries
+ */
+public record StatementPeriod(Date start, Date end, long openingBalanceCents, long closingBalanceCents,
+                              long lastEntryId, int entryCount) {
+}
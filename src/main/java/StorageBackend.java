@@ -0,0 +1,84 @@
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+/**
+ * Where a Bank's owners, accounts and register are saved and loaded, see Bank.useStorage().
+ * CsvStorageBackend keeps everything in the CSV files Persister names, JournalStorageBackend
+ * keeps the register in a binary RegisterJournal instead. Another format only has to implement
+ * this to be used by a Bank, or be compared with the others by StorageBenchmark.
+ *
+ * Reads hand records to a consumer as they are read so nothing has to be held twice. Savings
+ * accounts are read before checking accounts, and the register in the order it was saved.
+ */
+public interface StorageBackend {
+
+    /** the backend set up in Persister's properties, persisted.register.format picks the register format */
+    static StorageBackend configured() throws IOException {
+        return Persister.useRegisterJournal() ? new JournalStorageBackend() : new CsvStorageBackend();
+    }
+
+    /** short name for logs and benchmarks, e.g. "csv" */
+    String name();
+
+    /** @return number of owners read */
+    long readOwners(Consumer<? super Owner> consumer) throws IOException, SerializationException;
+
+    /** savings accounts first, then checking accounts, @return number of accounts read */
+    default long readAccounts(Consumer<? super Account> consumer) throws IOException, SerializationException {
+        return readAccounts(null, consumer);
+    }
+
+    /**
+     * Like readAccounts(Consumer) with the accounts made on the given register, which gets
+     * their OPEN entries. null for Account's shared register.
+     */
+    long readAccounts(Register register, Consumer<? super Account> consumer) throws IOException, SerializationException;
+
+    /** @return number of entries read */
+    long readRegisterEntries(Consumer<? super RegisterEntry> consumer) throws IOException, SerializationException;
+
+    /**
+     * The register read in about the given number of parts on the executor, for loading on
+     * several threads. By default it is read as one part.
+     *
+     * @return one future per part, in register order, each holding that part's entries in order
+     */
+    default List<Future<List<RegisterEntry>>> readRegisterEntries(ExecutorService executor, int parts)
+            throws IOException, SerializationException {
+        return List.of(executor.submit(() -> {
+            List<RegisterEntry> entries = new ArrayList<>();
+            readRegisterEntries(entries::add);
+            return entries;
+        }));
+    }
+
+    /** replace the saved owners, @return number written */
+    int writeOwners(Collection<Owner> owners) throws IOException, SerializationException;
+
+    /** replace the saved accounts of every type, @return number written */
+    int writeAccounts(Collection<Account> accounts) throws IOException, SerializationException;
+
+    /**
+     * Save the register.
+     *
+     * @param alreadySaved how many entries at the start of the register were loaded from or
+     *                     saved to this backend last time and haven't changed since, -1 if that
+     *                     isn't known. A backend that can append only writes the ones after.
+     * @return number of entries saved
+     */
+    int writeRegisterEntries(List<RegisterEntry> entries, int alreadySaved) throws IOException, SerializationException;
+
+    /**
+     * Whether the register as it is saved now can be added to by passing alreadySaved to
+     * writeRegisterEntries(). False when every save rewrites it, or when it is in an older
+     * format that has to be rewritten.
+     */
+    default boolean canAppendRegister() throws IOException, SerializationException {
+        return false;
+    }
+}
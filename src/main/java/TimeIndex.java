@@ -0,0 +1,220 @@
+import java.util.*;
+
+/**
+ * Index of (epoch millis, row) pairs that answers "which rows fall between two times"
+ * without looking at rows outside the range. Rows are whatever the owner uses to find
+ * an entry again, e.g. a position in a list.
+ *
+ * New pairs go into a small unsorted tail. When the tail fills up it is sorted and sealed
+ * into an immutable segment, and neighbouring segments of similar size are merged (like
+ * a binary counter) so there are only O(log n) segments to binary search. A range query
+ * merges the matching part of each segment lazily, so rows come back in time order
+ * without collecting them first.
+ *
+ * Not thread-safe. Iterators work on the segments that existed when they were created,
+ * so adding to the index while iterating is allowed but the new rows won't be seen.
+ */
+public class TimeIndex {
+    static final int TAIL_CAPACITY = 4096;
+    private static final int INITIAL_TAIL_CAPACITY = 4;
+
+    private final List<Segment> segments = new ArrayList<>();
+    private long[] tailMillis = new long[INITIAL_TAIL_CAPACITY];
+    private int[] tailRows = new int[INITIAL_TAIL_CAPACITY];
+    private int tailSize = 0;
+
+    /** immutable run of pairs sorted by millis (and by row for equal millis) */
+    private record Segment(long[] millis, int[] rows) {
+        int size() {
+            return millis.length;
+        }
+    }
+
+    public void add(long millis, int row) {
+        if (tailSize == tailMillis.length) {
+            if (tailSize == TAIL_CAPACITY) {
+                seal();
+            } else {
+                tailMillis = Arrays.copyOf(tailMillis, tailSize * 2);
+                tailRows = Arrays.copyOf(tailRows, tailSize * 2);
+            }
+        }
+        tailMillis[tailSize] = millis;
+        tailRows[tailSize] = row;
+        tailSize++;
+    }
+
+    public int size() {
+        int size = tailSize;
+        for (Segment s : segments) {
+            size += s.size();
+        }
+        return size;
+    }
+
+    public void clear() {
+        segments.clear();
+        tailMillis = new long[INITIAL_TAIL_CAPACITY];
+        tailRows = new int[INITIAL_TAIL_CAPACITY];
+        tailSize = 0;
+    }
+
+    private void seal() {
+        segments.add(sorted(tailMillis, tailRows, tailSize));
+        tailSize = 0;
+        // merge while the newest segment is at least half the size of the one before it
+        while (segments.size() > 1) {
+            Segment last = segments.get(segments.size() - 1);
+            Segment previous = segments.get(segments.size() - 2);
+            if (previous.size() > last.size() * 2) {
+                break;
+            }
+            segments.remove(segments.size() - 1);
+            segments.set(segments.size() - 1, merge(previous, last));
+        }
+    }
+
+    /**
+     * @return the rows with fromMillis &lt;= millis &lt; toMillis, in time order
+     */
+    public PrimitiveIterator.OfInt rowsBetween(long fromMillis, long toMillis) {
+        List<Cursor> cursors = new ArrayList<>(segments.size() + 1);
+        for (Segment s : segments) {
+            addCursor(cursors, s, fromMillis, toMillis);
+        }
+        if (tailSize > 0) {
+            addCursor(cursors, sorted(tailMillis, tailRows, tailSize), fromMillis, toMillis);
+        }
+        return new MergingIterator(cursors);
+    }
+
+    private static void addCursor(List<Cursor> cursors, Segment s, long fromMillis, long toMillis) {
+        int start = lowerBound(s.millis(), fromMillis);
+        int end = lowerBound(s.millis(), toMillis);
+        if (start < end) {
+            cursors.add(new Cursor(s, start, end));
+        }
+    }
+
+    /** first position whose millis is &gt;= the key */
+    private static int lowerBound(long[] millis, long key) {
+        int low = 0;
+        int high = millis.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (millis[mid] < key) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private static Segment sorted(long[] millis, int[] rows, int size) {
+        long[] sortedMillis = Arrays.copyOf(millis, size);
+        int[] sortedRows = Arrays.copyOf(rows, size);
+        if (!isSorted(sortedMillis)) {
+            // stable, so equal times keep the order they were added in
+            mergeSort(sortedMillis, sortedRows, Arrays.copyOf(sortedMillis, size), Arrays.copyOf(sortedRows, size), 0, size);
+        }
+        return new Segment(sortedMillis, sortedRows);
+    }
+
+    private static boolean isSorted(long[] millis) {
+        for (int i = 1; i < millis.length; i++) {
+            if (millis[i] < millis[i - 1]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** sorts [from, to) of millis/rows, using scratch copies of the same range */
+    private static void mergeSort(long[] millis, int[] rows, long[] scratchMillis, int[] scratchRows, int from, int to) {
+        if (to - from < 2) {
+            return;
+        }
+        int mid = (from + to) >>> 1;
+        mergeSort(scratchMillis, scratchRows, millis, rows, from, mid);
+        mergeSort(scratchMillis, scratchRows, millis, rows, mid, to);
+        int left = from;
+        int right = mid;
+        for (int i = from; i < to; i++) {
+            if (right >= to || (left < mid && scratchMillis[left] <= scratchMillis[right])) {
+                millis[i] = scratchMillis[left];
+                rows[i] = scratchRows[left++];
+            } else {
+                millis[i] = scratchMillis[right];
+                rows[i] = scratchRows[right++];
+            }
+        }
+    }
+
+    private static Segment merge(Segment older, Segment newer) {
+        int size = older.size() + newer.size();
+        long[] millis = new long[size];
+        int[] rows = new int[size];
+        int left = 0;
+        int right = 0;
+        for (int i = 0; i < size; i++) {
+            if (right >= newer.size() || (left < older.size() && older.millis()[left] <= newer.millis()[right])) {
+                millis[i] = older.millis()[left];
+                rows[i] = older.rows()[left++];
+            } else {
+                millis[i] = newer.millis()[right];
+                rows[i] = newer.rows()[right++];
+            }
+        }
+        return new Segment(millis, rows);
+    }
+
+    private static final class Cursor {
+        final Segment segment;
+        int position;
+        final int end;
+
+        Cursor(Segment segment, int position, int end) {
+            this.segment = segment;
+            this.position = position;
+            this.end = end;
+        }
+
+        long millis() {
+            return segment.millis()[position];
+        }
+    }
+
+    /** k-way merge of the cursors, there are only a handful so a linear scan for the minimum is fine */
+    private static final class MergingIterator implements PrimitiveIterator.OfInt {
+        private final List<Cursor> cursors;
+
+        MergingIterator(List<Cursor> cursors) {
+            this.cursors = cursors;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !cursors.isEmpty();
+        }
+
+        @Override
+        public int nextInt() {
+            if (cursors.isEmpty()) {
+                throw new NoSuchElementException();
+            }
+            int min = 0;
+            for (int i = 1; i < cursors.size(); i++) {
+                if (cursors.get(i).millis() < cursors.get(min).millis()) {
+                    min = i;
+                }
+            }
+            Cursor cursor = cursors.get(min);
+            int row = cursor.segment.rows()[cursor.position++];
+            if (cursor.position == cursor.end) {
+                cursors.remove(min);
+            }
+            return row;
+        }
+    }
+}
@@ -0,0 +1,121 @@
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.assertThat;
+
+public class AccountConcurrencyTest {
+    static final int THREADS = 8;
+    static final int OPS_PER_THREAD = 5_000;
+
+    @After
+    public void resetState() {
+        Account.useConcurrency(Account.Concurrency.NONE);
+        Account.useIndividualRegisters();
+    }
+
+    /** every thread deposits 2.00 and withdraws 1.00 on the same account */
+    private void runSameAccountWorkload(Account.Concurrency mode) throws Exception {
+        Account.useConcurrency(mode);
+        ConcurrentRegister register = new ConcurrentRegister();
+        Account.useSharedRegister(register);
+        CheckingAccount account = new CheckingAccount("checking", 1L, 0, 0, 1L);
+
+        runInThreads(() -> {
+            for (int i = 0; i < OPS_PER_THREAD; i++) {
+                account.depositCents(200, "DEP");
+                account.withdrawCents(100, "W/D");
+            }
+            return null;
+        });
+
+        assertThat(account.getBalanceCents(), is((long) THREADS * OPS_PER_THREAD * 100));
+        long registerTotal = register.getEntriesForAccount(1L).stream().mapToLong(RegisterEntry::amountCents).sum();
+        assertThat(registerTotal, is(account.getBalanceCents()));
+    }
+
+    private static void runInThreads(Callable<Void> work) throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<Void>> futures = new ArrayList<>();
+            for (int t = 0; t < THREADS; t++) {
+                futures.add(pool.submit(work));
+            }
+            for (Future<Void> f : futures) {
+                f.get(60, TimeUnit.SECONDS);
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void givenAtomicMode_whenManyThreadsUseOneAccount_thenNoUpdatesLost() throws Exception {
+        runSameAccountWorkload(Account.Concurrency.ATOMIC);
+    }
+
+    @Test
+    public void givenStripedMode_whenManyThreadsUseOneAccount_thenNoUpdatesLost() throws Exception {
+        runSameAccountWorkload(Account.Concurrency.STRIPED);
+    }
+
+    @Test
+    public void givenStripedMode_whenChecksWrittenConcurrently_thenNumbersUniqueAndInRegisterOrder() throws Exception {
+        Account.useConcurrency(Account.Concurrency.STRIPED);
+        ConcurrentRegister register = new ConcurrentRegister();
+        Account.useSharedRegister(register);
+        CheckingAccount account = new CheckingAccount("checking", 1L, 1000, 100, 1L);
+
+        Set<Long> numbers = ConcurrentHashMap.newKeySet();
+        runInThreads(() -> {
+            for (int i = 0; i < 500; i++) {
+                numbers.add(account.writeCheck("payee", 1, new Date()));
+            }
+            return null;
+        });
+
+        int checks = THREADS * 500;
+        assertThat(numbers.size(), is(checks));
+        assertThat(account.getCheckNumber(), is(100L + checks));
+        // with the account locked the register sees the checks in number order
+        List<String> names = register.getEntriesForAccount(1L).stream()
+                .map(RegisterEntry::entryName).filter(n -> n.startsWith("Check")).collect(Collectors.toList());
+        for (int i = 0; i < names.size(); i++) {
+            assertThat(names.get(i), is("Check " + (100 + i)));
+        }
+        assertThat(account.getBalanceCents(), is(1000_00L - checks * 100L));
+    }
+
+    @Test
+    public void givenLockStripes_whenSizeNotPowerOfTwo_thenRoundedUpAndSameIdSameLock() {
+        LockStripes stripes = new LockStripes(1000);
+        assertThat(stripes.size(), is(1024));
+        assertThat(new LockStripes(1).size(), is(1));
+        assertThat(stripes.lockFor(42L), is(sameInstance(stripes.lockFor(42L))));
+        // sequential ids spread over the stripes
+        Set<Integer> used = new HashSet<>();
+        for (long id = 0; id < 1024; id++) {
+            used.add(stripes.stripeFor(id));
+        }
+        assertThat(used.size() > 512, is(true));
+    }
+
+    @Test
+    public void givenModeChangedWhileLocked_whenUnlock_thenTheLockTakenIsReleased() {
+        Account.useConcurrency(Account.Concurrency.STRIPED, 16);
+        CheckingAccount account = new CheckingAccount("checking", 1L, 0, 0, 1L);
+        ReentrantLock lock = account.lockAccount();
+        assertThat(lock.isHeldByCurrentThread(), is(true));
+        // new stripes, then no locking at all, before the operation finishes
+        Account.useConcurrency(Account.Concurrency.STRIPED, 32);
+        Account.useConcurrency(Account.Concurrency.NONE);
+        account.unlockAccount(lock);
+        assertThat(lock.isLocked(), is(false));
+        assertThat(account.lockAccount(), is(nullValue()));
+    }
+}
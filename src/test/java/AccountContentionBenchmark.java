@@ -0,0 +1,86 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+/**
+ * Deposit/withdraw throughput in the ATOMIC and STRIPED account concurrency modes with
+ * 1, 8 and 64 threads, either all on one account (worst case contention) or each thread
+ * on its own accounts (should scale with cores). Accounts share a ConcurrentRegister as
+ * they would in a Bank.
+ *
+ * Usage: {@code ./gradlew runBenchmark -Pbenchmark=AccountContentionBenchmark -PbenchmarkArgs="1000000"}
+ * where the argument is the number of operations per run.
+ */
+public class AccountContentionBenchmark {
+    static final int[] THREADS = {1, 8, 64};
+    static final int ACCOUNTS_PER_THREAD = 64;
+
+    public static void main(String[] args) throws Exception {
+        BenchmarkUtils.quietLogging();
+        int ops = (int) BenchmarkUtils.sizes(args, 1_000_000)[0];
+        System.out.printf("%,d operations per run, %d cores%n", ops, Runtime.getRuntime().availableProcessors());
+        System.out.printf("%-8s %8s %20s %20s%n", "mode", "threads", "one account ops/s", "own accounts ops/s");
+        try {
+            for (Account.Concurrency mode : List.of(Account.Concurrency.ATOMIC, Account.Concurrency.STRIPED)) {
+                Account.useConcurrency(mode);
+                for (int threads : THREADS) {
+                    // first pass is a warm-up
+                    run(threads, ops, true);
+                    double shared = run(threads, ops, true);
+                    double own = run(threads, ops, false);
+                    System.out.printf("%-8s %8d %,20.0f %,20.0f%n", mode, threads, shared, own);
+                }
+            }
+        } finally {
+            Account.useConcurrency(Account.Concurrency.NONE);
+            Account.useIndividualRegisters();
+        }
+    }
+
+    static double run(int threads, int ops, boolean oneAccount) throws Exception {
+        Account.useSharedRegister(new ConcurrentRegister());
+        int accountCount = oneAccount ? 1 : threads * ACCOUNTS_PER_THREAD;
+        Account[] accounts = new Account[accountCount];
+        for (int i = 0; i < accountCount; i++) {
+            accounts[i] = new CheckingAccount("checking " + i, i, 0, 0, 1);
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        int perThread = ops / threads;
+        for (int t = 0; t < threads; t++) {
+            final int first = oneAccount ? 0 : t * ACCOUNTS_PER_THREAD;
+            final int count = oneAccount ? 1 : ACCOUNTS_PER_THREAD;
+            futures.add(pool.submit(() -> {
+                start.await();
+                for (int i = 0; i < perThread; i++) {
+                    Account account = accounts[first + (i % count)];
+                    if ((i & 1) == 0) {
+                        account.depositCents(200, "DEP");
+                    } else {
+                        account.withdrawCents(100, "W/D");
+                    }
+                }
+                return null;
+            }));
+        }
+        long begin = System.nanoTime();
+        start.countDown();
+        for (Future<?> f : futures) {
+            f.get();
+        }
+        long elapsed = System.nanoTime() - begin;
+        pool.shutdown();
+
+        long total = 0;
+        for (Account account : accounts) {
+            total += account.getBalanceCents();
+        }
+        long expected = (long) threads * ((perThread + 1) / 2 * 200L - perThread / 2 * 100L);
+        if (total != expected) {
+            throw new IllegalStateException("Lost updates: expected " + expected + " but was " + total);
+        }
+        return (double) perThread * threads / (elapsed / 1e9);
+    }
+}
@@ -0,0 +1,79 @@
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+/**
+ * Account lookups by id and heap per account for the TreeMap&lt;Long, Account&gt; that Bank used
+ * to keep against the LongObjectMap it keeps now. Ids are random so the lookups miss the cache
+ * like a customer-service workload would.
+ *
+ * Usage: {@code ./gradlew runBenchmark -Pbenchmark=AccountMapBenchmark -PbenchmarkArgs="1000000 10000000"}
+ * where the arguments are numbers of accounts.
+ */
+public class AccountMapBenchmark {
+    static final long LOOKUPS = 5_000_000;
+
+    public static void main(String[] args) {
+        BenchmarkUtils.quietLogging();
+        for (long size : BenchmarkUtils.sizes(args, 1_000_000, 10_000_000)) {
+            System.out.printf("%n%,d accounts%n", size);
+            // one shared account object, so only the map itself is measured
+            Account account = new CheckingAccount("checking", 1L, 0, 0, 1L);
+            long[] ids = randomIds((int) size);
+
+            long before = BenchmarkUtils.usedHeap();
+            Map<Long, Account> tree = new TreeMap<>();
+            for (long id = 0; id < size; id++) {
+                tree.put(id, account);
+            }
+            long treeBytes = BenchmarkUtils.usedHeap() - before;
+            // the first run of each is a warm-up
+            lookups(ids, i -> tree.get(ids[i]));
+            double treeNanos = lookups(ids, i -> tree.get(ids[i]));
+            report("TreeMap<Long, Account>", treeBytes, size, treeNanos);
+            tree.clear();
+
+            before = BenchmarkUtils.usedHeap();
+            LongObjectMap<Account> map = new LongObjectMap<>();
+            for (long id = 0; id < size; id++) {
+                map.put(id, account);
+            }
+            long mapBytes = BenchmarkUtils.usedHeap() - before;
+            lookups(ids, i -> map.get(ids[i]));
+            double mapNanos = lookups(ids, i -> map.get(ids[i]));
+            report("LongObjectMap<Account>", mapBytes, size, mapNanos);
+            System.out.printf("  LongObjectMap: %.1fx faster lookups, %.1f%% of the heap%n",
+                    treeNanos / mapNanos, 100d * mapBytes / treeBytes);
+        }
+        Account.useIndividualRegisters();
+    }
+
+    interface Lookup {
+        Account get(int i);
+    }
+
+    static double lookups(long[] ids, Lookup lookup) {
+        int[] next = {0};
+        return BenchmarkUtils.nanosPerOp(LOOKUPS, () -> {
+            int i = next[0]++;
+            if (next[0] == ids.length) {
+                next[0] = 0;
+            }
+            return lookup.get(i).getOwnerId();
+        });
+    }
+
+    static long[] randomIds(int size) {
+        Random random = new Random(size);
+        long[] ids = new long[(int) Math.min(size, LOOKUPS)];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = random.nextInt(size);
+        }
+        return ids;
+    }
+
+    static void report(String label, long bytes, long size, double nanos) {
+        System.out.printf("  %-24s %,8.1f ns/getAccount  %14s  %6.1f bytes/account%n",
+                label, nanos, BenchmarkUtils.formatBytes(bytes), (double) bytes / size);
+    }
+}
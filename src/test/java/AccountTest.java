@@ -38,4 +38,32 @@ public class AccountTest {
 		assertThat(entry.amount(), is(10.0));
 	}
 
+	@Test
+	public void givenTwoStatements_whenGenerated_thenEachHasOnlyItsPeriodsEntriesAndBalancesChain() throws Exception {
+		Register shared = new Register();
+		Account.useSharedRegister(shared);
+		try {
+			Account savings = new SavingsAccount("savings", 100L, 100, 0, 1L);
+			Account other = new CheckingAccount("checking", 200L, 500, 0, 1L);
+			savings.deposit(10);
+			other.deposit(20);
+
+			Statement first = savings.generateStatement();
+			assertThat(first.transactions().size(), is(2));
+			assertThat(first.period().openingBalanceCents(), is(0L));
+			assertThat(first.balanceCents(), is(11000L));
+
+			savings.withdraw(5);
+			other.withdraw(1);
+			Statement second = savings.generateStatement();
+			assertThat("only the withdrawal is in the second period: " + second, second.transactions().size(), is(1));
+			assertThat(second.period().openingBalanceCents(), is(11000L));
+			assertThat(second.balanceCents(), is(10500L));
+			assertThat(second.period().start(), is(first.period().end()));
+			assertThat(savings.getStatementPeriods(), is(List.of(first.period(), second.period())));
+			assertTrue(savings.getCurrentPeriodEntries().isEmpty());
+		} finally {
+			Account.useIndividualRegisters();
+		}
+	}
 }
@@ -4,12 +4,22 @@ import org.junit.Test;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
+import java.util.Map;
 import java.util.Random;
+import java.util.concurrent.*;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
 
 import static org.hamcrest.CoreMatchers.*;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 public class BankTest {
 
@@ -49,6 +59,110 @@ public class BankTest {
         assertThat(bank.getAllOwners(), hasItems(origOwners.toArray(new Owner[0])));
         assertThat(bank.getAllAccounts(), hasItems(origAccounts.toArray(new Account[0])));
         assertThat(bank.getAllRegisterEntries(), hasItems(origRegisterEntries.toArray(new RegisterEntry[0])));
+        for (Owner owner : bank.getAllOwners()) {
+            assertThat(bank.getAccountsForOwner(owner.getId()).size(), is(2));
+        }
+    }
+
+    @Test
+    public void givenSavedRecords_whenReadWithConsumers_thenEveryRecordInFileOrder() throws Exception {
+        Bank bank = BankTestFixture.createBank(50, (id, ownerId) -> new CheckingAccount("checking " + id, id, id, 0, ownerId));
+        for (long id = 0; id < 50; id++) {
+            bank.getAccount(id).depositCents(id, "DEP");
+        }
+        bank.saveAllRecords();
+
+        List<RegisterEntry> entries = new ArrayList<>();
+        assertThat(Persister.readRegisterEntriesFromCsv(entries::add), is(100L));
+        assertThat(entries, is(List.copyOf(bank.getAllRegisterEntries())));
+        List<CheckingAccount> accounts = new ArrayList<>();
+        assertThat(Persister.readCheckingAccountsFromCsv(accounts::add), is(50L));
+        assertThat(accounts.get(49).getBalanceCents(), is(49_49L));
+        assertThat(Persister.readOwnersFromCsv(o -> { }), is(1L));
+        assertThat(Persister.readSavingsAccountsFromCsv(a -> { }), is(0L));
+    }
+
+    @Test
+    public void givenRecordFailsToWrite_whenWriteRecordsToCsv_thenOldFileKept() throws Exception {
+        Bank bank = BankTestFixture.createCheckingBank(3, 10);
+        bank.saveAllRecords();
+        Path owners = Paths.get(Persister.getFilename("owners"));
+        String saved = Files.readString(owners);
+
+        Persistable broken = new Persistable() {
+            public String toCSV() throws SerializationException {
+                throw new SerializationException("can't write");
+            }
+
+            public Long getId() {
+                return 2L;
+            }
+
+            public String[] columns() {
+                return Owner.COLUMNS;
+            }
+        };
+        try {
+            Persister.writeRecordsToCsv(List.of(bank.getOwner(1L), broken), "owners");
+            fail("the broken record should have failed the save");
+        } catch (SerializationException e) {
+            assertThat(e.getMessage(), is("can't write"));
+        }
+        assertThat(Files.readString(owners), is(saved));
+        assertThat(Files.exists(owners.resolveSibling(owners.getFileName() + ".tmp")), is(false));
+    }
+
+    /** saved bank with enough register lines that every load chunk holds several */
+    private static Bank saveBankForParallelLoad() throws Exception {
+        Bank bank = new Bank();
+        long ownerId = bank.putOwner(BankTestFixture.newOwner());
+        bank.putOwner(new Owner("other", 2L, new Date(), "2", "2 Main St", null, null, null, null));
+        for (long id = 0; id < 40; id++) {
+            Account account = (id % 2 == 0)
+                    ? new SavingsAccount("savings " + id, id, 100, 0.01, ownerId)
+                    : new CheckingAccount("checking " + id, id, 100, id, ownerId);
+            bank.putAccount(account);
+            for (int i = 0; i < 50; i++) {
+                account.depositCents(i, "DEP " + i);
+            }
+        }
+        bank.saveAllRecords();
+        return bank;
+    }
+
+    private static void assertParallelLoadMatchesSequential(Bank bank) throws Exception {
+        int sequentialCount = bank.loadAllRecords();
+        List<Owner> owners = List.copyOf(bank.getAllOwners());
+        List<String> accounts = bank.getAllAccounts().stream().map(Account::toString).toList();
+        List<RegisterEntry> entries = List.copyOf(bank.getAllRegisterEntries());
+
+        assertThat(bank.loadAllRecords(4), is(sequentialCount));
+        assertThat(List.copyOf(bank.getAllOwners()), is(owners));
+        assertThat(bank.getAllAccounts().stream().map(Account::toString).toList(), is(accounts));
+        assertThat(List.copyOf(bank.getAllRegisterEntries()), is(entries));
+        assertThat(bank.getAccount(3L).getRegister(), is(sameInstance(bank.getAccount(4L).getRegister())));
+        assertThat(bank.getAccountsForOwner(1L).size(), is(40));
+        // accounts made after the load still use the bank's register
+        bank.putAccount(new CheckingAccount("new", 1000L, 5, 0, 1L));
+        assertThat(bank.getRegisterEntriesForAccount(1000L).size(), is(1));
+    }
+
+    @Test
+    public void givenSavedCsv_whenLoadAllRecordsInParallel_thenSameAsSequentialLoad() throws Exception {
+        assertParallelLoadMatchesSequential(saveBankForParallelLoad());
+    }
+
+    @Test
+    public void givenSavedJournal_whenLoadAllRecordsInParallel_thenSameAsSequentialLoad() throws Exception {
+        Persister.setRegisterFormat(Persister.REGISTER_FORMAT_JOURNAL);
+        assertParallelLoadMatchesSequential(saveBankForParallelLoad());
+    }
+
+    @Test(expected = SerializationException.class)
+    public void givenAccountWithUnknownOwner_whenLoadAllRecordsInParallel_thenSerializationException() throws Exception {
+        Bank bank = saveBankForParallelLoad();
+        Persister.writeRecordsToCsv(List.of(bank.getOwner(2L)), "owners");
+        bank.loadAllRecords(4);
     }
 
     @Test
@@ -65,6 +179,265 @@ public class BankTest {
         assertTrue("There should be no register entries", bank.getAllRegisterEntries().isEmpty());
     }
 
+    @Test
+    public void givenBatchWithUnknownAccount_whenApplyBatch_thenOthersAppliedInOneAppend() throws Exception {
+        Bank bank = new Bank();
+        long ownerId = bank.putOwner(BankTestFixture.newOwner());
+        bank.putAccount(new SavingsAccount("savings", 100L, 100, 0.01, ownerId));
+        bank.putAccount(new CheckingAccount("checking", 200L, 200, 1, ownerId));
+        int entriesBefore = bank.getAllRegisterEntries().size();
+
+        BatchResult result = bank.applyBatch(List.of(
+                Posting.deposit(100L, 50_00),
+                Posting.withdrawal(200L, 25_00),
+                Posting.deposit(999L, 1_00),
+                Posting.withdrawal(100L, 10_00)));
+
+        assertThat(result.getAppliedCount(), is(3));
+        assertThat(result.getRejectedCount(), is(1));
+        assertThat(result.getStatus(2), is(BatchResult.Status.UNKNOWN_ACCOUNT));
+        assertThat(result.getStatus(3), is(BatchResult.Status.APPLIED));
+        assertThat(bank.getAccount(100L).getBalanceCents(), is(140_00L));
+        assertThat(bank.getAccount(200L).getBalanceCents(), is(175_00L));
+        List<RegisterEntry> entries = List.copyOf(bank.getAllRegisterEntries());
+        assertThat(entries.size(), is(entriesBefore + 3));
+        assertThat(entries.get(entriesBefore).id(), is(result.getFirstEntryId()));
+        assertThat(entries.get(entriesBefore + 2).amountCents(), is(-10_00L));
+        long savingsTotal = bank.getRegisterEntriesForAccount(100L).stream().mapToLong(RegisterEntry::amountCents).sum();
+        assertThat(savingsTotal, is(bank.getAccount(100L).getBalanceCents()));
+    }
+
+    @Test
+    public void givenSeveralOwners_whenPortfolioQueries_thenOnlyThatOwnersAccountsAndNewestEntriesFirst() throws Exception {
+        Bank bank = new Bank();
+        long alice = bank.putOwner(new Owner("alice", 1L, new Date(), "1", "1 Main St", null, null, null, null));
+        long bob = bank.putOwner(new Owner("bob", 2L, new Date(), "2", "2 Main St", null, null, null, null));
+        bank.putAccount(new CheckingAccount("alice checking", 300L, 10, 1, alice));
+        bank.putAccount(new SavingsAccount("bob savings", 200L, 20, 0.01, bob));
+        bank.putAccount(new SavingsAccount("alice savings", 100L, 30, 0.01, alice));
+        bank.getAccount(300L).depositCents(1_00, "DEP 1");
+        bank.getAccount(200L).depositCents(2_00, "DEP 2");
+        bank.getAccount(100L).depositCents(3_00, "DEP 3");
+        bank.getAccount(300L).withdrawCents(4_00, "W/D 4");
+
+        List<Account> accounts = bank.getAccountsForOwner(alice);
+        assertThat(accounts.size(), is(2));
+        assertThat(accounts.get(0).getId(), is(100L));
+        assertThat(accounts.get(1).getId(), is(300L));
+        assertThat(bank.getTotalBalanceCentsForOwner(alice), is(10_00L + 30_00L + 1_00L + 3_00L - 4_00L));
+        assertThat(bank.getTotalBalanceCentsForOwner(bob), is(22_00L));
+
+        List<RegisterEntry> recent = bank.getRecentRegisterEntriesForOwner(alice, 3);
+        assertThat(recent.size(), is(3));
+        assertThat(recent.get(0).entryName(), is("W/D 4"));
+        assertThat(recent.get(1).entryName(), is("DEP 3"));
+        assertThat(recent.get(2).entryName(), is("DEP 1"));
+        assertThat(bank.getRecentRegisterEntriesForOwner(alice, 100).size(), is(5));
+
+        assertThat(bank.getAccountsForOwner(99L).isEmpty(), is(true));
+        bank.clearAllRecords();
+        assertThat(bank.getAccountsForOwner(alice).isEmpty(), is(true));
+        assertThat(bank.getTotalBalanceCentsForOwner(alice), is(0L));
+    }
+
+    @Test
+    public void givenSnapshot_whenDepositsContinueOnOtherThreads_thenSnapshotStaysAsTaken() throws Exception {
+        Account.useConcurrency(Account.Concurrency.ATOMIC);
+        try {
+            Bank bank = BankTestFixture.createBank(new ConcurrentRegister(), 10, BankTestFixture.checking(100));
+            BankSnapshot snapshot = bank.snapshot();
+
+            ExecutorService pool = Executors.newFixedThreadPool(4);
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                futures.add(pool.submit(() -> {
+                    for (int i = 0; i < 2_000; i++) {
+                        bank.getAccount(i % 10).depositCents(1_00, "DEP");
+                    }
+                    return null;
+                }));
+            }
+            // a report reading the snapshot while the deposits are going on
+            for (int i = 0; i < 20; i++) {
+                assertThat(snapshot.getRegisterEntries().count(), is(10L));
+                assertThat(snapshot.getRegisterEntries().mapToLong(RegisterEntry::amountCents).sum(), is(snapshot.getTotalBalanceCents()));
+            }
+            for (Future<?> f : futures) {
+                f.get(60, TimeUnit.SECONDS);
+            }
+            pool.shutdown();
+
+            assertThat(snapshot.getTotalBalanceCents(), is(10 * 100_00L));
+            assertThat(snapshot.getBalanceCents(3L), is(100_00L));
+            assertThat(snapshot.getRegisterEntryCount(), is(10L));
+            assertThat(snapshot.getRegisterEntriesForAccount(3L).count(), is(1L));
+            assertThat(snapshot.getAccounts().size(), is(10));
+            assertThat(bank.getAccount(3L).getBalanceCents(), is(100_00L + 800_00L));
+            assertThat(bank.snapshot().getRegisterEntryCount(), is(10L + 8_000L));
+        } finally {
+            Account.useConcurrency(Account.Concurrency.NONE);
+        }
+    }
+
+    @Test
+    public void givenStripedWritesOnOtherThreads_whenSnapshot_thenEveryBalanceMatchesItsRegisterEntries() throws Exception {
+        Account.useConcurrency(Account.Concurrency.STRIPED);
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            Bank bank = BankTestFixture.createBank(new ConcurrentRegister(), 16, BankTestFixture.checking(1000));
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                final long seed = t;
+                futures.add(pool.submit(() -> {
+                    Random random = new Random(seed);
+                    for (int i = 0; i < 2_000; i++) {
+                        long id = random.nextInt(16);
+                        switch (i % 4) {
+                            case 0 -> bank.getAccount(id).depositCents(1_00, "DEP");
+                            case 1 -> bank.getAccount(id).withdrawCents(50, "W/D");
+                            case 2 -> bank.transfer(id, (id + 1) % 16, 25);
+                            default -> bank.applyBatch(List.of(Posting.deposit(id, 10), Posting.withdrawal((id + 5) % 16, 10)));
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (int i = 0; i < 50; i++) {
+                BankSnapshot snapshot = bank.snapshot();
+                assertThat(snapshot.isConsistent(), is(true));
+                Map<Long, Long> registerTotals = snapshot.getRegisterEntries().collect(
+                        Collectors.groupingBy(RegisterEntry::accountId, Collectors.summingLong(RegisterEntry::amountCents)));
+                for (long id = 0; id < 16; id++) {
+                    assertThat(registerTotals.get(id), is(snapshot.getBalanceCents(id)));
+                }
+            }
+            for (Future<?> f : futures) {
+                f.get(60, TimeUnit.SECONDS);
+            }
+        } finally {
+            pool.shutdownNow();
+            Account.useConcurrency(Account.Concurrency.NONE);
+        }
+    }
+
+    @Test
+    public void givenSnapshotWaitingForOneAccount_whenBothAccountsDeposit_thenOtherNotHeldUpAndNeitherInSnapshot() throws Exception {
+        Account.useConcurrency(Account.Concurrency.STRIPED);
+        ExecutorService pool = Executors.newFixedThreadPool(3);
+        try {
+            Bank bank = BankTestFixture.createBank(new ConcurrentRegister(), 16, BankTestFixture.checking(100));
+            LockStripes stripes = Account.getLockStripes();
+            // the snapshot waits for one account's writer. Holding every stripe below that one's
+            // would hold up a deposit to the other, whose stripe is lower
+            long blocked = 0;
+            long other = 1;
+            while (stripes.stripeFor(other) >= stripes.stripeFor(blocked)) {
+                blocked = (stripes.stripeFor(other) > stripes.stripeFor(blocked)) ? other : blocked;
+                other++;
+            }
+            ReentrantLock blockedStripe = stripes.lockFor(blocked);
+            long blockedId = blocked;
+            CountDownLatch held = new CountDownLatch(1);
+            CountDownLatch release = new CountDownLatch(1);
+            Future<?> holder = pool.submit(() -> {
+                blockedStripe.lock();
+                try {
+                    held.countDown();
+                    release.await();
+                    bank.getAccount(blockedId).depositCents(5_00, "DEP");
+                } finally {
+                    blockedStripe.unlock();
+                }
+                return null;
+            });
+            held.await();
+            Future<BankSnapshot> snapshot = pool.submit(bank::snapshot);
+            while (!blockedStripe.hasQueuedThreads()) {
+                Thread.sleep(1);
+            }
+
+            long depositTo = other;
+            pool.submit(() -> {
+                bank.getAccount(depositTo).depositCents(5_00, "DEP");
+                return null;
+            }).get(10, TimeUnit.SECONDS);
+            release.countDown();
+            holder.get(10, TimeUnit.SECONDS);
+
+            BankSnapshot taken = snapshot.get(10, TimeUnit.SECONDS);
+            assertThat(taken.getBalanceCents(blocked), is(100_00L));
+            assertThat(taken.getBalanceCents(other), is(100_00L));
+            assertThat(taken.getTotalBalanceCents(), is(16 * 100_00L));
+            assertThat(taken.getRegisterEntries().mapToLong(RegisterEntry::amountCents).sum(), is(16 * 100_00L));
+            assertThat(bank.getAccount(blocked).getBalanceCents(), is(105_00L));
+            assertThat(bank.getAccount(other).getBalanceCents(), is(105_00L));
+        } finally {
+            pool.shutdownNow();
+            Account.useConcurrency(Account.Concurrency.NONE);
+        }
+    }
+
+    @Test
+    public void givenManyThreads_whenRandomTransfersBothWays_thenMoneyConservedAndLegsLinked() throws Exception {
+        final int accountCount = 16;
+        assertRandomTransfersConserveMoney(
+                BankTestFixture.createBank(new ConcurrentRegister(), accountCount, BankTestFixture.checking(1000)), accountCount);
+    }
+
+    @Test
+    public void givenDefaultRegister_whenManyThreadsTransfer_thenNoEntriesLostOrMixedUp() throws Exception {
+        final int accountCount = 16;
+        assertRandomTransfersConserveMoney(BankTestFixture.createCheckingBank(accountCount, 1000), accountCount);
+    }
+
+    private static void assertRandomTransfersConserveMoney(Bank bank, int accountCount) throws Exception {
+        final int threads = 8;
+        final int transfersPerThread = 5_000;
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            final Random random = new Random(t);
+            futures.add(pool.submit(() -> {
+                for (int i = 0; i < transfersPerThread; i++) {
+                    long from = random.nextInt(accountCount);
+                    long to = (from + 1 + random.nextInt(accountCount - 1)) % accountCount;
+                    bank.transfer(from, to, 1 + random.nextInt(10_000));
+                }
+                return null;
+            }));
+        }
+        for (Future<?> f : futures) {
+            f.get(60, TimeUnit.SECONDS);
+        }
+        pool.shutdown();
+
+        long total = bank.getAllAccounts().stream().mapToLong(Account::getBalanceCents).sum();
+        assertThat(total, is(accountCount * 1000_00L));
+        for (Account account : bank.getAllAccounts()) {
+            long registerTotal = bank.getRegisterEntriesForAccount(account.getId()).stream()
+                    .mapToLong(RegisterEntry::amountCents).sum();
+            assertThat(registerTotal, is(account.getBalanceCents()));
+        }
+        List<RegisterEntry> entries = List.copyOf(bank.getAllRegisterEntries());
+        assertThat(entries.size(), is(accountCount + 2 * threads * transfersPerThread));
+        for (int i = accountCount; i < entries.size(); i += 2) {
+            RegisterEntry out = entries.get(i);
+            RegisterEntry in = entries.get(i + 1);
+            assertThat(out.entryName(), is("TRANSFER TO " + in.accountId()));
+            assertThat(in.entryName(), is("TRANSFER FROM " + out.accountId()));
+            assertThat(in.id(), is(out.id() + 1));
+            assertThat(in.amountCents(), is(-out.amountCents()));
+        }
+    }
+
+    @Test(expected = MissingRecordException.class)
+    public void givenUnknownAccount_whenTransfer_thenException() throws Exception {
+        Bank bank = new Bank();
+        long ownerId = bank.putOwner(BankTestFixture.newOwner());
+        bank.putAccount(new CheckingAccount("checking", 200L, 200, 1, ownerId));
+        bank.transfer(200L, 999L, 100);
+    }
+
     @Test
     public void givenOwners_whenMapKeyMismatch_thenError() {
         // TODO complete..
@@ -0,0 +1,58 @@
+import java.util.Date;
+
+/**
+ * Banks for the tests and benchmarks: one owner, "cust", and accounts numbered from 0.
+ */
+public class BankTestFixture {
+    static final long OWNER_ID = 1L;
+
+    /** makes the account with the given id for the fixture's owner */
+    @FunctionalInterface
+    interface AccountFactory {
+        Account create(long id, long ownerId);
+    }
+
+    static Owner newOwner() {
+        return new Owner("cust", OWNER_ID, new Date(), "1", "1 Main St", null, null, null, null);
+    }
+
+    /** add the fixture's owner and accounts 0 until accountCount to the bank */
+    static Bank populate(Bank bank, long accountCount, AccountFactory factory) throws Exception {
+        long ownerId = bank.putOwner(newOwner());
+        for (long id = 0; id < accountCount; id++) {
+            bank.putAccount(factory.create(id, ownerId));
+        }
+        return bank;
+    }
+
+    static Bank createBank(Register register, long accountCount, AccountFactory factory) throws Exception {
+        return populate(new Bank(register), accountCount, factory);
+    }
+
+    static Bank createBank(long accountCount, AccountFactory factory) throws Exception {
+        return populate(new Bank(), accountCount, factory);
+    }
+
+    /** checking accounts "checking 0", "checking 1", ... each opened with the same balance */
+    static Bank createCheckingBank(long accountCount, double balance) throws Exception {
+        return createBank(accountCount, checking(balance));
+    }
+
+    static ShardedBank createShardedBank(int shards, long accountCount, double balance) throws Exception {
+        return populate(new ShardedBank(shards), accountCount, balance);
+    }
+
+    /** add the fixture's owner and checking accounts 0 until accountCount to the sharded bank */
+    static ShardedBank populate(ShardedBank bank, long accountCount, double balance) throws Exception {
+        long ownerId = bank.putOwner(newOwner());
+        for (long id = 0; id < accountCount; id++) {
+            bank.putAccount(checking(balance).create(id, ownerId));
+        }
+        return bank;
+    }
+
+    /** checking accounts named by id, starting at check number 0 */
+    static AccountFactory checking(double balance) {
+        return (id, ownerId) -> new CheckingAccount("checking " + id, id, balance, 0, ownerId);
+    }
+}
@@ -0,0 +1,71 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Applying postings one deposit()/withdraw() call at a time against Bank.applyBatch().
+ *
+ * Usage: {@code ./gradlew runBenchmark -Pbenchmark=BatchPostingBenchmark -PbenchmarkArgs="1000000"}
+ * where the argument is the number of postings.
+ */
+public class BatchPostingBenchmark {
+    static final int ACCOUNTS = 10_000;
+    static final int BATCH_SIZE = 10_000;
+
+    public static void main(String[] args) throws Exception {
+        BenchmarkUtils.quietLogging();
+        for (long size : BenchmarkUtils.sizes(args, 1_000_000)) {
+            List<Posting> postings = generate((int) size);
+            System.out.printf("%n%,d postings over %,d accounts%n", size, ACCOUNTS);
+            // first pass is a warm-up
+            perCall(postings);
+            batched(postings);
+            double perCall = perCall(postings);
+            double batched = batched(postings);
+            System.out.printf("  per call: %,14.0f postings/s%n", perCall);
+            System.out.printf("  batched:  %,14.0f postings/s (%.1fx)%n", batched, batched / perCall);
+        }
+        Account.useIndividualRegisters();
+    }
+
+    static List<Posting> generate(int size) {
+        Random random = new Random(size);
+        List<Posting> postings = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            long accountId = random.nextInt(ACCOUNTS);
+            long cents = 1 + random.nextInt(100_000);
+            postings.add(random.nextBoolean() ? Posting.deposit(accountId, cents) : Posting.withdrawal(accountId, cents));
+        }
+        return postings;
+    }
+
+    static Bank newBank() throws Exception {
+        return BankTestFixture.createCheckingBank(ACCOUNTS, 0);
+    }
+
+    static double perCall(List<Posting> postings) throws Exception {
+        Bank bank = newBank();
+        long start = System.nanoTime();
+        for (Posting posting : postings) {
+            Account account = bank.getAccount(posting.accountId());
+            if (posting.amountCents() >= 0) {
+                account.deposit(Money.toDouble(posting.amountCents()));
+            } else {
+                account.withdraw(Money.toDouble(-posting.amountCents()));
+            }
+        }
+        return postings.size() / ((System.nanoTime() - start) / 1e9);
+    }
+
+    static double batched(List<Posting> postings) throws Exception {
+        Bank bank = newBank();
+        long start = System.nanoTime();
+        for (int from = 0; from < postings.size(); from += BATCH_SIZE) {
+            BatchResult result = bank.applyBatch(postings.subList(from, Math.min(postings.size(), from + BATCH_SIZE)));
+            if (!result.isAllApplied()) {
+                throw new IllegalStateException(result.toString());
+            }
+        }
+        return postings.size() / ((System.nanoTime() - start) / 1e9);
+    }
+}
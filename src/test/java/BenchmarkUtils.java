@@ -0,0 +1,67 @@
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.core.config.Configurator;
+
+import java.util.function.LongSupplier;
+
+/**
+ * Small helpers shared by the *Benchmark classes. These are plain main() programs,
+ * run them with e.g. {@code ./gradlew runBenchmark -Pbenchmark=RegisterBenchmark}
+ */
+public class BenchmarkUtils {
+
+    private BenchmarkUtils() {
+    }
+
+    /** the test log config logs every deposit at debug, which would swamp anything we measure */
+    public static void quietLogging() {
+        Configurator.setAllLevels(LogManager.ROOT_LOGGER_NAME, Level.WARN);
+    }
+
+    /** parse a list of sizes from the command line, falling back to defaults */
+    public static long[] sizes(String[] args, long... defaults) {
+        if (args.length == 0) {
+            return defaults;
+        }
+        long[] sizes = new long[args.length];
+        for (int i = 0; i < args.length; i++) {
+            sizes[i] = Long.parseLong(args[i].replace("_", ""));
+        }
+        return sizes;
+    }
+
+    /**
+     * Run the operation {@code iterations} times and return the average nanoseconds per call.
+     * The values returned by the operation are summed and printed so the JIT can't drop the work.
+     */
+    public static double nanosPerOp(long iterations, LongSupplier operation) {
+        long blackhole = 0;
+        long start = System.nanoTime();
+        for (long i = 0; i < iterations; i++) {
+            blackhole += operation.getAsLong();
+        }
+        long elapsed = System.nanoTime() - start;
+        if (blackhole == 42) {
+            System.out.println("(ignore) " + blackhole);
+        }
+        return (double) elapsed / iterations;
+    }
+
+    /** best-effort measurement of heap in use after a couple of GCs */
+    public static long usedHeap() {
+        Runtime rt = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return rt.totalMemory() - rt.freeMemory();
+    }
+
+    public static String formatBytes(long bytes) {
+        return String.format("%,.1f MB", bytes / (1024d * 1024d));
+    }
+}
@@ -0,0 +1,100 @@
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Date;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class ColumnarRegisterTest {
+    Register register;
+    ColumnarRegister columnar;
+
+    @Before
+    public void createRegisters() {
+        register = new Register();
+        columnar = new ColumnarRegister();
+    }
+
+    @After
+    public void resetState() {
+        Account.useIndividualRegisters();
+        Persister.resetPersistedFileNameAndDir();
+    }
+
+    private void addToBoth(RegisterEntry entry) {
+        register.addRegisterEntry(entry);
+        columnar.addRegisterEntry(entry);
+    }
+
+    @Test
+    public void givenSameEntries_whenGetEntries_thenSameAsListRegister() {
+        Date date = new Date();
+        // more than the initial capacity so the columns have to grow
+        for (int i = 0; i < 5000; i++) {
+            addToBoth(new RegisterEntry(i, i % 7, (i % 3 == 0) ? "DEP" : "Check " + i, i * 150L, date));
+        }
+        assertThat(columnar.getEntries(), is(register.getEntries()));
+        for (long accountId = 0; accountId < 7; accountId++) {
+            assertThat(columnar.getEntriesForAccount(accountId), is(register.getEntriesForAccount(accountId)));
+        }
+    }
+
+    @Test
+    public void givenAdd_whenGetEntriesForAccount_thenEntryMaterialized() {
+        Date date = new Date();
+        columnar.add(1, "OPEN", 10000, date);
+        columnar.add(2, "OPEN", 20000, date);
+        columnar.add(1, "DEP", 1000, date);
+
+        List<RegisterEntry> entries = columnar.getEntriesForAccount(1);
+        assertThat(entries.size(), is(2));
+        assertThat(entries.get(1).entryName(), is("DEP"));
+        assertThat(entries.get(1).amount(), is(10d));
+        assertThat(entries.get(1).date(), is(date));
+        assertTrue(columnar.getEntriesForAccount(3).isEmpty());
+    }
+
+    @Test
+    public void givenEntries_whenClear_thenEmpty() {
+        columnar.add(1, "OPEN", 10000, new Date());
+        columnar.clear();
+        assertTrue(columnar.getEntries().isEmpty());
+        assertTrue(columnar.getEntriesForAccount(1).isEmpty());
+    }
+
+    @Test
+    public void givenBankWithColumnarRegister_whenWriteCsv_thenReadCsvIsEqual() throws Exception {
+        Persister.setPersisterPropertiesFile("persister.properties");
+        Bank bank = new Bank(columnar);
+        long ownerId = bank.putOwner(BankTestFixture.newOwner());
+        bank.putAccount(new SavingsAccount("savings", 100L, 100, 0.01, ownerId));
+        bank.putAccount(new CheckingAccount("checking", 200L, 200, 1, ownerId));
+        bank.getAccount(100L).deposit(50);
+        var origRegisterEntries = List.copyOf(bank.getAllRegisterEntries());
+
+        int savedCount = bank.saveAllRecords();
+        int loadedCount = bank.loadAllRecords();
+        assertThat(loadedCount, is(savedCount));
+        assertThat(List.copyOf(bank.getAllRegisterEntries()), is(origRegisterEntries));
+    }
+
+    @Test
+    public void givenEntriesOnDifferentDates_whenGetEntriesBetween_thenOnlyEntriesInRangeOldestFirst() {
+        columnar.add(1, "DEP", 100, new Date(3000));
+        columnar.add(2, "DEP", 200, new Date(1000));
+        columnar.add(1, "DEP", 300, new Date(2000));
+
+        List<Double> amounts = columnar.getEntriesBetween(new Date(1000), new Date(3000))
+                .map(RegisterEntry::amount).collect(Collectors.toList());
+        assertThat(amounts, is(List.of(2d, 3d)));
+        List<Double> accountAmounts = columnar.getEntriesForAccountBetween(1, new Date(0), new Date(5000))
+                .map(RegisterEntry::amount).collect(Collectors.toList());
+        assertThat(accountAmounts, is(List.of(3d, 1d)));
+    }
+}
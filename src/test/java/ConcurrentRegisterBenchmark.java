@@ -0,0 +1,73 @@
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.function.Supplier;
+
+/**
+ * Append throughput of the lock-free ConcurrentRegister against a Register that
+ * simply synchronizes every call, for an increasing number of threads.
+ *
+ * Usage: {@code ./gradlew runBenchmark -Pbenchmark=ConcurrentRegisterBenchmark -PbenchmarkArgs="1000000"}
+ * where the argument is the number of appends per run.
+ */
+public class ConcurrentRegisterBenchmark {
+
+    /** the baseline: one global lock around the ArrayList register */
+    static class SynchronizedRegister extends Register {
+        @Override
+        public synchronized void add(long accountId, String entryName, long amountCents, Date transactionDate) {
+            super.add(accountId, entryName, amountCents, transactionDate);
+        }
+
+        @Override
+        public synchronized List<RegisterEntry> getEntries() {
+            return List.copyOf(super.getEntries());
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        int appends = (int) BenchmarkUtils.sizes(args, 2_000_000)[0];
+        int maxThreads = Math.max(8, Runtime.getRuntime().availableProcessors());
+        System.out.printf("%,d appends per run, %d cores%n", appends, Runtime.getRuntime().availableProcessors());
+        System.out.printf("%8s %22s %22s%n", "threads", "synchronized ops/s", "concurrent ops/s");
+        for (int threads = 1; threads <= maxThreads; threads *= 2) {
+            // first pass is a warm-up
+            run(SynchronizedRegister::new, threads, appends);
+            run(ConcurrentRegister::new, threads, appends);
+            double sync = run(SynchronizedRegister::new, threads, appends);
+            double concurrent = run(ConcurrentRegister::new, threads, appends);
+            System.out.printf("%8d %,22.0f %,22.0f%n", threads, sync, concurrent);
+        }
+    }
+
+    static double run(Supplier<Register> registerSupplier, int threads, int appends) throws Exception {
+        Register register = registerSupplier.get();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        int perThread = appends / threads;
+        Date date = new Date();
+        for (int t = 0; t < threads; t++) {
+            final int thread = t;
+            futures.add(pool.submit(() -> {
+                start.await();
+                for (int i = 0; i < perThread; i++) {
+                    register.add(thread * 1000L + (i & 1023), "DEP", 100, date);
+                }
+                return null;
+            }));
+        }
+        long begin = System.nanoTime();
+        start.countDown();
+        for (Future<?> f : futures) {
+            f.get();
+        }
+        long elapsed = System.nanoTime() - begin;
+        pool.shutdown();
+        if (register.getEntries().size() != perThread * threads) {
+            throw new IllegalStateException("Lost entries in " + register.getClass().getSimpleName());
+        }
+        return perThread * threads / (elapsed / 1e9);
+    }
+}
@@ -0,0 +1,174 @@
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class ConcurrentRegisterTest {
+    static final int THREADS = 8;
+    static final int ADDS_PER_THREAD = 20_000;
+    static final int ACCOUNTS = 16;
+
+    ConcurrentRegister register;
+
+    @Before
+    public void createRegister() {
+        register = new ConcurrentRegister();
+    }
+
+    @Test
+    public void givenEntries_whenGetEntries_thenOrderedByIdAndIndexedByAccount() {
+        register.add(1, "OPEN", 10000, new Date());
+        register.add(2, "OPEN", 20000, new Date());
+        register.add(1, "DEP", 1000, new Date());
+
+        List<RegisterEntry> entries = register.getEntries();
+        assertThat(entries.size(), is(3));
+        assertThat(entries.get(1).id(), is(entries.get(0).id() + 1));
+        assertThat(entries.get(2).id(), is(entries.get(1).id() + 1));
+        assertThat(register.getEntriesForAccount(1).size(), is(2));
+        assertThat(register.getEntriesForAccount(1).get(1).entryName(), is("DEP"));
+    }
+
+    @Test
+    public void givenVerbatimEntries_whenAdd_thenNewIdsFollowLoadedIds() {
+        long loadedId = Register.lastId() + 1000;
+        register.addRegisterEntry(new RegisterEntry(loadedId, 1, "OPEN", 0, new Date()));
+        register.add(1, "DEP", 1000, new Date());
+
+        List<RegisterEntry> entries = register.getEntriesForAccount(1);
+        assertThat(entries.size(), is(2));
+        assertThat(entries.get(1).id(), is(loadedId + 1));
+    }
+
+    @Test
+    public void givenManyThreads_whenAddConcurrently_thenNoEntriesLostAndIdsUnique() throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS + 1);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicBoolean writing = new AtomicBoolean(true);
+        List<Future<?>> writers = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            final int thread = t;
+            writers.add(pool.submit(() -> {
+                start.await();
+                for (int i = 0; i < ADDS_PER_THREAD; i++) {
+                    register.add((thread + i) % ACCOUNTS, "DEP", 100, new Date());
+                }
+                return null;
+            }));
+        }
+        // while the writers run every read must be a gap-free prefix ordered by id
+        Future<Integer> reader = pool.submit(() -> {
+            start.await();
+            int reads = 0;
+            while (writing.get()) {
+                assertGapFree(register.getEntries());
+                reads++;
+            }
+            return reads;
+        });
+        start.countDown();
+        for (Future<?> writer : writers) {
+            writer.get(60, TimeUnit.SECONDS);
+        }
+        writing.set(false);
+        assertTrue(reader.get(60, TimeUnit.SECONDS) > 0);
+        pool.shutdown();
+
+        List<RegisterEntry> entries = register.getEntries();
+        assertThat(entries.size(), is(THREADS * ADDS_PER_THREAD));
+        assertGapFree(entries);
+        int perAccount = 0;
+        for (long accountId = 0; accountId < ACCOUNTS; accountId++) {
+            perAccount += register.getEntriesForAccount(accountId).size();
+        }
+        assertThat(perAccount, is(THREADS * ADDS_PER_THREAD));
+        assertThat(register.getPublishedId(), is(entries.get(entries.size() - 1).id()));
+    }
+
+    private static void assertGapFree(List<RegisterEntry> entries) {
+        long previousId = -1;
+        int count = 0;
+        for (RegisterEntry entry : entries) {
+            if (previousId >= 0) {
+                assertThat("Entries should be ordered by id without gaps", entry.id(), is(previousId + 1));
+            }
+            previousId = entry.id();
+            count++;
+        }
+        assertThat("size() should be the published count", entries.size(), is(count));
+    }
+
+    @Test
+    public void givenViews_whenMoreAdded_thenViewsUnchanged() {
+        register.add(1, "OPEN", 100, new Date());
+        register.add(1, "DEP", 200, new Date());
+        List<RegisterEntry> entries = register.getEntries();
+        List<RegisterEntry> account = register.getEntriesForAccount(1);
+        List<RegisterEntry> after = register.getEntriesForAccountAfter(1, account.get(0).id());
+
+        register.add(1, "W/D", -50, new Date());
+        register.addAll(List.of(new Posting(1, "DEP", 10), new Posting(2, "DEP", 20)), new Date());
+
+        assertThat(entries.size(), is(2));
+        assertThat(account.size(), is(2));
+        assertThat(after.size(), is(1));
+        assertThat(after.get(0).entryName(), is("DEP"));
+        assertThat(register.getEntries().size(), is(5));
+        assertThat(register.getEntriesForAccountAfter(1, account.get(1).id()).size(), is(2));
+        assertThat(register.getEntriesForAccountAfter(1, register.getPublishedId()).size(), is(0));
+    }
+
+    @Test
+    public void givenEntriesLoadedBelowPublishedId_whenGetEntries_thenAllCounted() {
+        register.add(1, "OPEN", 100, new Date());
+        long firstId = register.getPublishedId();
+        ConcurrentRegister loaded = new ConcurrentRegister();
+        loaded.addRegisterEntry(new RegisterEntry(firstId, 1, "OPEN", 100, new Date()));
+        loaded.addRegisterEntry(new RegisterEntry(firstId + 2000, 1, "DEP", 100, new Date()));
+        loaded.add(1, "DEP", 100, new Date());
+
+        assertThat(loaded.getEntries().size(), is(3));
+        assertGapFree(loaded.getEntries().subList(1, 3));
+        loaded.clear();
+        assertThat(loaded.getEntries().size(), is(0));
+    }
+
+    @Test
+    public void givenOtherRegistersTakingIds_whenAdd_thenIdsUniqueAndEntriesPublished() {
+        register.add(1, "OPEN", 100, new Date());
+        Register other = new Register();
+        other.add(2, "OPEN", 100, new Date());
+        register.add(1, "DEP", 100, new Date());
+        long reserved = Register.nextIds(2);
+        register.addAll(List.of(new Posting(1, "DEP", 100), new Posting(1, "DEP", 200)), new Date());
+
+        List<RegisterEntry> entries = register.getEntries();
+        assertThat(entries.size(), is(4));
+        Set<Long> ids = new HashSet<>(List.of(other.getEntries().get(0).id(), reserved, reserved + 1));
+        for (RegisterEntry entry : entries) {
+            assertTrue("id " + entry.id() + " was already taken", ids.add(entry.id()));
+        }
+        assertThat(register.getPublishedId(), is(entries.get(3).id()));
+    }
+
+    @Test
+    public void givenEntriesOnDifferentDates_whenGetEntriesBetween_thenOnlyEntriesInRangeOldestFirst() {
+        register.add(1, "DEP", 100, new Date(3000));
+        register.add(2, "DEP", 200, new Date(1000));
+        register.add(1, "DEP", 300, new Date(2000));
+
+        List<Double> amounts = register.getEntriesBetween(new Date(1000), new Date(3000))
+                .map(RegisterEntry::amount).collect(Collectors.toList());
+        assertThat(amounts, is(List.of(2d, 3d)));
+        List<Double> accountAmounts = register.getEntriesForAccountBetween(1, new Date(0), new Date(5000))
+                .map(RegisterEntry::amount).collect(Collectors.toList());
+        assertThat(accountAmounts, is(List.of(3d, 1d)));
+    }
+}
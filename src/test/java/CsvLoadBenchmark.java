@@ -0,0 +1,73 @@
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Peak heap and time to read register.csv all at once (Files.readAllLines() and a List of
+ * entries, how Persister used to read) against streaming it line by line into a consumer.
+ * The consumer only sums the amounts, so the peak is the reading itself. Files go to the
+ * directory in persister.properties.
+ *
+ * Usage: {@code ./gradlew runBenchmark -Pbenchmark=CsvLoadBenchmark -PbenchmarkArgs="1000000 5000000"}
+ * where the arguments are numbers of register entries.
+ */
+public class CsvLoadBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        BenchmarkUtils.quietLogging();
+        for (long size : BenchmarkUtils.sizes(args, 1_000_000)) {
+            writeRegister((int) size);
+            System.out.printf("%n%,d register entries, %s register.csv%n", size,
+                    BenchmarkUtils.formatBytes(Files.size(Paths.get(Persister.getFilename("register")))));
+            measure("readAllLines + List", () -> {
+                List<String> lines = Files.readAllLines(Paths.get(Persister.getFilename("register")));
+                long total = 0;
+                for (RegisterEntry entry : Persister.readRegisterEntriesFromCsv()) {
+                    total += entry.amountCents();
+                }
+                return total + lines.size();
+            });
+            measure("streaming consumer", () -> {
+                AtomicLong total = new AtomicLong();
+                long count = Persister.readRegisterEntriesFromCsv(entry -> total.addAndGet(entry.amountCents()));
+                return total.get() + count;
+            });
+        }
+        Account.useIndividualRegisters();
+    }
+
+    interface Load {
+        long run() throws Exception;
+    }
+
+    static void measure(String label, Load load) throws Exception {
+        long before = BenchmarkUtils.usedHeap();
+        List<MemoryPoolMXBean> pools = ManagementFactory.getMemoryPoolMXBeans();
+        pools.forEach(MemoryPoolMXBean::resetPeakUsage);
+        long start = System.nanoTime();
+        long result = load.run();
+        double millis = (System.nanoTime() - start) / 1e6;
+        long peak = 0;
+        for (MemoryPoolMXBean pool : pools) {
+            if (pool.getType() == MemoryType.HEAP) {
+                peak += pool.getPeakUsage().getUsed();
+            }
+        }
+        System.out.printf("  %-22s %,8.0f ms  peak heap %14s above the %s before  (%d)%n", label, millis,
+                BenchmarkUtils.formatBytes(Math.max(0, peak - before)), BenchmarkUtils.formatBytes(before), result % 10);
+    }
+
+    static void writeRegister(int entries) throws Exception {
+        Register register = new ColumnarRegister();
+        Date date = new Date();
+        for (int i = 0; i < entries; i++) {
+            register.add(i % 10_000, (i % 2 == 0) ? "DEP" : "W/D", i % 100_000, date);
+        }
+        Persister.writeRecordsToCsv(register.getEntries(), "register");
+    }
+}
@@ -0,0 +1,84 @@
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+
+/**
+ * Time and heap allocated per register line for the String parsing (readLine() then
+ * RegisterEntry.fromCSV(String)) against CsvRecordParser reading the bytes. The lines are
+ * built in memory so the disk isn't part of it, and each pass only sums the amounts.
+ *
+ * Usage: {@code ./gradlew runBenchmark -Pbenchmark=CsvParseBenchmark -PbenchmarkArgs="1000000"}
+ * where the arguments are numbers of register lines.
+ */
+public class CsvParseBenchmark {
+    private static final String[] NAMES = {"DEPOSIT", "WITHDRAW", "INTEREST", "Check 12", "MINIMUM BALANCE CHARGE"};
+    private static final int ROUNDS = 5;
+
+    public static void main(String[] args) throws Exception {
+        BenchmarkUtils.quietLogging();
+        for (long size : BenchmarkUtils.sizes(args, 1_000_000)) {
+            byte[] csv = registerLines((int) size);
+            System.out.printf("%n%,d register lines, %s%n", size, BenchmarkUtils.formatBytes(csv.length));
+            for (int round = 1; round <= ROUNDS; round++) {
+                // the first rounds are JIT warm-up
+                measure(round, "fromCSV(String)", size, () -> parseStrings(csv));
+                measure(round, "CsvRecordParser", size, () -> parseBytes(csv));
+            }
+        }
+    }
+
+    static byte[] registerLines(int count) throws SerializationException {
+        StringBuilder sb = new StringBuilder(count * 48);
+        sb.append(String.join(",", RegisterEntry.COLUMNS)).append('\n');
+        long date = new Date().getTime();
+        for (int i = 0; i < count; i++) {
+            long cents = (i % 2 == 0) ? 1_000 + i % 100_000 : -(i % 5_000);
+            sb.append(new RegisterEntry(i, i % 100_000, NAMES[i % NAMES.length], cents, new Date(date + i)).toCSV()).append('\n');
+        }
+        return sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    static long parseStrings(byte[] csv) throws Exception {
+        long total = 0;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new ByteArrayInputStream(csv), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.startsWith(RegisterEntry.COLUMNS[0])) {
+                    total += RegisterEntry.fromCSV(line).amountCents();
+                }
+            }
+        }
+        return total;
+    }
+
+    static long parseBytes(byte[] csv) throws Exception {
+        long total = 0;
+        CsvRecordParser parser = new CsvRecordParser(ByteBuffer.wrap(csv));
+        while (parser.nextLine()) {
+            if (!parser.lineStartsWith(RegisterEntry.COLUMNS[0])) {
+                total += RegisterEntry.fromCSV(parser).amountCents();
+            }
+        }
+        return total;
+    }
+
+    interface Parse {
+        long run() throws Exception;
+    }
+
+    static void measure(int round, String label, long lines, Parse parse) throws Exception {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+        long allocatedBefore = threads.getThreadAllocatedBytes(thread);
+        long start = System.nanoTime();
+        long total = parse.run();
+        long nanos = System.nanoTime() - start;
+        long allocated = threads.getThreadAllocatedBytes(thread) - allocatedBefore;
+        System.out.printf("  round %d %-16s %,8.1f ns/line %,8.1f bytes/line (total %d)%n",
+                round, label, (double) nanos / lines, (double) allocated / lines, total);
+    }
+}
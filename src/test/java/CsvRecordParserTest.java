@@ -0,0 +1,111 @@
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class CsvRecordParserTest {
+
+    private static CsvRecordParser parserFor(String text) {
+        return new CsvRecordParser(ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    public void givenSavedRecords_whenParsedFromBytes_thenSameAsFromString() throws Exception {
+        RegisterEntry entry = new RegisterEntry(7, 3, "DEPOSIT", -1205, new Date(1792269483939L));
+        SavingsAccount savings = new SavingsAccount("savings 3", 3, 1099, 0.02, 4);
+        CheckingAccount checking = new CheckingAccount("checking \u00e9", 5, 12.5, 101, 4);
+        Owner owner = new Owner("cust 4", 4, new Date(1792269483917L), "123", "0 Main St", null, "Rochester", "NY", "14623");
+
+        CsvRecordParser csv = parserFor(entry.toCSV() + "\n" + savings.toCSV() + "\r\n" + checking.toCSV() + "\n" + owner.toCSV());
+        assertThat(csv.nextLine(), is(true));
+        assertThat(RegisterEntry.fromCSV(csv), is(RegisterEntry.fromCSV(entry.toCSV())));
+        assertThat(csv.nextLine(), is(true));
+        SavingsAccount parsedSavings = SavingsAccount.fromCSV(csv);
+        assertThat(parsedSavings.toCSV(), is(savings.toCSV()));
+        assertThat(parsedSavings.getInterestRate(), is(0.02));
+        assertThat(csv.nextLine(), is(true));
+        assertThat(CheckingAccount.fromCSV(csv).toCSV(), is(checking.toCSV()));
+        assertThat(csv.nextLine(), is(true));
+        assertThat(Owner.fromCSV(csv), is(Owner.fromCSV(owner.toCSV())));
+        assertThat(csv.nextLine(), is(false));
+    }
+
+    @Test
+    public void givenOldDoubleText_whenParsed_thenSameAsMoneyParse() throws Exception {
+        CsvRecordParser csv = parserFor("1! 2! INTEREST! 599.6199999999997! 0! v1\n"
+                + "2! 2! INTEREST!  -.5 ! 0! v1\n"
+                + "3! 2! INTEREST! 92233720368547758.07! 0! v2\n"
+                + "1! savings! 1.0E-4! 1.0E-4! 2! v1");
+        long[] expected = {59962, -50, Long.MAX_VALUE};
+        for (long cents : expected) {
+            assertThat(csv.nextLine(), is(true));
+            assertThat(RegisterEntry.fromCSV(csv).amountCents(), is(cents));
+        }
+        assertThat(csv.nextLine(), is(true));
+        SavingsAccount savings = SavingsAccount.fromCSV(csv);
+        assertThat(savings.getBalanceCents(), is(0L));
+        assertThat(savings.getInterestRate(), is(1.0E-4));
+    }
+
+    @Test
+    public void givenSmallReadBuffer_whenLinesSpanRefills_thenEveryRecordRead() throws Exception {
+        StringBuilder text = new StringBuilder(String.join(",", RegisterEntry.COLUMNS)).append('\n');
+        List<RegisterEntry> written = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            String name = (i % 10 == 0) ? "a much longer entry name than the read buffer " + i : "Check " + (i % 3);
+            RegisterEntry entry = new RegisterEntry(i, i % 7, name, i * 101L, new Date(i));
+            written.add(entry);
+            text.append(entry.toCSV()).append((i % 2 == 0) ? "\r\n" : "\n\n");
+        }
+        byte[] bytes = text.toString().getBytes(StandardCharsets.UTF_8);
+
+        List<RegisterEntry> read = readAll(new CsvRecordParser(Channels.newChannel(new ByteArrayInputStream(bytes)), 16));
+        assertThat(read, is(written));
+        // repeated names are shared rather than made again for every line
+        assertThat(read.get(1).entryName(), sameInstance(read.get(4).entryName()));
+
+        // a buffer that isn't on the heap, like a mapped file, is copied out as it is read
+        ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length).put(bytes).flip();
+        assertThat(readAll(new CsvRecordParser(direct)), is(written));
+    }
+
+    private static List<RegisterEntry> readAll(CsvRecordParser csv) throws Exception {
+        List<RegisterEntry> read = new ArrayList<>();
+        while (csv.nextLine()) {
+            if (!csv.lineStartsWith(RegisterEntry.COLUMNS[0])) {
+                read.add(RegisterEntry.fromCSV(csv));
+            }
+        }
+        return read;
+    }
+
+    @Test
+    public void givenBadRecords_whenParsed_thenSerializationException() throws Exception {
+        String[] bad = {
+                "1! 2! OPEN! 10.00! 0! v3",
+                "1! 2! OPEN! 10.00! v2",
+                "1! 2! OPEN! ten! 0! v2",
+                "1! x! OPEN! 10.00! 0! v2",
+                "1! 2! OPEN! -! 0! v2",
+        };
+        for (String line : bad) {
+            CsvRecordParser csv = parserFor(line);
+            assertThat(csv.nextLine(), is(true));
+            try {
+                RegisterEntry.fromCSV(csv);
+                fail("Expected SerializationException for " + line);
+            } catch (SerializationException e) {
+                // expected
+            }
+        }
+    }
+}
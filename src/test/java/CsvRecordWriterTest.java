@@ -0,0 +1,73 @@
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.assertThat;
+
+public class CsvRecordWriterTest {
+
+    @Test
+    public void givenRecords_whenToCSV_thenSameTextAsBefore() throws Exception {
+        assertThat(new RegisterEntry(1, 0, "OPEN", 100000, new Date(1792269483939L)).toCSV(),
+                is("1! 0! OPEN! 1000.00! 1792269483939! v2"));
+        assertThat(new SavingsAccount("savings 0", 0, 1099, 0.02, 0).toCSV(),
+                is("0! savings 0! 1099.00! 0.02! 0! v2"));
+        assertThat(new CheckingAccount("checking 1", 1, -0.05, 12, 0).toCSV(),
+                is("1! checking 1! -0.05! 12! 0! v2"));
+        assertThat(new Owner("cust 0", 0, new Date(1792269483917L), null, "0 Main St", null, null, null, null).toCSV(),
+                is("0! cust 0! 1792269483917! ! 0 Main St! ! ! ! ! v1"));
+    }
+
+    @Test
+    public void givenSmallBuffer_whenRecordsWritten_thenSameBytesAsToCSV() throws Exception {
+        List<RegisterEntry> entries = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            String name = (i % 5 == 0) ? "caf\u00e9 \u20ac" + i : "DEPOSIT";
+            long cents = (i % 3 == 0) ? -i * 1001L : i * 7L;
+            entries.add(new RegisterEntry(i, -i, name, cents, new Date(i * 1000L)));
+        }
+        entries.add(new RegisterEntry(Long.MAX_VALUE, Long.MIN_VALUE, "", Long.MIN_VALUE, new Date(0)));
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        StringBuilder expected = new StringBuilder();
+        try (CsvRecordWriter out = new CsvRecordWriter(Channels.newChannel(bytes), 8)) {
+            for (RegisterEntry entry : entries) {
+                entry.writeCSV(out);
+                out.newLine();
+                expected.append(entry.toCSV()).append(System.lineSeparator());
+            }
+            assertThat(out.getBytesWritten(), is((long) expected.toString().getBytes(StandardCharsets.UTF_8).length));
+        }
+        assertThat(bytes.toString(StandardCharsets.UTF_8), is(expected.toString()));
+
+        List<RegisterEntry> read = new ArrayList<>();
+        CsvRecordParser csv = new CsvRecordParser(ByteBuffer.wrap(bytes.toByteArray()));
+        while (csv.nextLine()) {
+            read.add(RegisterEntry.fromCSV(csv));
+        }
+        assertThat(read, is(entries));
+    }
+
+    @Test
+    public void givenSurrogatePairAppendedOneCharAtATime_whenWritten_thenEncodedAsOneCodePoint() throws Exception {
+        String text = "pay \uD83D\uDCB0 ok \u20ac";
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (CsvRecordWriter out = new CsvRecordWriter(Channels.newChannel(bytes), 8)) {
+            // enough to fill the buffer between the two halves of the pair more than once
+            for (int i = 0; i < 10; i++) {
+                for (int c = 0; c < text.length(); c++) {
+                    out.append(text.charAt(c));
+                }
+                out.newLine();
+            }
+            assertThat(out.getBytesWritten(), is(10L * (text + System.lineSeparator()).getBytes(StandardCharsets.UTF_8).length));
+        }
+        assertThat(bytes.toString(StandardCharsets.UTF_8), is((text + System.lineSeparator()).repeat(10)));
+    }
+}
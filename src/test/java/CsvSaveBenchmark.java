@@ -0,0 +1,49 @@
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Peak heap and time to save register.csv the way Persister used to (every line as a String
+ * in a List, then Files.write()) against Persister.writeRecordsToCsv(), which streams each
+ * entry's fields through a CsvRecordWriter. The register is a ColumnarRegister so the entries
+ * themselves take little heap. Files go to the directory in persister.properties.
+ *
+ * Usage: {@code ./gradlew runBenchmark -Pbenchmark=CsvSaveBenchmark -PbenchmarkArgs="1000000 10000000"}
+ * where the arguments are numbers of register entries.
+ */
+public class CsvSaveBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        BenchmarkUtils.quietLogging();
+        for (long size : BenchmarkUtils.sizes(args, 1_000_000)) {
+            Register register = new ColumnarRegister();
+            Date date = new Date();
+            for (int i = 0; i < size; i++) {
+                register.add(i % 10_000, (i % 2 == 0) ? "DEPOSIT" : "WITHDRAW", (i % 2 == 0) ? i % 100_000 : -(i % 5_000), date);
+            }
+            List<RegisterEntry> entries = register.getEntries();
+            System.out.printf("%n%,d register entries%n", size);
+            // also loads Persister's settings, which getFilename() needs
+            Persister.useRegisterJournal();
+            Path csv = Paths.get(Persister.getFilename("register"));
+            CsvLoadBenchmark.measure("List<String> + write", () -> {
+                List<String> lines = new ArrayList<>();
+                lines.add(String.join(",", RegisterEntry.COLUMNS));
+                for (RegisterEntry entry : entries) {
+                    lines.add(entry.toCSV());
+                }
+                Files.write(csv, lines, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+                return Files.size(csv);
+            });
+            CsvLoadBenchmark.measure("CsvRecordWriter", () -> {
+                Persister.writeRecordsToCsv(entries, "register");
+                return Files.size(csv);
+            });
+            System.out.printf("  %s register.csv%n", BenchmarkUtils.formatBytes(Files.size(csv)));
+        }
+    }
+}
@@ -0,0 +1,48 @@
+
+/**
+ * Second month end over a bank where only a tenth of the accounts had activity since the
+ * first, with and without the MonthEndEngine rolling dormant accounts forward in bulk.
+ *
+ * Usage: {@code ./gradlew runBenchmark -Pbenchmark=IncrementalMonthEndBenchmark -PbenchmarkArgs="100000 1000000"}
+ * where the arguments are numbers of accounts.
+ */
+public class IncrementalMonthEndBenchmark {
+    static final int ACTIVE_EVERY = 10;
+
+    public static void main(String[] args) throws Exception {
+        BenchmarkUtils.quietLogging();
+        for (long size : BenchmarkUtils.sizes(args, 100_000)) {
+            System.out.printf("%n%,d accounts, %,d active since the last month end%n", size, size / ACTIVE_EVERY);
+            // month end changes the accounts so every run needs a fresh bank, the first of each is a warm-up
+            run((int) size, false);
+            double full = run((int) size, false);
+            run((int) size, true);
+            double incremental = run((int) size, true);
+            System.out.printf("  every account:     %,10.0f ms%n", full);
+            System.out.printf("  skip dormant:      %,10.0f ms  (%.1fx)%n", incremental, full / incremental);
+        }
+        Account.useIndividualRegisters();
+    }
+
+    static double run(int accounts, boolean skipDormant) throws Exception {
+        Bank bank = BankTestFixture.createBank(new Register(), accounts, (id, ownerId) -> (id % 2 == 0)
+                ? new SavingsAccount("savings " + id, id, 1000, 0, ownerId)
+                : new CheckingAccount("checking " + id, id, 1000, 0, ownerId));
+        for (long id = 0; id < accounts; id++) {
+            bank.getAccount(id).depositCents(100, "DEP");
+        }
+        bank.runMonthEnd();
+        for (long id = 0; id < accounts; id += ACTIVE_EVERY) {
+            bank.getAccount(id).depositCents(100, "DEP");
+        }
+
+        bank.useMonthEndEngine(new MonthEndEngine(1, skipDormant));
+        long start = System.nanoTime();
+        int statements = bank.runMonthEnd().size();
+        double millis = (System.nanoTime() - start) / 1e6;
+        if (statements != accounts) {
+            throw new IllegalStateException("Expected " + accounts + " statements but got " + statements);
+        }
+        return millis;
+    }
+}
@@ -0,0 +1,53 @@
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.assertThat;
+
+public class LongObjectMapTest {
+
+    @Test
+    public void givenRandomKeys_whenPutAndGet_thenSameAsTreeMapAndValuesInKeyOrder() {
+        LongObjectMap<String> map = new LongObjectMap<>();
+        TreeMap<Long, String> expected = new TreeMap<>();
+        Random random = new Random(42);
+        // enough to resize the table several times, with repeats and negative and zero keys
+        for (int i = 0; i < 50_000; i++) {
+            long key = random.nextInt(40_000) - 1_000;
+            String value = "v" + i;
+            assertThat(map.put(key, value), is(expected.put(key, value)));
+        }
+        assertThat(map.size(), is(expected.size()));
+        for (long key = -2_000; key < 41_000; key++) {
+            assertThat(map.get(key), is(expected.get(key)));
+            assertThat(map.containsKey(key), is(expected.containsKey(key)));
+        }
+        assertThat(new ArrayList<>(map.values()), is(new ArrayList<>(expected.values())));
+        assertThat(map.keys()[0], is(expected.firstKey()));
+    }
+
+    @Test
+    public void givenIncreasingKeysThenAnOlderOne_whenIterateValues_thenStillInKeyOrder() {
+        LongObjectMap<Long> map = new LongObjectMap<>(4);
+        for (long key = 10; key < 100; key += 10) {
+            map.put(key, key);
+        }
+        List<Long> values = new ArrayList<>(map.values());
+        assertThat(values.get(0), is(10L));
+        assertThat(values.get(values.size() - 1), is(90L));
+
+        map.put(5L, 5L);
+        map.put(200L, 200L);
+        values = new ArrayList<>(map.values());
+        assertThat(values, is(List.of(5L, 10L, 20L, 30L, 40L, 50L, 60L, 70L, 80L, 90L, 200L)));
+
+        map.clear();
+        assertThat(map.isEmpty(), is(true));
+        assertThat(map.get(10L), is(nullValue()));
+        assertThat(map.values().iterator().hasNext(), is(false));
+    }
+}
@@ -0,0 +1,88 @@
+import org.junit.Test;
+
+import java.util.Date;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class MoneyTest {
+
+    @Test
+    public void givenDecimalStrings_whenParse_thenExactCents() {
+        assertThat(Money.parse("12"), is(1200L));
+        assertThat(Money.parse("12.5"), is(1250L));
+        assertThat(Money.parse("12.05"), is(1205L));
+        assertThat(Money.parse("-0.05"), is(-5L));
+        assertThat(Money.parse("-1.5"), is(-150L));
+        assertThat(Money.parse(" 7. "), is(700L));
+    }
+
+    @Test
+    public void givenMalformedFraction_whenParse_thenRejected() {
+        for (String malformed : List.of("1.-5", "1.+5", "-1.-5", "1.5e", ".", "-.")) {
+            try {
+                Money.parse(malformed);
+                fail("Expected \"" + malformed + "\" to be rejected");
+            } catch (NumberFormatException e) {
+                // expected
+            }
+        }
+    }
+
+    @Test
+    public void givenOldDoubleText_whenParse_thenRoundedToNearestCent() {
+        // what the double-based code wrote after a few months of interest
+        assertThat(Money.parse("599.6199999999997"), is(59962L));
+        assertThat(Money.parse("1.0E-4"), is(0L));
+        assertThat(Money.parse("0.125"), is(12L));
+    }
+
+    @Test
+    public void givenCents_whenToStringAndFormat_thenTwoDecimals() {
+        assertThat(Money.toString(-123450), is("-1234.50"));
+        assertThat(Money.toString(5), is("0.05"));
+        assertThat(Money.format(-123450), is("-1,234.50"));
+        assertThat(Money.format(100_000_000_00L), is("100,000,000.00"));
+        assertThat(Money.format(99), is("0.99"));
+        assertThat(Money.parse(Money.toString(Long.MAX_VALUE)), is(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void givenRepeatedDeposits_whenSummed_thenNoDrift() throws Exception {
+        Account account = new CheckingAccount("checking", 1L, 0, 0, 1L);
+        for (int i = 0; i < 10; i++) {
+            account.deposit(0.1);
+        }
+        assertThat(account.getBalanceCents(), is(100L));
+        assertThat(account.getBalance(), is(1d));
+    }
+
+    @Test
+    public void givenV1CsvEntry_whenFromCsv_thenAmountInCents() throws Exception {
+        RegisterEntry entry = RegisterEntry.fromCSV("7 ! 100 ! INTEREST ! 0.9999999999 ! 1000 ! v1");
+        assertThat(entry.amountCents(), is(100L));
+
+        RegisterEntry v2 = new RegisterEntry(8, 100, "W/D", -1999, new Date(1000));
+        assertThat(RegisterEntry.fromCSV(v2.toCSV()), is(v2));
+    }
+
+    @Test
+    public void givenBalanceBeyondDoublePrecision_whenAccountFromCsv_thenExactCents() throws Exception {
+        // 2^53 + 1 cents, the nearest double is a cent off
+        long cents = 9_007_199_254_740_993L;
+        assertThat(Money.ofDouble(Money.toDouble(cents)) == cents, is(false));
+        Account.useSharedRegister(new Register());
+        try {
+            CheckingAccount checking = CheckingAccount.fromCSV("1 ! checking ! " + Money.toString(cents) + " ! 5 ! 1 ! v2");
+            assertThat(checking.getBalanceCents(), is(cents));
+            assertThat(CheckingAccount.fromCSV(checking.toCSV()).getBalanceCents(), is(cents));
+            SavingsAccount savings = SavingsAccount.fromCSV("2 ! savings ! " + Money.toString(cents) + " ! 0.01 ! 1 ! v2");
+            assertThat(savings.getBalanceCents(), is(cents));
+            assertThat(savings.getRegister().getEntriesForAccount(2).get(0).amountCents(), is(cents));
+        } finally {
+            Account.useIndividualRegisters();
+        }
+    }
+}
@@ -0,0 +1,50 @@
+
+/**
+ * Month end over a bank with many accounts sharing a ConcurrentRegister, run by the
+ * MonthEndEngine with 1, 2, 4 ... cores.
+ *
+ * Usage: {@code ./gradlew runBenchmark -Pbenchmark=MonthEndBenchmark -PbenchmarkArgs="100000 1000000"}
+ * where the arguments are numbers of accounts.
+ */
+public class MonthEndBenchmark {
+    static final int ENTRIES_PER_ACCOUNT = 4;
+
+    public static void main(String[] args) throws Exception {
+        BenchmarkUtils.quietLogging();
+        int cores = Runtime.getRuntime().availableProcessors();
+        for (long size : BenchmarkUtils.sizes(args, 100_000)) {
+            System.out.printf("%n%,d accounts, %,d register entries, %d cores%n", size, size * ENTRIES_PER_ACCOUNT, cores);
+            double baseline = 0;
+            for (int parallelism = 1; parallelism <= cores; parallelism *= 2) {
+                // month end changes the accounts so every run needs a fresh bank, the first is a warm-up
+                run((int) size, parallelism);
+                double millis = run((int) size, parallelism);
+                if (parallelism == 1) {
+                    baseline = millis;
+                }
+                System.out.printf("  parallelism %3d: %,10.0f ms  (%.1fx)%n", parallelism, millis, baseline / millis);
+            }
+        }
+        Account.useIndividualRegisters();
+    }
+
+    static double run(int accounts, int parallelism) throws Exception {
+        Bank bank = BankTestFixture.createBank(new ConcurrentRegister(), accounts, (id, ownerId) -> (id % 2 == 0)
+                ? new SavingsAccount("savings " + id, id, 1000, 0.02, ownerId)
+                : new CheckingAccount("checking " + id, id, 1000, 0, ownerId));
+        for (long id = 0; id < accounts; id++) {
+            Account account = bank.getAccount(id);
+            for (int i = 1; i < ENTRIES_PER_ACCOUNT; i++) {
+                account.depositCents(100, "DEP");
+            }
+        }
+        bank.useMonthEndEngine(new MonthEndEngine(parallelism));
+        long start = System.nanoTime();
+        int statements = bank.runMonthEnd().size();
+        double millis = (System.nanoTime() - start) / 1e6;
+        if (statements != accounts) {
+            throw new IllegalStateException("Expected " + accounts + " statements but got " + statements);
+        }
+        return millis;
+    }
+}
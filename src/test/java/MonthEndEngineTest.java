@@ -0,0 +1,174 @@
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.assertThat;
+
+public class MonthEndEngineTest {
+    static final int ACCOUNTS = 2_000;
+
+    @After
+    public void resetState() {
+        Account.useIndividualRegisters();
+    }
+
+    /** savings earning 12% a year and checking accounts below their minimum balance */
+    static Bank createBank(Register register) throws Exception {
+        return createBank(register, 5);
+    }
+
+    /** savings earning 12% a year and checking accounts opened with checkingBalance and a minimum balance of 10 */
+    static Bank createBank(Register register, double checkingBalance) throws Exception {
+        return BankTestFixture.createBank(register, ACCOUNTS, (id, ownerId) -> {
+            Account account = (id % 2 == 0)
+                    ? new SavingsAccount("savings " + id, id, 100, 0.12, ownerId)
+                    : new CheckingAccount("checking " + id, id, checkingBalance, id, ownerId);
+            account.setMinimumBalance(10);
+            account.setBelowMinimumFee(1);
+            return account;
+        });
+    }
+
+    @Test
+    public void givenSavingsAccount_whenRunMonthEnd_thenInterestAppliedOnce() throws Exception {
+        Bank bank = createBank(new Register());
+        List<Statement> statements = new ArrayList<>(bank.runMonthEnd());
+        assertThat(bank.getAccount(0L).getBalanceCents(), is(101_00L));
+        assertThat(bank.getAccount(1L).getBalanceCents(), is(4_00L));
+        assertThat(statements.get(0).entries().stream().filter(e -> e.entryName().equals("INTEREST")).count(), is(1L));
+    }
+
+    @Test
+    public void givenConcurrentRegister_whenParallelMonthEnd_thenSameResultsAsSequentialInAccountOrder() throws Exception {
+        Bank sequentialBank = createBank(new Register());
+        List<Statement> expected = new ArrayList<>(sequentialBank.runMonthEnd());
+
+        Bank parallelBank = createBank(new ConcurrentRegister());
+        parallelBank.useMonthEndEngine(new MonthEndEngine(4));
+        List<Statement> actual = new ArrayList<>(parallelBank.runMonthEnd());
+
+        assertThat(actual.size(), is(ACCOUNTS));
+        for (int i = 0; i < ACCOUNTS; i++) {
+            Statement e = expected.get(i);
+            Statement a = actual.get(i);
+            assertThat(a.accountName(), is(e.accountName()));
+            assertThat(a.balanceCents(), is(e.balanceCents()));
+            assertThat(a.period().openingBalanceCents(), is(e.period().openingBalanceCents()));
+            assertThat(names(a), is(names(e)));
+            assertThat(parallelBank.getAccount((long) i).getBalanceCents(), is(a.balanceCents()));
+        }
+        // every month end entry made it into a statement, none are left for the next period
+        for (Account account : parallelBank.getAllAccounts()) {
+            assertThat(account.getCurrentPeriodEntries().isEmpty(), is(true));
+        }
+    }
+
+    /** a second month end where only every tenth checking account had activity since the first */
+    private static List<Statement> runSecondMonthEnd(MonthEndEngine engine) throws Exception {
+        Bank bank = createBank(new Register(), 50);
+        bank.runMonthEnd();
+        for (long id = 1; id < ACCOUNTS; id += 10) {
+            bank.getAccount(id).depositCents(1_00, "DEP");
+        }
+        bank.useMonthEndEngine(engine);
+        return new ArrayList<>(bank.runMonthEnd());
+    }
+
+    @Test
+    public void givenDormantAccounts_whenSkipDormant_thenSameStatementsAsFullMonthEnd() throws Exception {
+        List<Statement> expected = runSecondMonthEnd(new MonthEndEngine(1, false));
+        MonthEndEngine engine = new MonthEndEngine(1, true);
+        List<Statement> actual = runSecondMonthEnd(engine);
+
+        // savings still earn interest and the active checking accounts need the full month end
+        assertThat(engine.getLastDormantCount(), is(ACCOUNTS / 2 - ACCOUNTS / 10));
+        for (int i = 0; i < ACCOUNTS; i++) {
+            Statement e = expected.get(i);
+            Statement a = actual.get(i);
+            assertThat(a.accountName(), is(e.accountName()));
+            assertThat(a.balanceCents(), is(e.balanceCents()));
+            assertThat(a.period().openingBalanceCents(), is(e.period().openingBalanceCents()));
+            assertThat(a.period().entryCount(), is(e.period().entryCount()));
+            assertThat(names(a), is(names(e)));
+            assertThat(amounts(a), is(amounts(e)));
+        }
+    }
+
+    @Test
+    public void givenDormantCheckingAccount_whenRunMonthEnd_thenEndCheckInRegisterAndNextPeriodStartsAfterIt() throws Exception {
+        Register register = new Register();
+        Bank bank = new Bank(register);
+        long ownerId = bank.putOwner(BankTestFixture.newOwner());
+        CheckingAccount account = new CheckingAccount("checking", 1L, 50, 7, ownerId);
+        bank.putAccount(account);
+        MonthEndEngine engine = new MonthEndEngine(1, true);
+        bank.useMonthEndEngine(engine);
+        bank.runMonthEnd();
+
+        assertThat(account.needsMonthEnd(), is(false));
+        Statement statement = new ArrayList<>(bank.runMonthEnd()).get(0);
+        assertThat(engine.getLastDormantCount(), is(1));
+        assertThat(names(statement), is(List.of("END CHECK")));
+        RegisterEntry endCheck = statement.entries().get(0);
+        assertThat(register.getEntriesForAccount(1L).get(register.getEntriesForAccount(1L).size() - 1), is(endCheck));
+        assertThat(account.getCurrentPeriodEntries().isEmpty(), is(true));
+
+        account.depositCents(1_00, "DEP");
+        assertThat(account.needsMonthEnd(), is(true));
+        assertThat(account.getCurrentPeriodEntries().size(), is(1));
+    }
+
+    @Test
+    public void givenDepositAfterDormancyCheck_whenStatementMade_thenDepositIsOnIt() throws Exception {
+        Register register = new Register();
+        Bank bank = new Bank(register);
+        long ownerId = bank.putOwner(BankTestFixture.newOwner());
+        CheckingAccount account = new CheckingAccount("checking", 1L, 50, 7, ownerId);
+        bank.putAccount(account);
+        MonthEndEngine engine = new MonthEndEngine(1, true);
+        bank.useMonthEndEngine(engine);
+        bank.runMonthEnd();
+
+        MonthEndEngine.MonthEnd monthEnd = engine.apply(List.of(account), register);
+        assertThat(engine.getLastDormantCount(), is(1));
+        // lands between the dormant roll forward and the statement
+        account.depositCents(1_00, "DEP");
+        Statement statement = monthEnd.statementFor(account);
+
+        assertThat(names(statement), is(List.of("END CHECK", "DEP")));
+        assertThat(statement.balanceCents(), is(51_00L));
+        assertThat(account.getCurrentPeriodEntries().isEmpty(), is(true));
+    }
+
+    @Test
+    public void givenWithdrawalBelowMinimumAfterDormancyCheck_whenStatementMade_thenFeeCharged() throws Exception {
+        Register register = new Register();
+        Bank bank = createBank(register, 50);
+        MonthEndEngine engine = new MonthEndEngine(1, true);
+        bank.useMonthEndEngine(engine);
+        bank.runMonthEnd();
+        Account checking = bank.getAccount(1L);
+
+        MonthEndEngine.MonthEnd monthEnd = engine.apply(List.of(checking), register);
+        assertThat(engine.getLastDormantCount(), is(1));
+        // goes below its minimum of 10 between the dormant roll forward and the statement
+        checking.withdrawCents(45_00, "W/D");
+        Statement statement = monthEnd.statementFor(checking);
+
+        assertThat(names(statement), is(List.of("END CHECK", "W/D", "MINIMUM BALANCE CHARGE")));
+        assertThat(statement.balanceCents(), is(4_00L));
+        assertThat(checking.getBalanceCents(), is(4_00L));
+    }
+
+    private static List<Long> amounts(Statement statement) {
+        return statement.entries().stream().map(RegisterEntry::amountCents).collect(Collectors.toList());
+    }
+
+    private static List<String> names(Statement statement) {
+        return statement.entries().stream().map(RegisterEntry::entryName).collect(Collectors.toList());
+    }
+}
@@ -14,7 +14,6 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
-import java.util.stream.Collectors;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -135,7 +134,7 @@ public class Obfuscator {
                     newAccountId,
                     oldEntry.entryName(),
                     // Can't change amount because integration tests fail
-                    oldEntry.amount(),
+                    oldEntry.amountCents(),
                     shiftDates(oldEntry.date())
             );
 
@@ -180,7 +179,10 @@ public class Obfuscator {
         Obfuscator.class.getClassLoader().setClassAssertionStatus("Obfuscator", true);
         logger.info("Loading Production Records");
         Persister.setPersisterPropertiesFile("persister_prod.properties");
+        // CSV files in and out whatever register format is configured, the integ files are CSV
+        StorageBackend storage = new CsvStorageBackend();
         Bank bank = new Bank();
+        bank.useStorage(storage);
         bank.loadAllRecords();
 
         logger.info("Obfuscating records");
@@ -200,16 +202,9 @@ public class Obfuscator {
         // old version of file is cached so we need to override prefix (b/c file changed
         // is not the one on classpath)
         Persister.setPersistedFileSuffix("_prod");
-        // writeReords is cribbed from Bank.saveALlRecords(), refactor into common
-        // method?
-        Persister.writeRecordsToCsv(obfuscatedRecords.owners(), "owners");
-        Map<Class<? extends Account>, List<Account>> splitAccounts = obfuscatedRecords
-                .accounts()
-                .stream()
-                .collect(Collectors.groupingBy(rec -> rec.getClass()));
-        Persister.writeRecordsToCsv(splitAccounts.get(SavingsAccount.class), "savings");
-        Persister.writeRecordsToCsv(splitAccounts.get(CheckingAccount.class), "checking");
-        Persister.writeRecordsToCsv(obfuscatedRecords.registerEntries(), "register");
+        storage.writeOwners(obfuscatedRecords.owners());
+        storage.writeAccounts(obfuscatedRecords.accounts());
+        storage.writeRegisterEntries(List.copyOf(obfuscatedRecords.registerEntries()), -1);
 
         logger.info("Original   record counts: {} owners, {} accounts, {} registers",
                 originalRecords.owners().size(),
@@ -0,0 +1,72 @@
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Bank.loadAllRecords() against loadAllRecords(threads) on a generated dataset, with the
+ * register saved as register.csv and as a journal. Files go to the directory in
+ * persister.properties.
+ *
+ * Usage: {@code ./gradlew runBenchmark -Pbenchmark=ParallelLoadBenchmark -PbenchmarkArgs="10000000"}
+ * where the arguments are numbers of register entries. 10M entries need about 4GB of heap.
+ */
+public class ParallelLoadBenchmark {
+    static final int ENTRIES_PER_ACCOUNT = 100;
+
+    public static void main(String[] args) throws Exception {
+        BenchmarkUtils.quietLogging();
+        int cores = Runtime.getRuntime().availableProcessors();
+        for (long size : BenchmarkUtils.sizes(args, 10_000_000)) {
+            Bank bank = createBank((int) size);
+            System.out.printf("%n%,d register entries, %,d accounts, %d cores%n",
+                    bank.getAllRegisterEntries().size(), bank.getAllAccounts().size(), cores);
+            for (String format : List.of("csv", Persister.REGISTER_FORMAT_JOURNAL)) {
+                Persister.setRegisterFormat(format);
+                bank.saveAllRecords();
+                double sequential = 0;
+                for (int threads = 1; threads <= Math.max(4, cores); threads *= 2) {
+                    // the first load of each is a warm-up
+                    load(bank, threads);
+                    double millis = load(bank, threads);
+                    if (threads == 1) {
+                        sequential = millis;
+                    }
+                    System.out.printf("  %-7s %2d threads: %,8.0f ms  (%.1fx)%n", format, threads, millis, sequential / millis);
+                }
+            }
+            Persister.setRegisterFormat(null);
+        }
+        Account.useIndividualRegisters();
+    }
+
+    static double load(Bank bank, int threads) throws Exception {
+        bank.clearAllRecords();
+        long start = System.nanoTime();
+        bank.loadAllRecords(threads);
+        return (System.nanoTime() - start) / 1e6;
+    }
+
+    static Bank createBank(int entries) throws Exception {
+        Bank bank = new Bank(new ColumnarRegister());
+        int owners = Math.max(1, entries / 1000);
+        for (long id = 0; id < owners; id++) {
+            bank.putOwner(new Owner("cust " + id, id, new Date(), "" + id, id + " Main St", null, null, null, null));
+        }
+        int accounts = Math.max(1, entries / ENTRIES_PER_ACCOUNT);
+        for (long id = 0; id < accounts; id++) {
+            bank.putAccount((id % 2 == 0)
+                    ? new SavingsAccount("savings " + id, id, 1000, 0.02, id % owners)
+                    : new CheckingAccount("checking " + id, id, 1000, 0, id % owners));
+        }
+        List<Posting> batch = new ArrayList<>();
+        for (int i = accounts; i < entries; i++) {
+            batch.add((i % 2 == 0) ? Posting.deposit(i % accounts, 1_00) : Posting.withdrawal(i % accounts, 50));
+            if (batch.size() == 100_000) {
+                bank.applyBatch(batch);
+                batch.clear();
+            }
+        }
+        bank.applyBatch(batch);
+        return bank;
+    }
+}
@@ -0,0 +1,67 @@
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reconciliation speed for a bank held in memory, saved as register.csv and saved as a
+ * register journal, with 1, 2, 4 ... threads. Files go to the directory in persister.properties.
+ *
+ * Usage: {@code ./gradlew runBenchmark -Pbenchmark=ReconcilerBenchmark -PbenchmarkArgs="1000000 10000000"}
+ * where the arguments are numbers of register entries.
+ */
+public class ReconcilerBenchmark {
+    static final int ENTRIES_PER_ACCOUNT = 100;
+
+    public static void main(String[] args) throws Exception {
+        BenchmarkUtils.quietLogging();
+        int cores = Runtime.getRuntime().availableProcessors();
+        for (long size : BenchmarkUtils.sizes(args, 1_000_000)) {
+            Bank bank = createBank((int) size);
+            System.out.printf("%n%,d register entries, %,d accounts, %d cores%n",
+                    bank.getAllRegisterEntries().size(), bank.getAllAccounts().size(), cores);
+            run("in memory", cores, r -> r.reconcile(bank));
+
+            Persister.setRegisterFormat("csv");
+            bank.saveAllRecords();
+            run("register.csv", cores, Reconciler::reconcileSavedRecords);
+
+            Persister.setRegisterFormat(Persister.REGISTER_FORMAT_JOURNAL);
+            bank.saveAllRecords();
+            run("register journal", cores, Reconciler::reconcileSavedRecords);
+            Persister.setRegisterFormat(null);
+        }
+        Account.useIndividualRegisters();
+    }
+
+    interface Run {
+        Reconciler.Report reconcile(Reconciler reconciler) throws Exception;
+    }
+
+    static void run(String label, int cores, Run run) throws Exception {
+        for (int threads = 1; threads <= cores; threads *= 2) {
+            Reconciler reconciler = new Reconciler(threads);
+            // the first run is a warm-up
+            run.reconcile(reconciler);
+            Reconciler.Report report = run.reconcile(reconciler);
+            if (!report.isReconciled()) {
+                throw new IllegalStateException("Not reconciled: " + report);
+            }
+            System.out.printf("  %-17s %2d threads: %,8.0f ms  %,12.0f entries/s%n", label, threads,
+                    (report.balancesNanos() + report.registerNanos()) / 1e6, report.entriesPerSecond());
+        }
+    }
+
+    static Bank createBank(int entries) throws Exception {
+        int accounts = Math.max(1, entries / ENTRIES_PER_ACCOUNT);
+        Bank bank = BankTestFixture.createCheckingBank(accounts, 1000);
+        List<Posting> batch = new ArrayList<>();
+        for (int i = accounts; i < entries; i++) {
+            batch.add((i % 2 == 0) ? Posting.deposit(i % accounts, 1_00) : Posting.withdrawal(i % accounts, 50));
+            if (batch.size() == 100_000) {
+                bank.applyBatch(batch);
+                batch.clear();
+            }
+        }
+        bank.applyBatch(batch);
+        return bank;
+    }
+}
@@ -0,0 +1,188 @@
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.assertThat;
+
+public class ReconcilerTest {
+    static final int ACCOUNTS = 500;
+
+    @Before
+    public void useTemporaryDir() {
+        Persister.setPersisterPropertiesFile("persister.properties");
+    }
+
+    @After
+    public void resetState() {
+        Account.useIndividualRegisters();
+        Persister.resetPersistedFileNameAndDir();
+    }
+
+    /** deposits, withdrawals, checks and a month end, so there are END CHECK entries to skip */
+    static Bank createBank() throws Exception {
+        return createBank(new Bank());
+    }
+
+    static Bank createBank(Bank bank) throws Exception {
+        BankTestFixture.populate(bank, ACCOUNTS, (id, ownerId) -> (id % 2 == 0)
+                ? new SavingsAccount("savings " + id, id, 100, 0.05, ownerId)
+                : new CheckingAccount("checking " + id, id, 100, 1000 + id, ownerId));
+        for (long id = 0; id < ACCOUNTS; id++) {
+            Account account = bank.getAccount(id);
+            account.depositCents(id, "DEP");
+            account.withdrawCents(3_00, "W/D");
+            if (account instanceof CheckingAccount checking) {
+                checking.writeCheck("payee", 1.25, new Date());
+            }
+        }
+        bank.runMonthEnd();
+        return bank;
+    }
+
+    @Test
+    public void givenBank_whenReconcile_thenEveryAccountMatchesAndEndChecksExcluded() throws Exception {
+        Bank bank = createBank();
+        Reconciler.Report report = new Reconciler(4).reconcile(bank);
+        assertThat(report.toString(), report.isReconciled(), is(true));
+        assertThat(report.accounts(), is(ACCOUNTS));
+        assertThat(report.excludedEntries(), is((long) ACCOUNTS / 2));
+        assertThat(report.entries(), is((long) bank.getAllRegisterEntries().size()));
+    }
+
+    @Test
+    public void givenStripedWritesOnOtherThreads_whenReconcile_thenReconciledEveryTime() throws Exception {
+        Account.useConcurrency(Account.Concurrency.STRIPED);
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        try {
+            Bank bank = createBank(new Bank(new ConcurrentRegister()));
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 2; t++) {
+                futures.add(pool.submit(() -> {
+                    for (int i = 0; i < 5_000; i++) {
+                        long id = i % ACCOUNTS;
+                        if (i % 2 == 0) {
+                            bank.getAccount(id).depositCents(1_00, "DEP");
+                        } else {
+                            bank.transfer(id, (id + 1) % ACCOUNTS, 50);
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (int i = 0; i < 10; i++) {
+                Reconciler.Report report = new Reconciler(2).reconcile(bank);
+                assertThat(report.toString(), report.isReconciled(), is(true));
+                assertThat(report.consistent(), is(true));
+            }
+            for (Future<?> f : futures) {
+                f.get(60, TimeUnit.SECONDS);
+            }
+        } finally {
+            pool.shutdownNow();
+            Account.useConcurrency(Account.Concurrency.NONE);
+        }
+    }
+
+    @Test
+    public void givenBalanceChangedWithoutRegisterEntry_whenReconcile_thenThatAccountReported() throws Exception {
+        Bank bank = createBank();
+        bank.getAccount(7L).adjustBalance(5);
+        Reconciler.Report report = new Reconciler(4).reconcile(bank);
+        assertThat(report.mismatches().size(), is(1));
+        Reconciler.Mismatch mismatch = report.mismatches().get(0);
+        assertThat(mismatch.accountId(), is(7L));
+        assertThat(mismatch.knownAccount(), is(true));
+        assertThat(mismatch.differenceCents(), is(-5L));
+        assertThat(mismatch.entryCount(), is(4L));
+    }
+
+    @Test
+    public void givenSavedCsv_whenReconcileSavedRecords_thenMatchesAndUnknownAccountReported() throws Exception {
+        Bank bank = createBank();
+        bank.saveAllRecords();
+        Reconciler.Report report = new Reconciler(4).reconcileSavedRecords();
+        assertThat(report.toString(), report.isReconciled(), is(true));
+        assertThat(report.accounts(), is(ACCOUNTS));
+
+        String orphan = new RegisterEntry(Register.nextId(), 99_999L, "DEP", 12_34, new Date()).toCSV();
+        Files.writeString(Paths.get(Persister.getFilename("register")), orphan + System.lineSeparator(), StandardOpenOption.APPEND);
+        report = new Reconciler(4).reconcileSavedRecords();
+        assertThat(report.mismatches().size(), is(1));
+        assertThat(report.mismatches().get(0).accountId(), is(99_999L));
+        assertThat(report.mismatches().get(0).knownAccount(), is(false));
+        assertThat(report.mismatches().get(0).registerCents(), is(12_34L));
+    }
+
+    @Test
+    public void givenIdSavedAsBothSavingsAndChecking_whenReconcileSavedRecords_thenSecondRecordReported() throws Exception {
+        Bank bank = createBank();
+        bank.saveAllRecords();
+        long savingsId = 4L;
+        long savingsBalance = bank.getAccount(savingsId).getBalanceCents();
+        // the same balance, so only the second record itself is wrong
+        String duplicate = new CheckingAccount("checking copy", savingsId, Money.toDouble(savingsBalance), 1,
+                BankTestFixture.OWNER_ID).toCSV();
+        Files.writeString(Paths.get(Persister.getFilename("checking")), duplicate + System.lineSeparator(), StandardOpenOption.APPEND);
+
+        Reconciler.Report report = new Reconciler(4).reconcileSavedRecords();
+        assertThat(report.accounts(), is(ACCOUNTS));
+        assertThat(report.mismatches().size(), is(1));
+        Reconciler.Mismatch mismatch = report.mismatches().get(0);
+        assertThat(mismatch.accountId(), is(savingsId));
+        assertThat(mismatch.knownAccount(), is(true));
+        assertThat(mismatch.balanceCents(), is(savingsBalance));
+        assertThat(mismatch.registerCents(), is(savingsBalance));
+    }
+
+    @Test
+    public void givenSavedJournal_whenReconcileSavedRecords_thenMatches() throws Exception {
+        Persister.setRegisterFormat(Persister.REGISTER_FORMAT_JOURNAL);
+        Bank bank = createBank();
+        bank.saveAllRecords();
+        Reconciler.Report report = new Reconciler(4).reconcileSavedRecords();
+        assertThat(report.toString(), report.isReconciled(), is(true));
+        assertThat(report.entries(), is(Persister.getRegisterJournal().recordCount()));
+    }
+
+    @Test
+    public void givenSavedBankWithArchive_whenReconcileSavedRecords_thenArchivedSegmentsIncluded() throws Exception {
+        Path archiveDir = Files.createTempDirectory("archive");
+        try {
+            Bank bank = new Bank();
+            RegisterArchive archive = new RegisterArchive(archiveDir);
+            bank.useArchive(archive);
+            createBank(bank);
+            bank.getAccount(3L).depositCents(2_00, "DEP");
+            bank.saveAllRecords();
+            assertThat(archive.getSegments().size(), is(1));
+
+            // the saved register only has the open period
+            assertThat(new Reconciler(4).reconcileSavedRecords().isReconciled(), is(false));
+            Reconciler.Report report = new Reconciler(4).reconcileSavedRecords(archive);
+            assertThat(report.toString(), report.isReconciled(), is(true));
+            assertThat(report.entries(), is(archive.getEntryCount() + 1));
+        } finally {
+            try (Stream<Path> files = Files.walk(archiveDir)) {
+                for (Path p : files.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+                    Files.delete(p);
+                }
+            }
+        }
+    }
+}
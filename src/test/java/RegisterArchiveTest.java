@@ -0,0 +1,235 @@
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class RegisterArchiveTest {
+    Path archiveDir;
+    Bank bank;
+
+    @Before
+    public void createBank() throws Exception {
+        archiveDir = Files.createTempDirectory("archive");
+        bank = new Bank();
+        bank.useArchive(new RegisterArchive(archiveDir));
+        long ownerId = bank.putOwner(BankTestFixture.newOwner());
+        bank.putAccount(new SavingsAccount("savings", 100L, 100, 0, ownerId));
+        bank.putAccount(new CheckingAccount("checking", 200L, 200, 1, ownerId));
+    }
+
+    @After
+    public void resetState() throws IOException {
+        Account.useIndividualRegisters();
+        Persister.resetPersistedFileNameAndDir();
+        try (Stream<Path> files = Files.walk(archiveDir)) {
+            for (Path p : files.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+                Files.delete(p);
+            }
+        }
+    }
+
+    @Test
+    public void givenMonthEnd_whenPeriodSealed_thenOnlyOpenPeriodInRegisterAndSummariesMatch() throws Exception {
+        bank.getAccount(100L).deposit(50);
+        List<RegisterEntry> beforeMonthEnd = List.copyOf(bank.getAllRegisterEntries());
+        bank.runMonthEnd();
+
+        RegisterArchive archive = bank.getArchive();
+        assertThat(archive.getSegments().size(), is(1));
+        RegisterArchive.Segment segment = archive.getSegments().get(0);
+        // the sealed period includes the entries month end itself added
+        assertTrue(segment.entryCount() > beforeMonthEnd.size());
+        assertThat(bank.getAccount(100L).getRegister().getEntries().isEmpty(), is(true));
+        assertThat(segment.accounts().get(100L).entryCount(), is(2L));
+        assertThat(archive.getTotalCentsForAccount(100L), is(15000L));
+
+        // new entries go into the open period but queries still see the sealed ones
+        bank.getAccount(100L).deposit(25);
+        List<RegisterEntry> all = List.copyOf(bank.getAllRegisterEntries());
+        assertThat(all.size(), is((int) segment.entryCount() + 1));
+        assertThat(all.containsAll(beforeMonthEnd), is(true));
+        List<Double> savingsAmounts = bank.getRegisterEntriesForAccount(100L).stream()
+                .map(RegisterEntry::amount).collect(Collectors.toList());
+        assertThat(savingsAmounts, is(List.of(100d, 50d, 25d)));
+        assertThat(bank.getRegisterEntriesForAccountBetween(100L, new Date(0), new Date(Long.MAX_VALUE)).count(), is(3L));
+    }
+
+    @Test
+    public void givenSealedSegments_whenArchiveReopened_thenSummariesReloaded() throws Exception {
+        bank.runMonthEnd();
+        bank.getAccount(200L).withdraw(10);
+        bank.runMonthEnd();
+
+        RegisterArchive reopened = new RegisterArchive(archiveDir);
+        assertThat(reopened.getSegments(), is(bank.getArchive().getSegments()));
+        assertThat(reopened.getEntries().count(), is(reopened.getEntryCount()));
+        assertThat(reopened.getTotalCentsForAccount(100L), is(10000L));
+    }
+
+    @Test
+    public void givenInterleavedAccounts_whenSealed_thenEachAccountReadFromItsOwnRecords() throws Exception {
+        Path dir = archiveDir.resolve("interleaved");
+        RegisterArchive archive = new RegisterArchive(dir);
+        List<RegisterEntry> entries = List.of(
+                new RegisterEntry(1, 7, "OPEN", 100, new Date(1000)),
+                new RegisterEntry(2, 3, "OPEN", 200, new Date(1000)),
+                new RegisterEntry(3, 7, "DEP", 10, new Date(2000)),
+                new RegisterEntry(4, 3, "W/D", -20, new Date(3000)),
+                new RegisterEntry(5, 7, "DEP", 30, new Date(4000)));
+        RegisterArchive.Segment segment = archive.seal(entries);
+
+        assertThat(segment.accounts().get(3L), is(new RegisterArchive.AccountSummary(2, 180, 0)));
+        assertThat(segment.accounts().get(7L), is(new RegisterArchive.AccountSummary(3, 140, 2)));
+        assertThat(archive.getEntriesForAccount(7).map(RegisterEntry::id).collect(Collectors.toList()),
+                is(List.of(1L, 3L, 5L)));
+        assertThat(archive.getEntriesForAccountBetween(7, new Date(2000), new Date(5000))
+                .map(RegisterEntry::id).collect(Collectors.toList()), is(List.of(3L, 5L)));
+        assertThat(archive.getEntriesBetween(new Date(0), new Date(5000))
+                .map(RegisterEntry::id).collect(Collectors.toList()), is(List.of(1L, 2L, 3L, 4L, 5L)));
+        assertThat(archive.getEntries().count(), is(5L));
+        // a lazy read stops at the first chunk
+        assertThat(archive.getEntries().findFirst().get().id(), is(2L));
+    }
+
+    @Test
+    public void givenSegmentInIdOrder_whenArchiveOpened_thenAccountsReadByScanning() throws Exception {
+        Path dir = Files.createDirectories(archiveDir.resolve("id-order"));
+        new RegisterJournal(dir.resolve("segment-000001.journal")).rewrite(List.of(
+                new RegisterEntry(1, 7, "OPEN", 100, new Date(1000)),
+                new RegisterEntry(2, 3, "OPEN", 200, new Date(1000)),
+                new RegisterEntry(3, 7, "DEP", 10, new Date(2000))));
+        RegisterArchive archive = new RegisterArchive(dir);
+
+        RegisterArchive.Segment segment = archive.getSegments().get(0);
+        assertThat(segment.accounts().get(7L).firstRecord(), is(-1L));
+        assertThat(segment.accounts().get(3L).firstRecord(), is(1L));
+        assertThat(archive.getEntriesForAccount(7).map(RegisterEntry::id).collect(Collectors.toList()),
+                is(List.of(1L, 3L)));
+        assertThat(archive.getEntriesForAccount(3).map(RegisterEntry::id).collect(Collectors.toList()),
+                is(List.of(2L)));
+    }
+
+    @Test
+    public void givenSealedSegment_whenRangeOutsideSegment_thenNothingRead() throws Exception {
+        bank.runMonthEnd();
+        RegisterArchive.Segment segment = bank.getArchive().getSegments().get(0);
+        Date afterSegment = new Date(segment.maxDate() + 1);
+        assertThat(bank.getArchive().getEntriesBetween(afterSegment, new Date(Long.MAX_VALUE)).count(), is(0L));
+        assertThat(bank.getArchive().getEntriesBetween(new Date(segment.minDate()), afterSegment).count(),
+                is(segment.entryCount()));
+    }
+
+    @Test
+    public void givenBackdatedEntryInOpenPeriod_whenEntriesBetween_thenOldestFirstAcrossArchive() throws Exception {
+        bank.getAccount(100L).withdraw(1, "W/D", new Date(5000));
+        bank.getAccount(200L).withdraw(2, "W/D", new Date(1000));
+        bank.runMonthEnd();
+        bank.getAccount(100L).withdraw(3, "W/D", new Date(3000));
+
+        List<Long> dates = bank.getRegisterEntriesBetween(new Date(0), new Date(10_000))
+                .map(e -> e.date().getTime()).collect(Collectors.toList());
+        assertThat(dates, is(List.of(1000L, 3000L, 5000L)));
+        List<Double> savingsAmounts = bank.getRegisterEntriesForAccountBetween(100L, new Date(0), new Date(10_000))
+                .map(RegisterEntry::amount).collect(Collectors.toList());
+        assertThat(savingsAmounts, is(List.of(-3d, -1d)));
+    }
+
+    @Test
+    public void givenSealedPeriod_whenSavedAndLoadedWithArchive_thenHistoryAddsUpToBalances() throws Exception {
+        Persister.setPersisterPropertiesFile("persister.properties");
+        bank.getAccount(100L).deposit(50);
+        bank.runMonthEnd();
+        bank.getAccount(200L).withdraw(10);
+        List<RegisterEntry> history = List.copyOf(bank.getAllRegisterEntries());
+        bank.saveAllRecords();
+
+        // the saved register only holds the open period
+        Bank registerOnly = new Bank();
+        registerOnly.loadAllRecords();
+        assertThat(registerOnly.getAllRegisterEntries().size(), is(1));
+
+        Bank loaded = new Bank();
+        loaded.useArchive(new RegisterArchive(archiveDir));
+        loaded.loadAllRecords();
+        assertThat(List.copyOf(loaded.getAllRegisterEntries()), is(history));
+        for (Account account : loaded.getAllAccounts()) {
+            long total = loaded.getRegisterEntriesForAccount(account.getId()).stream()
+                    .filter(e -> !e.entryName().equals(Reconciler.EXCLUDED_ENTRY))
+                    .mapToLong(RegisterEntry::amountCents).sum();
+            assertThat(total, is(account.getBalanceCents()));
+        }
+    }
+
+    @Test
+    public void givenDepositsDuringMonthEnd_whenPeriodsSealed_thenEveryDepositArchivedOrInNextPeriod() throws Exception {
+        int accounts = 200;
+        Account.useConcurrency(Account.Concurrency.STRIPED);
+        ExecutorService pool = Executors.newSingleThreadExecutor();
+        try {
+            Bank concurrent = BankTestFixture.createBank(new ConcurrentRegister(), accounts,
+                    (id, ownerId) -> new SavingsAccount("savings " + id, id, 100, 0, ownerId));
+            concurrent.useArchive(new RegisterArchive(archiveDir.resolve("concurrent")));
+            AtomicBoolean running = new AtomicBoolean(true);
+            Future<Integer> depositor = pool.submit(() -> {
+                int deposits = 0;
+                while (running.get()) {
+                    concurrent.getAccount(deposits % accounts).depositCents(1, "DEP");
+                    deposits++;
+                }
+                return deposits;
+            });
+            for (int i = 0; i < 5; i++) {
+                concurrent.runMonthEnd();
+            }
+            running.set(false);
+            int deposits = depositor.get(60, TimeUnit.SECONDS);
+
+            long depositEntries = concurrent.getAllRegisterEntries().stream()
+                    .filter(e -> e.entryName().equals("DEP")).count();
+            assertThat(depositEntries, is((long) deposits));
+            RegisterArchive archive = concurrent.getArchive();
+            for (Account account : concurrent.getAllAccounts()) {
+                List<StatementPeriod> periods = account.getStatementPeriods();
+                // the archive holds exactly the closed periods, later deposits are in the open one
+                assertThat(archive.getTotalCentsForAccount(account.getId()),
+                        is(periods.get(periods.size() - 1).closingBalanceCents()));
+                StatementPeriod next = account.generateStatement().period();
+                assertThat(next.closingBalanceCents(), is(account.getBalanceCents()));
+            }
+            Reconciler.Report report = new Reconciler().reconcile(concurrent);
+            assertThat(report.toString(), report.isReconciled(), is(true));
+        } finally {
+            pool.shutdownNow();
+            Account.useConcurrency(Account.Concurrency.NONE);
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void givenAtomicModeWithConcurrentRegister_whenMonthEndWithArchive_thenRefused() throws Exception {
+        Account.useConcurrency(Account.Concurrency.ATOMIC);
+        try {
+            Bank concurrent = new Bank(new ConcurrentRegister());
+            concurrent.useArchive(bank.getArchive());
+            concurrent.runMonthEnd();
+        } finally {
+            Account.useConcurrency(Account.Concurrency.NONE);
+        }
+    }
+}
@@ -0,0 +1,43 @@
+import java.util.Date;
+import java.util.Random;
+
+/**
+ * Compares per-account register lookups through the account index against a
+ * full scan of the register.
+ *
+ * Usage: {@code ./gradlew runBenchmark -Pbenchmark=RegisterBenchmark -PbenchmarkArgs="1000000 10000000"}
+ */
+public class RegisterBenchmark {
+    static final int ENTRIES_PER_ACCOUNT = 100;
+    static final int INDEX_LOOKUPS = 1_000_000;
+    static final int SCAN_LOOKUPS = 5;
+
+    public static void main(String[] args) {
+        for (long size : BenchmarkUtils.sizes(args, 1_000_000, 10_000_000)) {
+            run((int) size);
+        }
+    }
+
+    static void run(int size) {
+        final int accounts = Math.max(1, size / ENTRIES_PER_ACCOUNT);
+        final Random random = new Random(size);
+        Register register = new Register();
+        Date now = new Date();
+        for (int i = 0; i < size; i++) {
+            register.add(random.nextInt(accounts), "DEP", 100, now);
+        }
+        System.out.printf("%n%,d entries over %,d accounts%n", size, accounts);
+
+        // warm up the lookup path before measuring
+        BenchmarkUtils.nanosPerOp(INDEX_LOOKUPS, () -> register.getEntriesForAccount(random.nextInt(accounts)).size());
+        double indexed = BenchmarkUtils.nanosPerOp(INDEX_LOOKUPS,
+                () -> register.getEntriesForAccount(random.nextInt(accounts)).size());
+        System.out.printf("  indexed lookup: %,12.0f ns/lookup%n", indexed);
+
+        double scanned = BenchmarkUtils.nanosPerOp(SCAN_LOOKUPS, () -> {
+            long accountId = random.nextInt(accounts);
+            return register.getEntries().stream().filter(e -> e.accountId() == accountId).count();
+        });
+        System.out.printf("  full scan:      %,12.0f ns/lookup (%.0fx slower)%n", scanned, scanned / indexed);
+    }
+}
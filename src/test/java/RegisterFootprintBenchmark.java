@@ -0,0 +1,44 @@
+import java.util.Date;
+import java.util.Random;
+import java.util.function.Supplier;
+
+/**
+ * Compares the heap used by the ArrayList-backed Register against the ColumnarRegister
+ * when both hold the same entries.
+ *
+ * Usage: {@code ./gradlew runBenchmark -Pbenchmark=RegisterFootprintBenchmark -PbenchmarkArgs="1000000 10000000"}
+ */
+public class RegisterFootprintBenchmark {
+    static final int ENTRIES_PER_ACCOUNT = 100;
+    static final String[] NAMES = {"DEP", "W/D", "INTEREST", "MINIMUM BALANCE CHARGE"};
+
+    public static void main(String[] args) {
+        for (long size : BenchmarkUtils.sizes(args, 1_000_000, 10_000_000)) {
+            System.out.printf("%n%,d entries%n", size);
+            long listBytes = measure("ArrayList<RegisterEntry>", Register::new, (int) size);
+            long columnarBytes = measure("ColumnarRegister", ColumnarRegister::new, (int) size);
+            System.out.printf("  columnar uses %.1f%% of the list register's heap%n",
+                    100d * columnarBytes / listBytes);
+        }
+    }
+
+    static long measure(String label, Supplier<Register> registerSupplier, int size) {
+        long before = BenchmarkUtils.usedHeap();
+        Register register = registerSupplier.get();
+        populate(register, size);
+        long bytes = BenchmarkUtils.usedHeap() - before;
+        System.out.printf("  %-26s %14s  %6.1f bytes/entry  (%d entries)%n",
+                label, BenchmarkUtils.formatBytes(bytes), (double) bytes / size, register.getEntries().size());
+        return bytes;
+    }
+
+    static void populate(Register register, int size) {
+        Random random = new Random(size);
+        int accounts = Math.max(1, size / ENTRIES_PER_ACCOUNT);
+        long start = System.currentTimeMillis() - 365L * 24 * 60 * 60 * 1000;
+        for (int i = 0; i < size; i++) {
+            String name = (i % 5 == 0) ? "Check " + (i % 1000) : NAMES[i % NAMES.length];
+            register.add(random.nextInt(accounts), name, random.nextInt(100_000), new Date(start + i));
+        }
+    }
+}
@@ -0,0 +1,138 @@
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class RegisterJournalTest {
+    Path journalFile;
+    RegisterJournal journal;
+
+    @Before
+    public void createJournal() throws IOException {
+        journalFile = Files.createTempFile("register", ".journal");
+        Files.delete(journalFile);
+        journal = new RegisterJournal(journalFile);
+    }
+
+    @After
+    public void resetState() throws IOException {
+        Files.deleteIfExists(journalFile);
+        Account.useIndividualRegisters();
+        Persister.resetPersistedFileNameAndDir();
+    }
+
+    private List<RegisterEntry> readAll() throws IOException, SerializationException {
+        List<RegisterEntry> entries = new ArrayList<>();
+        journal.forEach(entries::add);
+        return entries;
+    }
+
+    @Test
+    public void givenEntries_whenAppendTwice_thenReadBackInOrder() throws Exception {
+        List<RegisterEntry> first = List.of(
+                new RegisterEntry(1, 100, "OPEN", 1050, new Date(1000)),
+                new RegisterEntry(2, 200, "MINIMUM BALANCE CHARGE", -500, new Date(2000)));
+        List<RegisterEntry> second = List.of(new RegisterEntry(3, 100, "Check 12", -125, null));
+
+        assertThat(journal.append(first), is(2L));
+        assertThat(journal.append(second), is(3L));
+        assertThat(journal.recordCount(), is(3L));
+
+        List<RegisterEntry> expected = new ArrayList<>(first);
+        expected.addAll(second);
+        assertThat(readAll(), is(expected));
+        assertThat(Files.size(journalFile), is((long) RegisterJournal.HEADER_SIZE + 3 * RegisterJournal.RECORD_SIZE));
+    }
+
+    @Test
+    public void givenJournal_whenTruncate_thenEmpty() throws Exception {
+        journal.append(List.of(new RegisterEntry(1, 100, "OPEN", 1000, new Date())));
+        journal.truncate();
+        assertThat(journal.recordCount(), is(0L));
+        assertThat(readAll().isEmpty(), is(true));
+    }
+
+    @Test
+    public void givenRewriteFails_whenRewrite_thenOldJournalKept() throws Exception {
+        List<RegisterEntry> saved = List.of(new RegisterEntry(1, 100, "OPEN", 1000, new Date(1000)));
+        journal.append(saved);
+        try {
+            journal.rewrite(List.of(new RegisterEntry(2, 100, "x".repeat(RegisterJournal.MAX_NAME_BYTES + 1), 1, new Date())));
+            fail("Expected the long name to be rejected");
+        } catch (SerializationException e) {
+            // expected
+        }
+        assertThat(readAll(), is(saved));
+        assertThat(Files.exists(journalFile.resolveSibling(journalFile.getFileName() + ".tmp")), is(false));
+
+        List<RegisterEntry> replacement = List.of(new RegisterEntry(3, 200, "DEP", 5, new Date(2000)));
+        assertThat(journal.rewrite(replacement), is(1L));
+        assertThat(readAll(), is(replacement));
+    }
+
+    @Test(expected = SerializationException.class)
+    public void givenCorruptNameLength_whenRead_thenException() throws Exception {
+        journal.append(List.of(new RegisterEntry(1, 100, "OPEN", 1000, new Date())));
+        try (FileChannel channel = FileChannel.open(journalFile, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.allocate(2).putShort(0, (short) 200), RegisterJournal.HEADER_SIZE + 32);
+        }
+        readAll();
+    }
+
+    @Test
+    public void givenNoJournal_whenRead_thenNothingRead() throws Exception {
+        assertThat(journal.recordCount(), is(0L));
+        assertThat(readAll().isEmpty(), is(true));
+    }
+
+    @Test(expected = SerializationException.class)
+    public void givenEntryNameTooLong_whenAppend_thenException() throws Exception {
+        journal.append(List.of(new RegisterEntry(1, 100, "x".repeat(RegisterJournal.MAX_NAME_BYTES + 1), 1000, new Date())));
+    }
+
+    @Test(expected = SerializationException.class)
+    public void givenNotAJournal_whenRead_thenException() throws Exception {
+        Files.writeString(journalFile, "id ! accountId ! entryName ! amount ! date ! version\n1 ! 1 ! OPEN ! 1 ! 1 ! v1\n");
+        readAll();
+    }
+
+    @Test
+    public void givenJournalFormat_whenSaveTwice_thenOnlyNewEntriesAppendedAndLoadIsEqual() throws Exception {
+        Persister.setPersisterPropertiesFile("persister.properties");
+        Persister.setRegisterFormat(Persister.REGISTER_FORMAT_JOURNAL);
+        Bank bank = new Bank();
+        long ownerId = bank.putOwner(BankTestFixture.newOwner());
+        bank.putAccount(new SavingsAccount("savings", 100L, 100, 0.01, ownerId));
+        bank.putAccount(new CheckingAccount("checking", 200L, 200, 1, ownerId));
+        bank.saveAllRecords();
+        RegisterJournal bankJournal = Persister.getRegisterJournal();
+        assertThat(bankJournal.recordCount(), is(2L));
+
+        bank.getAccount(100L).deposit(50);
+        bank.getAccount(200L).withdraw(25);
+        bank.saveAllRecords();
+        assertThat(bankJournal.recordCount(), is(4L));
+
+        var origRegisterEntries = List.copyOf(bank.getAllRegisterEntries());
+        bank.loadAllRecords();
+        assertThat(List.copyOf(bank.getAllRegisterEntries()), is(origRegisterEntries));
+
+        // a fresh bank doesn't know what's in the journal so it rewrites it
+        Bank other = new Bank();
+        other.saveAllRecords();
+        assertThat(bankJournal.recordCount(), is(0L));
+    }
+}
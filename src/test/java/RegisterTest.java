@@ -0,0 +1,166 @@
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class RegisterTest {
+    Register register;
+
+    @Before
+    public void createRegister() {
+        register = new Register();
+    }
+
+    @Test
+    public void givenEntriesForSeveralAccounts_whenGetEntriesForAccount_thenOnlyThatAccountsEntriesInOrder() {
+        register.add(1, "OPEN", 10000, new Date());
+        register.add(2, "OPEN", 20000, new Date());
+        register.add(1, "DEP", 1000, new Date());
+        register.add(2, "W/D", -2000, new Date());
+        register.add(1, "W/D", -500, new Date());
+
+        List<RegisterEntry> entries = register.getEntriesForAccount(1);
+        assertThat("Account 1 should have 3 entries: " + entries, entries.size(), is(3));
+        assertThat(entries.get(0).entryName(), is("OPEN"));
+        assertThat(entries.get(1).entryName(), is("DEP"));
+        assertThat(entries.get(2).entryName(), is("W/D"));
+        for (RegisterEntry e : entries) {
+            assertThat(e.accountId(), is(1L));
+        }
+        assertThat(register.getEntries().size(), is(5));
+    }
+
+    @Test
+    public void givenVerbatimEntries_whenGetEntriesForAccount_thenEntriesAreIndexed() {
+        register.addRegisterEntry(new RegisterEntry(15, 100, "OPEN", 0, new Date()));
+        register.addRegisterEntry(new RegisterEntry(16, 200, "OPEN", 0, new Date()));
+
+        assertThat(register.getEntriesForAccount(100).size(), is(1));
+        assertThat(register.getEntriesForAccount(100).get(0).id(), is(15L));
+    }
+
+    @Test
+    public void givenUnknownAccount_whenGetEntriesForAccount_thenEmpty() {
+        register.add(1, "OPEN", 10000, new Date());
+        assertTrue(register.getEntriesForAccount(99).isEmpty());
+    }
+
+    @Test
+    public void givenEntries_whenClear_thenIndexIsEmpty() {
+        register.add(1, "OPEN", 10000, new Date());
+        register.clear();
+        assertTrue(register.getEntries().isEmpty());
+        assertTrue(register.getEntriesForAccount(1).isEmpty());
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void givenEntriesForAccount_whenModified_thenException() {
+        register.add(1, "OPEN", 10000, new Date());
+        register.getEntriesForAccount(1).clear();
+    }
+
+    @Test
+    public void givenEntriesOnDifferentDates_whenGetEntriesBetween_thenOnlyEntriesInRangeOldestFirst() {
+        register.add(1, "DEP", 100, new Date(3000));
+        register.add(2, "DEP", 200, new Date(1000));
+        register.add(1, "DEP", 300, new Date(2000));
+        register.add(1, "DEP", 400, new Date(4000));
+
+        List<Double> amounts = register.getEntriesBetween(new Date(1000), new Date(4000))
+                .map(RegisterEntry::amount).collect(Collectors.toList());
+        assertThat(amounts, is(List.of(2d, 3d, 1d)));
+
+        List<Double> accountAmounts = register.getEntriesForAccountBetween(1, new Date(2000), new Date(5000))
+                .map(RegisterEntry::amount).collect(Collectors.toList());
+        assertThat(accountAmounts, is(List.of(3d, 1d, 4d)));
+        assertThat(register.getEntriesForAccountBetween(3, new Date(0), new Date(5000)).count(), is(0L));
+    }
+
+    @Test
+    public void givenPostings_whenAddAll_thenConsecutiveIdsInPostingOrderForEveryRegister() {
+        List<Posting> postings = List.of(Posting.deposit(1, 500), Posting.withdrawal(2, 200), Posting.deposit(1, 100));
+        for (Register r : List.of(new Register(), new ColumnarRegister(), new ConcurrentRegister())) {
+            r.add(3, "OPEN", 0, new Date());
+            long firstId = r.addAll(postings, new Date(1000));
+            List<RegisterEntry> entries = r.getEntries();
+            assertThat(entries.size(), is(4));
+            for (int i = 0; i < postings.size(); i++) {
+                RegisterEntry entry = entries.get(i + 1);
+                assertThat(entry.id(), is(firstId + i));
+                assertThat(entry.amountCents(), is(postings.get(i).amountCents()));
+            }
+            assertThat(r.getEntriesForAccount(2).get(0).amountCents(), is(-200L));
+            assertThat(r.getEntriesForAccountBetween(1, new Date(1000), new Date(1001)).count(), is(2L));
+            assertThat(r.addAll(List.of(), new Date()), is(-1L));
+        }
+    }
+
+    @Test
+    public void givenEntries_whenGetEntriesForAccountAfter_thenOnlyLaterEntriesForEveryRegister() {
+        for (Register r : List.of(new Register(), new ColumnarRegister(), new ConcurrentRegister())) {
+            for (int i = 0; i < 10; i++) {
+                r.add(i % 2, "DEP", i, new Date());
+            }
+            List<RegisterEntry> account1 = r.getEntriesForAccount(1);
+            long afterId = account1.get(2).id();
+            List<RegisterEntry> after = r.getEntriesForAccountAfter(1, afterId);
+            assertThat(after, is(account1.subList(3, 5)));
+            assertThat(r.getEntriesForAccountAfter(1, 0).size(), is(5));
+            assertTrue(r.getEntriesForAccountAfter(1, account1.get(4).id()).isEmpty());
+            assertTrue(r.getEntriesForAccountAfter(7, 0).isEmpty());
+        }
+    }
+
+    @Test
+    public void givenSnapshot_whenMoreAddedAndCleared_thenSnapshotUnchangedForEveryRegister() {
+        for (Register r : List.of(new Register(), new ColumnarRegister(), new ConcurrentRegister())) {
+            for (int i = 0; i < 5; i++) {
+                r.add(i % 2, "DEP", i, new Date(1000 + i));
+            }
+            Collection<RegisterEntry> snapshot = r.getEntriesSnapshot();
+            List<RegisterEntry> before = List.copyOf(r.getEntries());
+            // enough to make the columnar register grow its columns
+            for (int i = 0; i < 5000; i++) {
+                r.add(2, "W/D", -i, new Date());
+            }
+            assertThat(List.copyOf(snapshot), is(before));
+            r.clear();
+            r.add(3, "OPEN", 0, new Date());
+            assertThat(snapshot.size(), is(5));
+            assertThat(List.copyOf(snapshot), is(before));
+        }
+    }
+
+    @Test
+    public void givenNameLongerThanJournalHolds_whenAdd_thenRejectedForEveryRegister() {
+        String longest = "x".repeat(Register.MAX_ENTRY_NAME_BYTES);
+        // 16 chars but 48 bytes of UTF-8
+        String wide = "\u20ac".repeat(16);
+        for (Register r : List.of(new Register(), new ColumnarRegister(), new ConcurrentRegister())) {
+            r.add(1, longest, 100, new Date());
+            for (String name : List.of(longest + "x", wide)) {
+                try {
+                    r.add(1, name, 100, new Date());
+                    fail("Expected " + name + " to be rejected");
+                } catch (IllegalArgumentException e) {
+                    // expected
+                }
+            }
+            assertThat(r.getEntries().size(), is(1));
+        }
+        try {
+            new Posting(1, wide, 100);
+            fail("Expected the posting to be rejected");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+}
@@ -0,0 +1,54 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Throughput of a mixed deposit/withdraw workload on a ShardedBank with 1, 2, 4 ... shards,
+ * up to twice the number of cores. Requests are submitted asynchronously in windows, like a
+ * front end with many requests in flight.
+ *
+ * Usage: {@code ./gradlew runBenchmark -Pbenchmark=ShardedBankBenchmark -PbenchmarkArgs="100000 1000000"}
+ * where the arguments are numbers of accounts.
+ */
+public class ShardedBankBenchmark {
+    static final int OPERATIONS = 2_000_000;
+    static final int IN_FLIGHT = 10_000;
+
+    public static void main(String[] args) throws Exception {
+        BenchmarkUtils.quietLogging();
+        int cores = Runtime.getRuntime().availableProcessors();
+        for (long size : BenchmarkUtils.sizes(args, 100_000)) {
+            System.out.printf("%n%,d accounts, %,d operations, %d cores%n", size, OPERATIONS, cores);
+            double baseline = 0;
+            for (int shards = 1; shards <= Math.max(2, cores * 2); shards *= 2) {
+                // the first run of each is a warm-up
+                run((int) size, shards);
+                double opsPerSecond = run((int) size, shards);
+                if (shards == 1) {
+                    baseline = opsPerSecond;
+                }
+                System.out.printf("  %3d shards: %,12.0f ops/s  (%.1fx)%n", shards, opsPerSecond, opsPerSecond / baseline);
+            }
+        }
+        Account.useIndividualRegisters();
+    }
+
+    static double run(int accounts, int shardCount) throws Exception {
+        try (ShardedBank bank = BankTestFixture.createShardedBank(shardCount, accounts, 1000)) {
+            Random random = new Random(accounts);
+            List<CompletableFuture<Void>> window = new ArrayList<>(IN_FLIGHT);
+            long start = System.nanoTime();
+            for (int i = 0; i < OPERATIONS; i++) {
+                long id = random.nextInt(accounts);
+                window.add((i % 2 == 0) ? bank.depositAsync(id, 100, "DEP") : bank.withdrawAsync(id, 100, "W/D"));
+                if (window.size() == IN_FLIGHT) {
+                    CompletableFuture.allOf(window.toArray(new CompletableFuture<?>[0])).join();
+                    window.clear();
+                }
+            }
+            CompletableFuture.allOf(window.toArray(new CompletableFuture<?>[0])).join();
+            return OPERATIONS / ((System.nanoTime() - start) / 1e9);
+        }
+    }
+}
@@ -0,0 +1,184 @@
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class ShardedBankTest {
+    static final int SHARDS = 4;
+    static final int ACCOUNTS = 100;
+    ShardedBank bank;
+
+    @Before
+    public void createBank() throws Exception {
+        bank = BankTestFixture.createShardedBank(SHARDS, ACCOUNTS, 100);
+    }
+
+    @After
+    public void resetState() {
+        bank.close();
+        Account.useIndividualRegisters();
+    }
+
+    private long registerTotal(long accountId) {
+        return bank.getRegisterEntriesForAccount(accountId).stream().mapToLong(RegisterEntry::amountCents).sum();
+    }
+
+    @Test
+    public void givenAccountsOnEveryShard_whenDepositsWithdrawalsAndTransfers_thenMoneyConservedAndRegistersMatch() throws Exception {
+        Random random = new Random(42);
+        List<CompletableFuture<Void>> pending = new ArrayList<>();
+        for (int i = 0; i < 10_000; i++) {
+            long id = random.nextInt(ACCOUNTS);
+            pending.add((i % 2 == 0) ? bank.depositAsync(id, 3_00, "DEP") : bank.withdrawAsync(id, 3_00, "W/D"));
+        }
+        CompletableFuture.allOf(pending.toArray(new CompletableFuture<?>[0])).join();
+        for (int i = 0; i < 500; i++) {
+            long from = random.nextInt(ACCOUNTS);
+            long to = (from + 1 + random.nextInt(ACCOUNTS - 1)) % ACCOUNTS;
+            long amount = 1 + random.nextInt(1_000);
+            long outId = bank.transfer(from, to, amount);
+            List<RegisterEntry> toEntries = bank.getRegisterEntriesForAccount(to);
+            RegisterEntry in = toEntries.get(toEntries.size() - 1);
+            assertThat(in.entryName(), is("TRANSFER FROM " + from));
+            assertThat(in.amountCents(), is(amount));
+            assertThat(in.id() > outId, is(true));
+        }
+
+        List<Account> accounts = bank.getAllAccounts();
+        assertThat(accounts.size(), is(ACCOUNTS));
+        long total = 0;
+        for (int i = 0; i < ACCOUNTS; i++) {
+            Account account = accounts.get(i);
+            assertThat(account.getId(), is((long) i));
+            assertThat(registerTotal(i), is(account.getBalanceCents()));
+            assertIdOrder(bank.getRegisterEntriesForAccount(i));
+            total += account.getBalanceCents();
+        }
+        assertThat(total, is(ACCOUNTS * 100_00L));
+        List<RegisterEntry> entries = bank.getAllRegisterEntries();
+        assertThat(entries.size(), is(ACCOUNTS + 10_000 + 2 * 500));
+        assertIdOrder(entries);
+    }
+
+    private static void assertIdOrder(List<RegisterEntry> entries) {
+        for (int i = 1; i < entries.size(); i++) {
+            assertThat(entries.get(i).id() > entries.get(i - 1).id(), is(true));
+        }
+    }
+
+    @Test
+    public void givenCreditFails_whenCrossShardTransfer_thenDebitReversed() throws Exception {
+        bank.close();
+        bank = BankTestFixture.populate(new ShardedBank(SHARDS) {
+            @Override
+            void credit(Bank shard, Register register, long accountId, String entryName, long amountCents, Date date)
+                    throws MissingRecordException {
+                if (entryName.startsWith("TRANSFER FROM")) {
+                    throw new IllegalStateException("credit failed");
+                }
+                super.credit(shard, register, accountId, entryName, amountCents, date);
+            }
+        }, ACCOUNTS, 100);
+        long to = 1;
+        while (bank.shardFor(to) == bank.shardFor(0L)) {
+            to++;
+        }
+        try {
+            bank.transfer(0L, to, 30_00);
+            fail("the credit should have failed");
+        } catch (IllegalStateException e) {
+            assertThat(e.getMessage(), is("credit failed"));
+        }
+
+        assertThat(bank.getAccount(0L).getBalanceCents(), is(100_00L));
+        assertThat(bank.getAccount(to).getBalanceCents(), is(100_00L));
+        List<RegisterEntry> fromEntries = bank.getRegisterEntriesForAccount(0L);
+        assertThat(fromEntries.size(), is(3));
+        assertThat(fromEntries.get(1).entryName(), is("TRANSFER TO " + to));
+        assertThat(fromEntries.get(2).entryName(), is("TRANSFER REVERSAL " + to));
+        assertThat(registerTotal(0L), is(100_00L));
+        assertThat(registerTotal(to), is(100_00L));
+    }
+
+    @Test
+    public void givenShards_whenRunMonthEnd_thenStatementForEveryAccountInIdOrder() throws Exception {
+        bank.deposit(7L, 5_00, "DEP");
+        List<Statement> statements = bank.runMonthEnd();
+        assertThat(statements.size(), is(ACCOUNTS));
+        for (int i = 0; i < ACCOUNTS; i++) {
+            assertThat(statements.get(i).accountName(), is("checking " + i));
+        }
+        assertThat(statements.get(7).balanceCents(), is(105_00L));
+    }
+
+    @Test(expected = MissingRecordException.class)
+    public void givenUnknownDestinationOnAnotherShard_whenTransfer_thenMissingRecordAndNothingMoved() throws Exception {
+        long unknown = ACCOUNTS;
+        while (bank.shardFor(unknown) == bank.shardFor(0L)) {
+            unknown++;
+        }
+        try {
+            bank.transfer(0L, unknown, 1_00);
+        } finally {
+            assertThat(bank.getAccount(0L).getBalanceCents(), is(100_00L));
+        }
+    }
+
+    private long accountOnAnotherShard(long accountId) {
+        long other = accountId + 1;
+        while (bank.shardFor(other) == bank.shardFor(accountId)) {
+            other++;
+        }
+        return other;
+    }
+
+    private Throwable failureOnShard(long accountId, ShardedBank.ShardTask<?> task) {
+        try {
+            bank.submit(accountId, task).join();
+        } catch (CompletionException e) {
+            return e.getCause();
+        }
+        fail("task on the shard of account " + accountId + " should have failed");
+        return null;
+    }
+
+    @Test
+    public void givenTaskOnOneShard_whenItWaitsForAnotherShard_thenRefusedAndNothingChanged() throws Exception {
+        long other = accountOnAnotherShard(0L);
+        assertThat(failureOnShard(0L, shard -> bank.getAccount(other)), instanceOf(IllegalStateException.class));
+        assertThat(failureOnShard(0L, shard -> {
+            bank.deposit(other, 1_00, "DEP");
+            return null;
+        }), instanceOf(IllegalStateException.class));
+        assertThat(failureOnShard(0L, shard -> bank.transfer(0L, other, 1_00)), instanceOf(IllegalStateException.class));
+        assertThat(failureOnShard(0L, shard -> bank.getAllAccounts()), instanceOf(IllegalStateException.class));
+        assertThat(failureOnShard(0L, shard -> {
+            shard.transfer(0L, other, 1_00);
+            return null;
+        }), instanceOf(MissingRecordException.class));
+
+        assertThat(bank.getAccount(0L).getBalanceCents(), is(100_00L));
+        assertThat(bank.getAccount(other).getBalanceCents(), is(100_00L));
+        assertThat(registerTotal(other), is(100_00L));
+    }
+
+    @Test
+    public void givenTaskOnAShard_whenItUsesItsOwnAccounts_thenRunsWithoutWaiting() throws Exception {
+        long balance = bank.submit(0L, shard -> {
+            bank.getAccount(0L).depositCents(5_00, "DEP");
+            return bank.getAccount(0L).getBalanceCents();
+        }).join();
+        assertThat(balance, is(105_00L));
+        assertThat(registerTotal(0L), is(105_00L));
+    }
+}
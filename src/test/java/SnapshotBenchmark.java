@@ -0,0 +1,112 @@
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * How long writers are held up while Bank.snapshot() runs in STRIPED mode. Writer threads
+ * deposit to random accounts while the main thread takes snapshots back to back; the writers
+ * record their slowest deposit and count the ones over a millisecond, reported per second of
+ * the run. The same is measured for copying the balances while holding every stripe, which is
+ * how snapshots used to be taken, so the two pauses can be compared. GC pauses and, with fewer
+ * cores than writers, preempted lock holders show up in both.
+ *
+ * Usage: {@code ./gradlew runBenchmark -Pbenchmark=SnapshotBenchmark -PbenchmarkArgs="10000 100000"}
+ * where the arguments are account counts.
+ */
+public class SnapshotBenchmark {
+    static final int WRITERS = 4;
+    static final int SNAPSHOTS = 20;
+    static final long SLOW_NANOS = 1_000_000;
+
+    public static void main(String[] args) throws Exception {
+        BenchmarkUtils.quietLogging();
+        long[] sizes = BenchmarkUtils.sizes(args, 10_000, 100_000);
+        System.out.printf("%d writers, %d snapshots per run, %d cores%n", WRITERS, SNAPSHOTS,
+                Runtime.getRuntime().availableProcessors());
+        System.out.printf("%-10s %-12s %14s %18s %14s %16s%n", "accounts", "snapshot", "ms/snapshot", "slowest deposit ms",
+                "over 1 ms/s", "deposits/s");
+        Account.useConcurrency(Account.Concurrency.STRIPED);
+        try {
+            for (long size : sizes) {
+                Bank bank = BankTestFixture.createBank(new ConcurrentRegister(), size, BankTestFixture.checking(100));
+                // first pass is a warm-up
+                run(bank, (int) size, false);
+                for (boolean allStripes : new boolean[] {false, true}) {
+                    Result result = run(bank, (int) size, allStripes);
+                    System.out.printf("%,-10d %-12s %14.2f %18.2f %,14.0f %,16.0f%n", size, allStripes ? "all stripes" : "versioned",
+                            result.snapshotMillis, result.slowestDepositMillis, result.slowDepositsPerSecond, result.depositsPerSecond);
+                }
+            }
+        } finally {
+            Account.useConcurrency(Account.Concurrency.NONE);
+            Account.useIndividualRegisters();
+        }
+    }
+
+    record Result(double snapshotMillis, double slowestDepositMillis, double slowDepositsPerSecond, double depositsPerSecond) {
+    }
+
+    static Result run(Bank bank, int accountCount, boolean allStripes) throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(WRITERS);
+        AtomicBoolean done = new AtomicBoolean();
+        List<Future<long[]>> writers = new ArrayList<>();
+        for (int t = 0; t < WRITERS; t++) {
+            final long seed = t;
+            writers.add(pool.submit(() -> {
+                Random random = new Random(seed);
+                long slowest = 0;
+                long slow = 0;
+                long deposits = 0;
+                while (!done.get()) {
+                    Account account = bank.getAccount(random.nextInt(accountCount));
+                    long start = System.nanoTime();
+                    account.depositCents(1, "DEP");
+                    long nanos = System.nanoTime() - start;
+                    slowest = Math.max(slowest, nanos);
+                    slow += (nanos > SLOW_NANOS) ? 1 : 0;
+                    deposits++;
+                }
+                return new long[] {slowest, slow, deposits};
+            }));
+        }
+        long checksum = 0;
+        long begin = System.nanoTime();
+        for (int i = 0; i < SNAPSHOTS; i++) {
+            checksum += allStripes ? copyHoldingAllStripes(bank) : bank.snapshot().getTotalBalanceCents();
+        }
+        long elapsed = System.nanoTime() - begin;
+        done.set(true);
+        long slowest = 0;
+        long slow = 0;
+        long deposits = 0;
+        for (Future<long[]> writer : writers) {
+            long[] result = writer.get();
+            slowest = Math.max(slowest, result[0]);
+            slow += result[1];
+            deposits += result[2];
+        }
+        pool.shutdown();
+        if (checksum == 42) {
+            System.out.println("(ignore) " + checksum);
+        }
+        return new Result(elapsed / 1e6 / SNAPSHOTS, slowest / 1e6, slow / (elapsed / 1e9), deposits / (elapsed / 1e9));
+    }
+
+    /** the balances copied the way snapshots used to, with every writer stopped */
+    static long copyHoldingAllStripes(Bank bank) {
+        LockStripes stripes = Account.getLockStripes();
+        BitSet locked = stripes.lockAll();
+        try {
+            long total = 0;
+            for (Account account : bank.getAllAccounts()) {
+                total += account.getBalanceCents();
+            }
+            return total;
+        } finally {
+            stripes.unlock(locked);
+        }
+    }
+}
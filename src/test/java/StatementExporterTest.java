@@ -0,0 +1,112 @@
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.assertThat;
+
+public class StatementExporterTest {
+    Path exportDir;
+    Bank bank;
+
+    @Before
+    public void createBank() throws Exception {
+        exportDir = Files.createTempDirectory("statements");
+        bank = new Bank();
+        long owner1 = bank.putOwner(new Owner("cust1", 1L, new Date(), "1", "1 Main St", null, null, null, null));
+        long owner2 = bank.putOwner(new Owner("cust2", 2L, new Date(), "2", "2 Main St", null, null, null, null));
+        bank.putAccount(new SavingsAccount("savings", 100L, 100, 0, owner1));
+        bank.putAccount(new CheckingAccount("checking", 200L, 200, 1, owner1));
+        bank.putAccount(new CheckingAccount("other", 300L, 300, 1, owner2));
+        bank.getAccount(100L).deposit(10);
+    }
+
+    @After
+    public void resetState() throws IOException {
+        Account.useIndividualRegisters();
+        try (Stream<Path> files = Files.walk(exportDir)) {
+            for (Path p : files.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+                Files.delete(p);
+            }
+        }
+    }
+
+    @Test
+    public void givenPerAccountLayout_whenMonthEndExported_thenOneFilePerAccount() throws Exception {
+        StatementExporter exporter = new StatementExporter(exportDir, StatementExporter.Layout.PER_ACCOUNT, 2, 1);
+        StatementExporter.Report report = bank.runMonthEnd(exporter);
+
+        assertThat(report.statements(), is(3));
+        assertThat(report.files(), is(3));
+        String savings = Files.readString(exportDir.resolve("statement-100.txt"));
+        assertThat(savings.startsWith("Statement for savings\nOpening balance: 0.00\nOPEN    : 100.00 on "), is(true));
+        assertThat(savings.endsWith("Closing balance: 110.00\n"), is(true));
+        long totalBytes = 0;
+        for (long id : new long[]{100L, 200L, 300L}) {
+            totalBytes += Files.size(exportDir.resolve("statement-" + id + ".txt"));
+        }
+        assertThat(report.bytes(), is(totalBytes));
+        assertThat(bank.getAccount(100L).getStatementPeriods().size(), is(1));
+    }
+
+    @Test
+    public void givenPerOwnerLayout_whenMonthEndExported_thenOwnersAccountsInIdOrder() throws Exception {
+        StatementExporter exporter = new StatementExporter(exportDir, StatementExporter.Layout.PER_OWNER, 4);
+        StatementExporter.Report report = bank.runMonthEnd(exporter);
+
+        assertThat(report.statements(), is(3));
+        assertThat(report.files(), is(2));
+        String owner1 = Files.readString(exportDir.resolve("statement-owner-1.txt"));
+        int savingsAt = owner1.indexOf("Statement for savings");
+        int checkingAt = owner1.indexOf("Statement for checking");
+        assertThat(savingsAt, is(0));
+        assertThat(checkingAt > savingsAt, is(true));
+        assertThat(Files.readString(exportDir.resolve("statement-owner-2.txt")).startsWith("Statement for other\n"), is(true));
+    }
+
+    @Test
+    public void givenMonthEndEngine_whenMonthEndExported_thenEngineAppliesMonthEndOnceAndSkipsDormant() throws Exception {
+        MonthEndEngine engine = new MonthEndEngine(1);
+        bank.useMonthEndEngine(engine);
+        StatementExporter exporter = new StatementExporter(exportDir, StatementExporter.Layout.PER_ACCOUNT, 2);
+        bank.runMonthEnd(exporter);
+        // nothing happened since, so the second month every account is dormant
+        bank.runMonthEnd(exporter);
+
+        assertThat(engine.getLastDormantCount(), is(3));
+        long endChecks = bank.getRegisterEntriesForAccount(200L).stream()
+                .filter(e -> e.entryName().equals("END CHECK")).count();
+        assertThat(endChecks, is(2L));
+        String checking = Files.readString(exportDir.resolve("statement-200.txt"));
+        assertThat(checking.startsWith("Statement for checking\nOpening balance: 200.00\nEND CHECK: 1.00 on "), is(true));
+        assertThat(bank.getAccount(200L).getStatementPeriods().size(), is(2));
+    }
+
+    @Test
+    public void givenTextLongerThanBuffer_whenWrittenThroughChannelWriter_thenSameUtf8Bytes() throws Exception {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 500; i++) {
+            text.append("line ").append(i).append(" caf\u00e9 \u20ac \ud83d\ude00\n");
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ChannelWriter out = new ChannelWriter(Channels.newChannel(bytes), 16);
+        try (out) {
+            // a StringBuilder goes through the char by char path, Strings are copied in chunks
+            out.append(text).append(text.toString()).append('!');
+        }
+        String expected = text.toString() + text + "!";
+        assertThat(new String(bytes.toByteArray(), StandardCharsets.UTF_8), is(expected));
+        assertThat(out.getBytesWritten(), is((long) expected.getBytes(StandardCharsets.UTF_8).length));
+    }
+}
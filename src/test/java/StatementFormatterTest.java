@@ -0,0 +1,63 @@
+import org.junit.Test;
+
+import java.time.ZoneId;
+import java.util.Date;
+import java.util.List;
+import java.util.TimeZone;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.assertThat;
+
+public class StatementFormatterTest {
+
+    @Test
+    public void givenEntries_whenFormatLine_thenSameTextAsStringFormat() {
+        StatementFormatter formatter = new StatementFormatter(TimeZone.getDefault().toZoneId());
+        List<RegisterEntry> entries = List.of(
+                new RegisterEntry(1, 1, "DEP", 123456789, new Date(1_600_000_000_123L)),
+                new RegisterEntry(2, 1, "W/D", -5, new Date(1_600_000_000_999L)),
+                new RegisterEntry(3, 1, "MINIMUM BALANCE CHARGE", -1000, new Date(1_600_000_061_000L)),
+                new RegisterEntry(4, 1, "INTEREST", 0, new Date(0)));
+        for (RegisterEntry entry : entries) {
+            String expected = String.format("%-8s: %,.2f on %s", entry.entryName(), entry.amount(), entry.date().toString());
+            assertThat(formatter.formatLine(entry), is(expected));
+        }
+    }
+
+    @Test
+    public void givenAccount_whenWriteStatement_thenSameAsGeneratedStatementText() throws Exception {
+        Account.useSharedRegister(new Register());
+        try {
+            Account first = new CheckingAccount("checking", 1L, 100, 0, 1L);
+            first.deposit(10);
+            Statement generated = first.generateStatement();
+            // the next period is streamed instead
+            first.withdraw(2.5);
+            StringBuilder streamed = new StringBuilder();
+            StatementPeriod period = first.writeStatement(streamed, new StatementFormatter());
+
+            StringBuilder generatedText = new StringBuilder();
+            generated.writeTo(generatedText);
+            assertThat(generatedText.toString().startsWith("Statement for checking\nOpening balance: 0.00\n"), is(true));
+            assertThat(generated.toString(), is(String.format(
+                    "Statement{accountName='checking', opening balance=0.00, balance=110.00, transactions=%s}",
+                    generated.transactions())));
+            assertThat(generated.transactions().size(), is(generated.entries().size()));
+            String text = streamed.toString();
+            assertThat(text.startsWith("Statement for checking\nOpening balance: 110.00\nW/D     : -2.50 on "), is(true));
+            assertThat(text.endsWith("Closing balance: 107.50\n"), is(true));
+            // generateStatement/writeStatement don't run month end, so only the withdrawal
+            assertThat(period.entryCount(), is(1));
+            assertThat(first.getStatementPeriods().get(1), is(period));
+        } finally {
+            Account.useIndividualRegisters();
+        }
+    }
+
+    @Test
+    public void givenZone_whenFormatLine_thenDateInThatZone() {
+        StatementFormatter formatter = new StatementFormatter(ZoneId.of("UTC"));
+        RegisterEntry entry = new RegisterEntry(1, 1, "DEP", 100, new Date(0));
+        assertThat(formatter.formatLine(entry), is("DEP     : 1.00 on Thu Jan 01 00:00:00 UTC 1970"));
+    }
+}
@@ -0,0 +1,74 @@
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Cost of producing a 10k-entry statement: formatting every line up front with String.format
+ * (how statements used to be built), creating a lazy Statement, writing it to a buffer, and
+ * streaming it straight from the register with Account.writeStatement().
+ *
+ * Usage: {@code ./gradlew runBenchmark -Pbenchmark=StatementRenderBenchmark -PbenchmarkArgs="10000"}
+ * where the argument is the number of entries per statement.
+ */
+public class StatementRenderBenchmark {
+    static final int ROUNDS = 50;
+
+    public static void main(String[] args) throws Exception {
+        BenchmarkUtils.quietLogging();
+        for (long size : BenchmarkUtils.sizes(args, 10_000)) {
+            System.out.printf("%n%,d entries per statement%n", size);
+            Account.useSharedRegister(new Register());
+            Account account = new SavingsAccount("savings", 1L, 0, 0, 1L);
+            long start = System.currentTimeMillis() - size * 1000;
+            for (int i = 0; i < size; i++) {
+                account.getRegister().add(1L, (i % 2 == 0) ? "DEP" : "W/D", i * 37L, new Date(start + i * 250L));
+            }
+            List<RegisterEntry> entries = account.getCurrentPeriodEntries();
+            StringBuilder out = new StringBuilder();
+            StatementFormatter formatter = new StatementFormatter();
+
+            for (int pass = 0; pass < 2; pass++) {
+                // the first pass is a warm-up
+                double eager = BenchmarkUtils.nanosPerOp(ROUNDS, () -> formatEagerly(entries).size());
+                double lazy = BenchmarkUtils.nanosPerOp(ROUNDS, () -> new Statement("savings", null, List.copyOf(entries)).entries().size());
+                double written = BenchmarkUtils.nanosPerOp(ROUNDS, () -> {
+                    out.setLength(0);
+                    write(formatter, out, entries);
+                    return out.length();
+                });
+                if (pass == 1) {
+                    System.out.printf("  String.format every line: %,10.0f us/statement%n", eager / 1000);
+                    System.out.printf("  lazy Statement:           %,10.0f us/statement%n", lazy / 1000);
+                    System.out.printf("  written to a buffer:      %,10.0f us/statement (%.1fx faster than String.format)%n",
+                            written / 1000, eager / written);
+                }
+            }
+            // streaming closes the period, so it can only be measured once per register
+            out.setLength(0);
+            long begin = System.nanoTime();
+            account.writeStatement(out, formatter);
+            System.out.printf("  streamed from register:   %,10.0f us/statement (%,d chars)%n",
+                    (System.nanoTime() - begin) / 1000d, out.length());
+        }
+        Account.useIndividualRegisters();
+    }
+
+    static List<String> formatEagerly(List<RegisterEntry> entries) {
+        List<String> lines = new ArrayList<>();
+        for (RegisterEntry entry : entries) {
+            lines.add(String.format("%-8s: %,.2f on %s", entry.entryName(), entry.amount(), entry.date().toString()));
+        }
+        return lines;
+    }
+
+    static void write(StatementFormatter formatter, StringBuilder out, List<RegisterEntry> entries) {
+        try {
+            for (RegisterEntry entry : entries) {
+                formatter.writeLine(out, entry);
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
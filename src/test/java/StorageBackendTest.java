@@ -0,0 +1,155 @@
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.function.Consumer;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.assertThat;
+
+public class StorageBackendTest {
+
+    @Before
+    public void loadAndSaveToTemporaryDir() throws IOException {
+        Persister.setPersisterPropertiesFile("persister.properties");
+        Files.deleteIfExists(Persister.getRegisterJournal().getPath());
+    }
+
+    @After
+    public void resetState() {
+        Account.useIndividualRegisters();
+        Persister.resetPersistedFileNameAndDir();
+    }
+
+    private static Bank bankWithAccounts() throws Exception {
+        Bank bank = new Bank();
+        bank.putOwner(new Owner("cust", 1L, new Date(0), "1", "1 Main St", "", "Rochester", "NY", "14623"));
+        bank.putAccount(new SavingsAccount("savings", 10L, 100, 0.01, 1L));
+        bank.putAccount(new CheckingAccount("checking", 20L, 200, 7, 1L));
+        return bank;
+    }
+
+    @Test
+    public void givenJournalBackend_whenSavedAgain_thenOnlyNewEntriesAppended() throws Exception {
+        // the properties say csv, the bank's backend decides
+        assertThat(StorageBackend.configured().name(), is("csv"));
+        Bank bank = bankWithAccounts();
+        bank.useStorage(new JournalStorageBackend());
+        bank.saveAllRecords();
+        RegisterJournal journal = Persister.getRegisterJournal();
+        assertThat(journal.recordCount(), is(2L));
+
+        bank.getAccount(10L).deposit(5);
+        bank.getAccount(20L).withdraw(1);
+        assertThat(bank.saveAllRecords(), is(1 + 2 + 4));
+        assertThat(journal.recordCount(), is(4L));
+
+        Bank loaded = new Bank();
+        loaded.useStorage(new JournalStorageBackend());
+        assertThat(loaded.loadAllRecords(), is(1 + 2 + 4));
+        assertThat(List.copyOf(loaded.getAllRegisterEntries()), is(List.copyOf(bank.getAllRegisterEntries())));
+        assertThat(loaded.getAccount(10L).getBalanceCents(), is(10_500L));
+    }
+
+    @Test
+    public void givenCustomBackend_whenSavedAndLoaded_thenBankUsesIt() throws Exception {
+        MemoryStorageBackend storage = new MemoryStorageBackend();
+        Bank bank = bankWithAccounts();
+        bank.useStorage(storage);
+        bank.getAccount(20L).deposit(3);
+        assertThat(bank.saveAllRecords(), is(1 + 2 + 3));
+        assertThat(storage.registerLines.size(), is(3));
+
+        Bank loaded = new Bank();
+        Register shared = Account.SharedRegister;
+        loaded.useStorage(storage);
+        // the default readRegisterEntries(ExecutorService, int) reads the register as one part
+        assertThat(loaded.loadAllRecords(2), is(1 + 2 + 3));
+        // accounts were made on a register of their own, the shared one was left alone
+        assertThat(storage.sharedRegisterWhileReading, sameInstance(shared));
+        assertThat(storage.accountRegister, notNullValue());
+        assertThat(storage.accountRegister, not(sameInstance(shared)));
+        assertThat(Account.SharedRegister, sameInstance(shared));
+        assertThat(loaded.getAccount(20L).getRegister(), sameInstance(shared));
+        assertThat(loaded.getStorage(), sameInstance(storage));
+        assertThat(List.copyOf(loaded.getAllOwners()), is(List.copyOf(bank.getAllOwners())));
+        assertThat(List.copyOf(loaded.getAllRegisterEntries()), is(List.copyOf(bank.getAllRegisterEntries())));
+        assertThat(loaded.getAccount(20L).getBalanceCents(), is(20_300L));
+        assertThat(loaded.getAccount(20L), instanceOf(CheckingAccount.class));
+    }
+
+    /** keeps the saved records as CSV lines in memory */
+    private static class MemoryStorageBackend implements StorageBackend {
+        final List<String> ownerLines = new ArrayList<>();
+        final List<String> accountLines = new ArrayList<>();
+        final List<String> registerLines = new ArrayList<>();
+        Register sharedRegisterWhileReading;
+        Register accountRegister;
+
+        @Override
+        public String name() {
+            return "memory";
+        }
+
+        @Override
+        public long readOwners(Consumer<? super Owner> consumer) throws SerializationException {
+            for (String line : ownerLines) {
+                consumer.accept(Owner.fromCSV(line));
+            }
+            return ownerLines.size();
+        }
+
+        @Override
+        public long readAccounts(Register register, Consumer<? super Account> consumer) throws SerializationException {
+            sharedRegisterWhileReading = Account.SharedRegister;
+            accountRegister = register;
+            for (String line : accountLines) {
+                consumer.accept(line.startsWith("S")
+                        ? SavingsAccount.fromCSV(line.substring(1), register)
+                        : CheckingAccount.fromCSV(line.substring(1), register));
+            }
+            return accountLines.size();
+        }
+
+        @Override
+        public long readRegisterEntries(Consumer<? super RegisterEntry> consumer) throws SerializationException {
+            for (String line : registerLines) {
+                consumer.accept(RegisterEntry.fromCSV(line));
+            }
+            return registerLines.size();
+        }
+
+        @Override
+        public int writeOwners(Collection<Owner> owners) throws SerializationException {
+            ownerLines.clear();
+            for (Owner owner : owners) {
+                ownerLines.add(owner.toCSV());
+            }
+            return owners.size();
+        }
+
+        @Override
+        public int writeAccounts(Collection<Account> accounts) throws SerializationException {
+            accountLines.clear();
+            for (Account account : accounts) {
+                accountLines.add(((account instanceof SavingsAccount) ? "S" : "C") + account.toCSV());
+            }
+            return accounts.size();
+        }
+
+        @Override
+        public int writeRegisterEntries(List<RegisterEntry> entries, int alreadySaved) throws SerializationException {
+            registerLines.clear();
+            for (RegisterEntry entry : entries) {
+                registerLines.add(entry.toCSV());
+            }
+            return entries.size();
+        }
+    }
+}
@@ -0,0 +1,54 @@
+import java.nio.file.Files;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * The same bank saved and loaded with every StorageBackend: a full save, a save after a few
+ * more deposits, and a load. Files go to the directory in persister.properties.
+ *
+ * Usage: {@code ./gradlew runBenchmark -Pbenchmark=StorageBenchmark -PbenchmarkArgs="1000000"}
+ * where the arguments are numbers of register entries, spread over 10,000 accounts.
+ */
+public class StorageBenchmark {
+    private static final int ACCOUNTS = 10_000;
+    private static final int MORE_DEPOSITS = 1_000;
+
+    public static void main(String[] args) throws Exception {
+        BenchmarkUtils.quietLogging();
+        for (long size : BenchmarkUtils.sizes(args, 1_000_000)) {
+            System.out.printf("%n%,d accounts, %,d register entries%n", ACCOUNTS, size);
+            for (StorageBackend storage : List.of(new CsvStorageBackend(), new JournalStorageBackend())) {
+                Files.deleteIfExists(Persister.getRegisterJournal().getPath());
+                Bank bank = bank(size);
+                bank.useStorage(storage);
+                long start = System.nanoTime();
+                bank.saveAllRecords();
+                long saved = System.nanoTime();
+                for (int i = 0; i < MORE_DEPOSITS; i++) {
+                    bank.getAccount(i % ACCOUNTS).deposit(1);
+                }
+                long deposited = System.nanoTime();
+                bank.saveAllRecords();
+                long savedAgain = System.nanoTime();
+                int loaded = bank.loadAllRecords();
+                long end = System.nanoTime();
+                System.out.printf("  %-8s save %,7.0f ms  save %,d more %,7.0f ms  load %,7.0f ms (%,d records)%n",
+                        storage.name(), (saved - start) / 1e6, MORE_DEPOSITS, (savedAgain - deposited) / 1e6,
+                        (end - savedAgain) / 1e6, loaded);
+                Account.useIndividualRegisters();
+            }
+        }
+    }
+
+    static Bank bank(long entries) throws Exception {
+        Bank bank = new Bank();
+        bank.putOwner(new Owner("owner", 0L, new Date(0), "", "", "", "", "", ""));
+        for (long id = 0; id < ACCOUNTS; id++) {
+            bank.putAccount(new CheckingAccount("checking " + id, id, 100, 0, 0L));
+        }
+        for (long i = ACCOUNTS; i < entries; i++) {
+            bank.getAccount(i % ACCOUNTS).deposit(1);
+        }
+        return bank;
+    }
+}
@@ -0,0 +1,72 @@
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PrimitiveIterator;
+import java.util.Random;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class TimeIndexTest {
+
+    private static List<Integer> collect(PrimitiveIterator.OfInt rows) {
+        List<Integer> list = new ArrayList<>();
+        rows.forEachRemaining((int row) -> list.add(row));
+        return list;
+    }
+
+    @Test
+    public void givenOutOfOrderTimes_whenRowsBetween_thenMatchingRowsInTimeOrder() {
+        TimeIndex index = new TimeIndex();
+        // enough rows to seal and merge several segments, plus a partial tail
+        int size = TimeIndex.TAIL_CAPACITY * 5 + 17;
+        long[] millis = new long[size];
+        Random random = new Random(42);
+        for (int row = 0; row < size; row++) {
+            millis[row] = random.nextInt(100_000);
+            index.add(millis[row], row);
+        }
+        assertThat(index.size(), is(size));
+
+        long from = 25_000;
+        long to = 50_000;
+        List<Integer> rows = collect(index.rowsBetween(from, to));
+        int expected = 0;
+        for (long m : millis) {
+            if (m >= from && m < to) {
+                expected++;
+            }
+        }
+        assertThat(rows.size(), is(expected));
+        for (int i = 0; i < rows.size(); i++) {
+            long m = millis[rows.get(i)];
+            assertTrue("row outside range: " + m, m >= from && m < to);
+            if (i > 0) {
+                assertTrue("rows should be in time order", millis[rows.get(i - 1)] <= m);
+            }
+        }
+    }
+
+    @Test
+    public void givenEqualTimes_whenRowsBetween_thenRowsInInsertionOrder() {
+        TimeIndex index = new TimeIndex();
+        for (int row = 0; row < 10; row++) {
+            index.add(1000, row);
+        }
+        assertThat(collect(index.rowsBetween(1000, 1001)), is(List.of(0, 1, 2, 3, 4, 5, 6, 7, 8, 9)));
+    }
+
+    @Test
+    public void givenRange_whenNothingInRange_thenEmpty() {
+        TimeIndex index = new TimeIndex();
+        index.add(1000, 0);
+        index.add(2000, 1);
+        assertTrue(collect(index.rowsBetween(1001, 2000)).isEmpty());
+        assertThat(collect(index.rowsBetween(0, Long.MAX_VALUE)), is(List.of(0, 1)));
+        index.clear();
+        assertThat(index.size(), is(0));
+        assertTrue(collect(index.rowsBetween(0, Long.MAX_VALUE)).isEmpty());
+    }
+}